@@ -2,6 +2,7 @@ plugins {
 	java
 	id("org.springframework.boot") version "3.3.0"
 	id("io.spring.dependency-management") version "1.1.5"
+	id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.example"
@@ -29,17 +30,82 @@ dependencies {
 	implementation("org.springframework.boot:spring-boot-starter-oauth2-resource-server")
 	implementation("org.springframework.boot:spring-boot-starter-security")
 	implementation("org.springframework.boot:spring-boot-starter-web")
+	implementation("org.springframework.boot:spring-boot-starter-webflux")
+	implementation("org.springframework.boot:spring-boot-starter-data-r2dbc")
+	implementation("org.springframework.boot:spring-boot-starter-actuator")
 	implementation("redis.clients:jedis")
-	implementation("io.jsonwebtoken:jjwt:0.9.1")
+	implementation("org.flywaydb:flyway-core")
 	implementation("javax.xml.bind:jaxb-api:2.3.1")
 	compileOnly("org.projectlombok:lombok")
 	runtimeOnly("org.postgresql:postgresql")
+	runtimeOnly("org.flywaydb:flyway-database-postgresql")
+	runtimeOnly("org.postgresql:r2dbc-postgresql")
+	runtimeOnly("io.micrometer:micrometer-registry-prometheus")
 	annotationProcessor("org.projectlombok:lombok")
 	testImplementation("org.springframework.boot:spring-boot-starter-test")
 	testImplementation("org.springframework.security:spring-security-test")
+	testImplementation("io.jsonwebtoken:jjwt:0.9.1")
+	testImplementation("org.testcontainers:junit-jupiter")
 	testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+	jmh("org.springframework:spring-test")
+	jmh("io.micrometer:micrometer-registry-prometheus")
 }
 
 tasks.withType<Test> {
 	useJUnitPlatform()
 }
+
+jmh {
+	jmhVersion = "1.37"
+	benchmarkMode = listOf("thrpt", "avgt")
+	timeUnit = "us"
+	profilers = listOf("gc")
+	resultFormat = "JSON"
+	fork = 1
+	warmupIterations = 3
+	iterations = 5
+}
+
+// Нагрузочный прогон против запущенного приложения (см. LoadTestDriver)
+tasks.register<JavaExec>("loadTest") {
+	group = "benchmark"
+	description = "Runs the HTTP load driver against a running instance"
+	classpath = sourceSets["jmh"].runtimeClasspath
+	mainClass = "com.example.spring_jwt_auth_example.benchmark.LoadTestDriver"
+	args = listOf(
+		project.findProperty("baseUrl")?.toString() ?: "http://localhost:8080",
+		project.findProperty("concurrency")?.toString() ?: "1000",
+		project.findProperty("duration")?.toString() ?: "30s",
+		project.findProperty("signinRatio")?.toString() ?: "0.05",
+		project.findProperty("users")?.toString() ?: "100"
+	)
+}
+
+// Команды Redis и память на один Refresh Token: старая раскладка Spring Data против RefreshTokenRepository
+tasks.register<JavaExec>("refreshTokenFootprint") {
+	group = "benchmark"
+	description = "Compares Redis commands and memory per refresh token for the legacy and current layouts"
+	classpath = sourceSets["jmh"].runtimeClasspath
+	mainClass = "com.example.spring_jwt_auth_example.benchmark.RefreshTokenFootprintBenchmark"
+	args = listOf(
+		project.findProperty("redisHost")?.toString() ?: "localhost",
+		project.findProperty("redisPort")?.toString() ?: "6379",
+		project.findProperty("tokens")?.toString() ?: "100000",
+		project.findProperty("users")?.toString() ?: "20000"
+	)
+}
+
+// Jedis-пул против общего соединения Lettuce при одинаковой конкурентности (см. RedisClientBenchmark)
+tasks.register<JavaExec>("redisClientBenchmark") {
+	group = "benchmark"
+	description = "Compares commands per second and latency percentiles of the Jedis pool and a shared Lettuce connection"
+	classpath = sourceSets["jmh"].runtimeClasspath
+	mainClass = "com.example.spring_jwt_auth_example.benchmark.RedisClientBenchmark"
+	args = listOf(
+		project.findProperty("redisHost")?.toString() ?: "localhost",
+		project.findProperty("redisPort")?.toString() ?: "6379",
+		project.findProperty("concurrency")?.toString() ?: "1000",
+		project.findProperty("duration")?.toString() ?: "30s",
+		project.findProperty("poolSize")?.toString() ?: "16"
+	)
+}
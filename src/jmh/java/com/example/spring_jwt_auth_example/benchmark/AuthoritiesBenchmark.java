@@ -0,0 +1,36 @@
+package com.example.spring_jwt_auth_example.benchmark;
+
+import com.example.spring_jwt_auth_example.security.AppUserDetails;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+import java.util.List;
+
+@State(Scope.Benchmark)
+public class AuthoritiesBenchmark {
+
+    private AppUserDetails userDetails;
+
+    @Setup
+    public void setUp() {
+        userDetails = BenchmarkFixtures.userDetails();
+    }
+
+    @Benchmark
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return userDetails.getAuthorities();
+    }
+
+    // То же преобразование, что выполняет SecurityService.authenticateUser для ответа клиенту
+    @Benchmark
+    public List<String> authenticateUserRoleMapping() {
+        return userDetails.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .toList();
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.example.spring_jwt_auth_example.benchmark;
+
+import com.example.spring_jwt_auth_example.entity.RoleType;
+import com.example.spring_jwt_auth_example.entity.User;
+import com.example.spring_jwt_auth_example.metrics.AuthFailureTelemetry;
+import com.example.spring_jwt_auth_example.security.AccessTokenDenylist;
+import com.example.spring_jwt_auth_example.security.AppUserDetails;
+import com.example.spring_jwt_auth_example.security.SecurityVersionStore;
+import com.example.spring_jwt_auth_example.security.jwt.JwtAlgorithm;
+import com.example.spring_jwt_auth_example.security.jwt.JwtKeyRing;
+import com.example.spring_jwt_auth_example.security.jwt.JwtUtils;
+import com.example.spring_jwt_auth_example.security.jwt.VerifiedTokenCache;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Set;
+
+/*
+Сборка бинов без Spring-контекста, Redis и Postgres - только то, что исполняется на горячем пути.
+Значения полей, которые в приложении приходят из application.yml, задаются здесь.
+*/
+final class BenchmarkFixtures {
+
+    static final String SECRET = "someSecretKey";
+
+    private BenchmarkFixtures() {
+    }
+
+    static AppUserDetails userDetails() {
+        return new AppUserDetails(User.builder()
+                .id(42L)
+                .username("benchmark-user")
+                .email("benchmark-user@example.com")
+                .password("$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z5JjNs1k8V2Vb9ZfRz5rZ0xK")
+                .roles(Set.of(RoleType.ROLE_USER, RoleType.ROLE_MANAGER))
+                .build());
+    }
+
+    static SecurityVersionStore securityVersionStore() {
+        SecurityVersionStore store = new SecurityVersionStore(null, null);
+        ReflectionTestUtils.setField(store, "enabled", false);
+        ReflectionTestUtils.setField(store, "cacheTtl", Duration.ofSeconds(1));
+
+        return store;
+    }
+
+    static JwtKeyRing hmacKeyRing() {
+        JwtKeyRing keyRing = new JwtKeyRing(null, null);
+        ReflectionTestUtils.setField(keyRing, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(keyRing, "algorithm", JwtAlgorithm.HS512);
+        keyRing.init();
+
+        return keyRing;
+    }
+
+    static JwtUtils jwtUtils() {
+        JwtUtils jwtUtils = new JwtUtils(securityVersionStore(), hmacKeyRing());
+        ReflectionTestUtils.setField(jwtUtils, "tokenExpiration", Duration.ofHours(1)); // токены не должны истечь во время замера
+
+        return jwtUtils;
+    }
+
+    static VerifiedTokenCache verifiedTokenCache(int maxSize) {
+        VerifiedTokenCache cache = new VerifiedTokenCache();
+        ReflectionTestUtils.setField(cache, "maxSize", maxSize);
+        cache.startEviction();
+
+        return cache;
+    }
+
+    // Окно не подменяется (планировщика нет): счётчики растут, но пути ограничены maxPaths
+    static AuthFailureTelemetry failureTelemetry() {
+        AuthFailureTelemetry telemetry = new AuthFailureTelemetry(null);
+        ReflectionTestUtils.setField(telemetry, "window", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(telemetry, "maxPaths", 200);
+        ReflectionTestUtils.setField(telemetry, "exemplarsPerWindow", 20);
+        telemetry.init();
+
+        return telemetry;
+    }
+
+    // Пустой denylist: в Redis ходит только при срабатывании фильтра Блума, чего на чистом фильтре не бывает
+    static AccessTokenDenylist accessTokenDenylist() {
+        AccessTokenDenylist denylist = new AccessTokenDenylist(null, null);
+        ReflectionTestUtils.setField(denylist, "window", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(denylist, "expectedRevocationsPerWindow", 10_000);
+        ReflectionTestUtils.setField(denylist, "falsePositiveRate", 0.001);
+        ReflectionTestUtils.setField(denylist, "resyncInterval", Duration.ofSeconds(30));
+        denylist.init();
+
+        return denylist;
+    }
+
+}
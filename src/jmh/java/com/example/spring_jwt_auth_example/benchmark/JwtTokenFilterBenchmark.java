@@ -0,0 +1,92 @@
+package com.example.spring_jwt_auth_example.benchmark;
+
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics;
+import com.example.spring_jwt_auth_example.security.AppUserDetails;
+import com.example.spring_jwt_auth_example.security.UserDetailsServiceImpl;
+import com.example.spring_jwt_auth_example.security.jwt.JwtTokenFilter;
+import com.example.spring_jwt_auth_example.security.jwt.JwtUtils;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/*
+Полный проход JwtTokenFilter для одного запроса.
+cached - включён ли VerifiedTokenCache (при false каждый запрос проверяет подпись заново).
+token: claims - principal строится из клаймов; legacy - токен только с subject, пользователь берётся из UserDetailsServiceImpl (заглушка).
+metrics: on - таймеры auth.filter пишутся в PrometheusMeterRegistry с гистограммами, как в приложении;
+off - в пустой CompositeMeterRegistry (no-op), остаются только чтения System.nanoTime. Разница - цена метрик на запрос.
+*/
+@State(Scope.Benchmark)
+public class JwtTokenFilterBenchmark {
+
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> {
+    };
+
+    @Param({"true", "false"})
+    private boolean cached;
+
+    @Param({"claims", "legacy"})
+    private String token;
+
+    @Param({"on", "off"})
+    private String metrics;
+
+    private JwtTokenFilter filter;
+
+    private String authorizationHeader;
+
+    @Setup
+    public void setUp() {
+        AppUserDetails userDetails = BenchmarkFixtures.userDetails();
+        JwtUtils jwtUtils = BenchmarkFixtures.jwtUtils();
+
+        UserDetailsServiceImpl userDetailsService = new UserDetailsServiceImpl(null, null, null) {
+            @Override
+            public UserDetails loadUserByUsername(String username) {
+                return userDetails;
+            }
+        };
+
+        filter = new JwtTokenFilter(jwtUtils, BenchmarkFixtures.verifiedTokenCache(cached ? 10_000 : 0),
+                userDetailsService, BenchmarkFixtures.securityVersionStore(), BenchmarkFixtures.accessTokenDenylist(),
+                new AuthMetrics("on".equals(metrics) ? new PrometheusMeterRegistry(PrometheusConfig.DEFAULT) : new CompositeMeterRegistry()),
+                BenchmarkFixtures.failureTelemetry());
+
+        String jwt = "claims".equals(token)
+                ? jwtUtils.generateJwtToken(userDetails)
+                : jwtUtils.generateTokenFromUsername(userDetails.getUsername());
+        authorizationHeader = "Bearer " + jwt;
+    }
+
+    @Benchmark
+    public Authentication doFilter() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/app/user");
+        request.addHeader(HttpHeaders.AUTHORIZATION, authorizationHeader);
+
+        filter.doFilter(request, new MockHttpServletResponse(), NO_OP_CHAIN);
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+
+        return authentication;
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.example.spring_jwt_auth_example.benchmark;
+
+import com.example.spring_jwt_auth_example.security.AppUserDetails;
+import com.example.spring_jwt_auth_example.security.jwt.JwtUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+public class JwtUtilsBenchmark {
+
+    private JwtUtils jwtUtils;
+
+    private AppUserDetails userDetails;
+
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtils = BenchmarkFixtures.jwtUtils();
+        userDetails = BenchmarkFixtures.userDetails();
+        token = jwtUtils.generateJwtToken(userDetails);
+    }
+
+    @Benchmark
+    public String generateTokenFromUsername() {
+        return jwtUtils.generateTokenFromUsername("benchmark-user");
+    }
+
+    @Benchmark
+    public String generateJwtToken() {
+        return jwtUtils.generateJwtToken(userDetails);
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return jwtUtils.validate(token);
+    }
+
+    @Benchmark
+    public String getUsername() {
+        return jwtUtils.getUsername(token);
+    }
+
+}
@@ -0,0 +1,256 @@
+package com.example.spring_jwt_auth_example.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+Нагрузочный прогон против уже запущенного приложения: сравнение режима платформенных потоков
+с профилем virtual при высокой конкурентности. Запуск:
+
+    ./gradlew bootRun --args='--app.rateLimit.enabled=false'   (для virtual добавить --spring.profiles.active=virtual)
+    ./gradlew loadTest -PbaseUrl=http://localhost:8080 -Pconcurrency=2000 -Pduration=60s -PsigninRatio=0.05 -Pusers=1000
+
+Все клиенты приходят с одного IP, поэтому для сравнения режимов AuthRateLimiter нужно выключить
+(app.rateLimit.enabled=false), иначе /signin упирается в лимит на IP и меряется отказ 429, а не BCrypt.
+Регистрируется users пользователей, клиенты распределяются по ним по кругу.
+
+Каждый клиент в цикле вызывает защищённый /api/v1/app/user, а с вероятностью signinRatio - /signin (BCrypt + Postgres + Redis).
+Печатает пропускную способность, ошибки и перцентили задержки (p50/p99/p999) отдельно по каждому запросу.
+Ответы 429 в задержки и ошибки не входят: они считаются отдельно, а клиент ждёт Retry-After и повторяет вход.
+*/
+public class LoadTestDriver {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String USERNAME_PREFIX = "load-test-user-";
+
+    // Регистрация - это BCrypt на сервере; больше параллельных запросов переполнит пул хэширования (503)
+    private static final int REGISTRATION_PARALLELISM = 8;
+
+    private static final String PASSWORD = "load-test-password";
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        Duration duration = args.length > 2 ? Duration.parse("PT" + args[2].toUpperCase()) : Duration.ofSeconds(30);
+        double signinRatio = args.length > 3 ? Double.parseDouble(args[3]) : 0.05;
+        int users = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        LoadTestDriver driver = new LoadTestDriver(httpClient, baseUrl, signinRatio);
+        driver.register(users);
+
+        System.out.printf("Running %d clients as %d users against %s for %s (signin ratio %.2f)%n",
+                concurrency, users, baseUrl, duration, signinRatio);
+
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Future<ClientStats>> futures = new ArrayList<>(concurrency);
+        // клиенты на виртуальных потоках, чтобы сам драйвер не ограничивал конкурентность
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                String username = USERNAME_PREFIX + (i % users);
+                futures.add(clients.submit(() -> driver.runClient(username, deadline)));
+            }
+        }
+
+        ClientStats total = new ClientStats();
+        for (Future<ClientStats> future : futures) {
+            total.merge(future.get());
+        }
+
+        double seconds = duration.toNanos() / 1e9;
+        System.out.printf("protected: %s%n", total.protectedLatencies.report(seconds));
+        System.out.printf("signin:    %s%n", total.signinLatencies.report(seconds));
+        System.out.printf("errors: %d (503: %d), rate limited (429): %d%n", total.errors, total.rejected, total.rateLimited);
+        if (total.rateLimited > 0) {
+            System.out.println("warning: signin was rate limited, run the application with app.rateLimit.enabled=false");
+        }
+    }
+
+    private final HttpClient httpClient;
+
+    private final String baseUrl;
+
+    private final double signinRatio;
+
+    private LoadTestDriver(HttpClient httpClient, String baseUrl, double signinRatio) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+        this.signinRatio = signinRatio;
+    }
+
+    private void register(int users) throws Exception {
+        List<Future<?>> registrations = new ArrayList<>(users);
+        try (ExecutorService registrar = Executors.newFixedThreadPool(REGISTRATION_PARALLELISM)) {
+            for (int i = 0; i < users; i++) {
+                String username = USERNAME_PREFIX + i;
+                registrations.add(registrar.submit(() -> {
+                    register(username);
+                    return null;
+                }));
+            }
+        }
+        for (Future<?> registration : registrations) {
+            registration.get();
+        }
+    }
+
+    // 400 - уже зарегистрирован; 429 и 503 - ждём Retry-After и повторяем
+    private void register(String username) throws Exception {
+        String body = "{\"username\":\"" + username + "\",\"email\":\"" + username + "@example.com\","
+                + "\"roles\":[\"ROLE_USER\"],\"password\":\"" + PASSWORD + "\"}";
+
+        while (true) {
+            HttpResponse<Void> response = httpClient.send(post("/api/v1/auth/register", body), HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 429 && response.statusCode() != 503) {
+                return;
+            }
+            Thread.sleep(retryAfter(response));
+        }
+    }
+
+    private ClientStats runClient(String username, long deadline) {
+        ClientStats stats = new ClientStats();
+        String token = null;
+
+        while (System.nanoTime() < deadline) {
+            try {
+                if (token == null || ThreadLocalRandom.current().nextDouble() < signinRatio) {
+                    long start = System.nanoTime();
+                    HttpResponse<String> response = httpClient.send(
+                            post("/api/v1/auth/signin", "{\"username\":\"" + username + "\",\"password\":\"" + PASSWORD + "\"}"),
+                            HttpResponse.BodyHandlers.ofString());
+                    long elapsed = System.nanoTime() - start;
+
+                    if (response.statusCode() == 429) {
+                        // отказ лимитера - не задержка входа; ждём, сколько просит сервер
+                        stats.rateLimited++;
+                        Thread.sleep(Math.min(retryAfter(response).toNanos(), Math.max(deadline - System.nanoTime(), 0)) / 1_000_000);
+                        continue;
+                    }
+                    stats.signinLatencies.add(elapsed);
+
+                    if (response.statusCode() == 200) {
+                        token = OBJECT_MAPPER.readTree(response.body()).get("token").asText();
+                    } else {
+                        stats.error(response.statusCode());
+                    }
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                HttpResponse<Void> response = httpClient.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/v1/app/user"))
+                        .header("Authorization", "Bearer " + token)
+                        .GET()
+                        .build(), HttpResponse.BodyHandlers.discarding());
+                stats.protectedLatencies.add(System.nanoTime() - start);
+
+                if (response.statusCode() == 401) {
+                    token = null; // access token истёк - войдём заново
+                } else if (response.statusCode() != 200) {
+                    stats.error(response.statusCode());
+                }
+            } catch (Exception e) {
+                stats.errors++;
+            }
+        }
+
+        return stats;
+    }
+
+    // Retry-After в секундах; без заголовка - секунда
+    private static Duration retryAfter(HttpResponse<?> response) {
+        return Duration.ofSeconds(response.headers().firstValueAsLong("Retry-After").orElse(1));
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static final class ClientStats {
+
+        private final Latencies protectedLatencies = new Latencies();
+
+        private final Latencies signinLatencies = new Latencies();
+
+        private long errors;
+
+        private long rejected;
+
+        private long rateLimited;
+
+        private void error(int statusCode) {
+            errors++;
+            if (statusCode == 503) {
+                rejected++;
+            }
+        }
+
+        private void merge(ClientStats other) {
+            protectedLatencies.merge(other.protectedLatencies);
+            signinLatencies.merge(other.signinLatencies);
+            errors += other.errors;
+            rejected += other.rejected;
+            rateLimited += other.rateLimited;
+        }
+    }
+
+    // Используется и RedisClientBenchmark
+    static final class Latencies {
+
+        private long[] values = new long[1024];
+
+        private int size;
+
+        void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        void merge(Latencies other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        String report(double seconds) {
+            if (size == 0) {
+                return "no requests";
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+
+            return String.format("%d requests, %.0f req/s, p50 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms",
+                    size, size / seconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                    sorted[sorted.length - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(index, 0)] / 1e6;
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.example.spring_jwt_auth_example.benchmark;
+
+import com.example.spring_jwt_auth_example.configuration.RedisConfiguration;
+import io.lettuce.core.resource.ClientResources;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+Сравнение клиентов Redis servlet-стека (app.redis.client) при одинаковой конкурентности:
+jedis   - пул из poolSize соединений, как в RedisConfiguration;
+lettuce - одно общее соединение с FlushConsolidationHandler (flushAfterCommands).
+Каждый клиент на виртуальном потоке в цикле выполняет GET и SET ключей security_version:<n> - команды проверки версии безопасности.
+Печатает команды в секунду и перцентили задержки. Работает с отдельной базой Redis (по умолчанию 15). Запуск:
+
+    ./gradlew redisClientBenchmark -PredisHost=localhost -PredisPort=6379 -Pconcurrency=1000 -Pduration=30s -PpoolSize=16
+*/
+public class RedisClientBenchmark {
+
+    private static final int DATABASE = 15;
+
+    private static final int KEYS = 10_000;
+
+    private static final int FLUSH_AFTER_COMMANDS = 64;
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6379;
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        Duration duration = args.length > 3 ? Duration.parse("PT" + args[3].toUpperCase()) : Duration.ofSeconds(30);
+        int poolSize = args.length > 4 ? Integer.parseInt(args[4]) : 16;
+
+        RedisStandaloneConfiguration server = new RedisStandaloneConfiguration(host, port);
+        server.setDatabase(DATABASE);
+
+        System.out.printf("%d clients for %s each%n", concurrency, duration);
+
+        JedisConnectionFactory jedis = jedis(server, poolSize);
+        try {
+            System.out.printf("jedis (pool %d):   %s%n", poolSize, run(jedis, concurrency, duration));
+        } finally {
+            jedis.destroy();
+        }
+
+        ClientResources clientResources = RedisConfiguration.clientResources(FLUSH_AFTER_COMMANDS, true);
+        LettuceConnectionFactory lettuce = lettuce(server, clientResources);
+        try {
+            System.out.printf("lettuce (shared): %s%n", run(lettuce, concurrency, duration));
+        } finally {
+            lettuce.destroy();
+            clientResources.shutdown();
+        }
+    }
+
+    private static String run(RedisConnectionFactory connectionFactory, int concurrency, Duration duration)
+            throws Exception {
+        StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+
+        runClients(redisTemplate, concurrency, Duration.ofSeconds(5)); // прогрев: соединения, JIT
+
+        LoadTestDriver.Latencies latencies = runClients(redisTemplate, concurrency, duration);
+        return latencies.report(duration.toNanos() / 1e9);
+    }
+
+    private static LoadTestDriver.Latencies runClients(StringRedisTemplate redisTemplate, int concurrency, Duration duration)
+            throws Exception {
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Future<LoadTestDriver.Latencies>> futures = new ArrayList<>(concurrency);
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                futures.add(clients.submit(() -> runClient(redisTemplate, deadline)));
+            }
+        }
+
+        LoadTestDriver.Latencies total = new LoadTestDriver.Latencies();
+        for (Future<LoadTestDriver.Latencies> future : futures) {
+            total.merge(future.get());
+        }
+        return total;
+    }
+
+    private static LoadTestDriver.Latencies runClient(StringRedisTemplate redisTemplate, long deadline) {
+        LoadTestDriver.Latencies latencies = new LoadTestDriver.Latencies();
+
+        while (System.nanoTime() < deadline) {
+            String key = "security_version:" + ThreadLocalRandom.current().nextInt(KEYS);
+
+            long start = System.nanoTime();
+            redisTemplate.opsForValue().get(key);
+            latencies.add(System.nanoTime() - start);
+
+            start = System.nanoTime();
+            redisTemplate.opsForValue().set(key, "1");
+            latencies.add(System.nanoTime() - start);
+        }
+
+        return latencies;
+    }
+
+    private static JedisConnectionFactory jedis(RedisStandaloneConfiguration server, int poolSize) {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(poolSize);
+        poolConfig.setMaxIdle(poolSize);
+        poolConfig.setBlockWhenExhausted(true);
+
+        JedisConnectionFactory connectionFactory = new JedisConnectionFactory(server, JedisClientConfiguration.builder()
+                .usePooling()
+                .poolConfig(poolConfig)
+                .build());
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        return connectionFactory;
+    }
+
+    private static LettuceConnectionFactory lettuce(RedisStandaloneConfiguration server, ClientResources clientResources) {
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(server, LettuceClientConfiguration.builder()
+                .clientResources(clientResources)
+                .build());
+        connectionFactory.setShareNativeConnection(true);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        return connectionFactory;
+    }
+
+}
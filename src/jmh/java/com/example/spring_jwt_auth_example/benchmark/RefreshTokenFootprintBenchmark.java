@@ -0,0 +1,129 @@
+package com.example.spring_jwt_auth_example.benchmark;
+
+import com.example.spring_jwt_auth_example.entity.RefreshToken;
+import com.example.spring_jwt_auth_example.repository.RefreshTokenRepository;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/*
+Сравнение числа команд Redis и памяти на один выданный Refresh Token:
+legacy - раскладка Spring Data @RedisHash("refresh_tokens") с @Indexed на id, userId, token, expiryDate и phantom-копией
+(команды воспроизводят то, что пишет RedisKeyValueAdapter при save);
+store  - RefreshTokenRepository (SAVE_SCRIPT - запись вместе с семейством и данными владельца, и ZADD в очередь истечения).
+
+Работает с отдельной базой Redis (по умолчанию 15) и очищает её перед каждым прогоном. Запуск:
+
+    ./gradlew refreshTokenFootprint -PredisHost=localhost -PredisPort=6379 -Ptokens=100000 -Pusers=20000
+*/
+public class RefreshTokenFootprintBenchmark {
+
+    private static final Duration TTL = Duration.ofMinutes(30);
+
+    private static final int DATABASE = 15;
+
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6379;
+        int tokens = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        int users = args.length > 3 ? Integer.parseInt(args[3]) : 20_000;
+
+        try (Jedis jedis = new Jedis(host, port)) {
+            jedis.select(DATABASE);
+
+            report("legacy", tokens, measure(jedis, () -> issueLegacy(jedis, tokens, users)));
+            report("store ", tokens, measure(jedis, () -> issueWithStore(jedis, tokens, users)));
+
+            jedis.flushDB();
+        }
+    }
+
+    private static long[] measure(Jedis jedis, Runnable issue) {
+        jedis.flushDB();
+        long commandsBefore = stat(jedis.info("stats"), "total_commands_processed");
+        long memoryBefore = stat(jedis.info("memory"), "used_memory");
+
+        issue.run();
+
+        long commands = stat(jedis.info("stats"), "total_commands_processed") - commandsBefore - 2; // без двух INFO
+        long memory = stat(jedis.info("memory"), "used_memory") - memoryBefore;
+
+        return new long[]{commands, memory, jedis.dbSize()};
+    }
+
+    private static void issueLegacy(Jedis jedis, int tokens, int users) {
+        Pipeline pipeline = jedis.pipelined();
+        for (int id = 0; id < tokens; id++) {
+            String key = "refresh_tokens:" + id;
+            String userId = Integer.toString(id % users);
+            String token = UUID.randomUUID().toString();
+            String expiryDate = Instant.now().plus(TTL).toString();
+            Map<String, String> hash = Map.of(
+                    "_class", RefreshToken.class.getName(),
+                    "id", Integer.toString(id),
+                    "userId", userId,
+                    "token", token,
+                    "expiryDate", expiryDate);
+
+            pipeline.del(key);
+            pipeline.hset(key, hash);
+            pipeline.sadd("refresh_tokens", Integer.toString(id));
+            pipeline.expire(key, TTL.toSeconds());
+            pipeline.hset(key + ":phantom", hash);
+            pipeline.expire(key + ":phantom", TTL.toSeconds() + 300);
+            for (Map.Entry<String, String> index : List.of(
+                    Map.entry("id", Integer.toString(id)),
+                    Map.entry("userId", userId),
+                    Map.entry("token", token),
+                    Map.entry("expiryDate", expiryDate))) {
+                String indexKey = "refresh_tokens:" + index.getKey() + ":" + index.getValue();
+                pipeline.sadd(indexKey, Integer.toString(id));
+                pipeline.sadd(key + ":idx", indexKey);
+            }
+        }
+        pipeline.sync();
+    }
+
+    private static void issueWithStore(Jedis jedis, int tokens, int users) {
+        String sha = jedis.scriptLoad(RefreshTokenRepository.SAVE_SCRIPT.getScriptAsString());
+
+        Pipeline pipeline = jedis.pipelined();
+        for (int i = 0; i < tokens; i++) {
+            RefreshToken refreshToken = RefreshToken.builder()
+                    .userId((long) (i % users))
+                    .token(RefreshTokenRepository.newToken((long) (i % users)))
+                    .expiryDate(Instant.now().plus(TTL))
+                    .familyId(UUID.randomUUID().toString())
+                    .username("user-" + (i % users))
+                    .email("user-" + (i % users) + "@example.com")
+                    .roles(List.of("ROLE_USER"))
+                    .build();
+
+            pipeline.evalsha(sha,
+                    RefreshTokenRepository.saveKeys(refreshToken),
+                    RefreshTokenRepository.saveArgs(refreshToken));
+            pipeline.zadd(RefreshTokenRepository.expiryKey(refreshToken.getUserId()), refreshToken.getExpiryDate().toEpochMilli(),
+                    RefreshTokenRepository.expiryMember(refreshToken.getUserId(), refreshToken.getToken()));
+        }
+        pipeline.sync();
+    }
+
+    private static void report(String layout, int tokens, long[] result) {
+        System.out.printf("%s: %.1f commands/token, %.0f bytes/token, %d keys%n",
+                layout, (double) result[0] / tokens, (double) result[1] / tokens, result[2]);
+    }
+
+    private static long stat(String info, String name) {
+        return info.lines()
+                .filter(line -> line.startsWith(name + ":"))
+                .mapToLong(line -> Long.parseLong(line.substring(name.length() + 1).trim()))
+                .findFirst()
+                .orElseThrow();
+    }
+
+}
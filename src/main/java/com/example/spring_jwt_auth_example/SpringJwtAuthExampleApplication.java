@@ -2,8 +2,10 @@ package com.example.spring_jwt_auth_example;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class SpringJwtAuthExampleApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,92 @@
+package com.example.spring_jwt_auth_example.configuration;
+
+import com.example.spring_jwt_auth_example.repository.ReadReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Основная БД (spring.datasource) и реплики для чтения (app.datasource.replicas).
+JPA работает через ReadReplicaRoutingDataSource, миграции Flyway - всегда на основной БД.
+Метрики пулов (hikaricp.connections.active, pending, max ...): основной пул - бин, его привязывает Spring Boot,
+пулы реплик - не бины, им трекер метрик ставится здесь.
+*/
+@Configuration
+@Profile("!reactive")
+public class DataSourceConfiguration {
+
+    @Value("${app.datasource.replicas}")
+    private List<String> replicaUrls;
+
+    @Value("${app.datasource.replicaPoolSize}")
+    private int replicaPoolSize;
+
+    @Value("${app.datasource.replicaConnectionTimeout}")
+    private Duration replicaConnectionTimeout;
+
+    @Value("${app.datasource.replicaRetryInterval}")
+    private Duration replicaRetryInterval;
+
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReadReplicaRoutingDataSource routingDataSource(@Qualifier("primaryDataSource") HikariDataSource primaryDataSource,
+                                                         MeterRegistry meterRegistry) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (String url : replicaUrls) {
+            if (!url.isBlank()) {
+                HikariDataSource replica = replica(url.trim(), replicas.size(), primaryDataSource);
+                replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+                replicas.put(url.trim(), replica);
+            }
+        }
+
+        return new ReadReplicaRoutingDataSource(primaryDataSource, replicas, replicaRetryInterval);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadReplicaRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    /*
+    Учётные данные и схема - как у основной БД, но без connection-init-sql: CREATE SCHEMA на реплике не выполнится.
+    Пул создаётся при первом чтении, поэтому недоступная при запуске реплика запуску не мешает.
+    Короткий connectionTimeout - чтобы быстро переключиться на другую реплику, если эта недоступна.
+    */
+    private HikariDataSource replica(String url, int index, HikariDataSource primaryDataSource) {
+        HikariDataSource replica = new HikariDataSource();
+        replica.setPoolName("replica-" + index);
+        replica.setJdbcUrl(url);
+        replica.setUsername(primaryDataSource.getUsername());
+        replica.setPassword(primaryDataSource.getPassword());
+        replica.setSchema(primaryDataSource.getSchema());
+        replica.setReadOnly(true);
+        replica.setMaximumPoolSize(replicaPoolSize);
+        replica.setConnectionTimeout(replicaConnectionTimeout.toMillis());
+        return replica;
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.example.spring_jwt_auth_example.configuration;
+
+import com.example.spring_jwt_auth_example.metrics.AuthFailureTelemetry;
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics;
+import com.example.spring_jwt_auth_example.security.BCryptStrengthCalibrator;
+import com.example.spring_jwt_auth_example.security.ReactiveAccessTokenDenylist;
+import com.example.spring_jwt_auth_example.security.ReactiveSecurityVersionStore;
+import com.example.spring_jwt_auth_example.security.ReactiveUserDetailsServiceImpl;
+import com.example.spring_jwt_auth_example.security.jwt.JwtUtils;
+import com.example.spring_jwt_auth_example.security.jwt.ReactiveJwtAuthenticationEntryPoint;
+import com.example.spring_jwt_auth_example.security.jwt.ReactiveJwtTokenFilter;
+import com.example.spring_jwt_auth_example.security.jwt.VerifiedTokenCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
+import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+/*
+Аналог SecurityConfiguration для профиля reactive (WebFlux + R2DBC + Lettuce).
+*/
+@Configuration
+@Profile("reactive")
+@EnableWebFluxSecurity
+@EnableReactiveMethodSecurity
+@RequiredArgsConstructor
+public class ReactiveSecurityConfiguration {
+
+    private final ReactiveUserDetailsServiceImpl userDetailsService;
+
+    private final ReactiveJwtAuthenticationEntryPoint jwtAuthenticationEntryPoint;
+
+    @Value("${app.password.strength}")
+    private int passwordStrength;
+
+    @Value("${app.password.targetHashTime}")
+    private Duration targetHashTime;
+
+    @Value("${app.password.minStrength}")
+    private int minPasswordStrength;
+
+    @Value("${app.password.maxStrength}")
+    private int maxPasswordStrength;
+
+    @Value("${app.password.hashingThreads}")
+    private int hashingThreads;
+
+    @Value("${app.password.queueCapacity}")
+    private int hashingQueueCapacity;
+
+    /*
+    BCrypt нельзя выполнять на event loop. Отдельный планировщик с ограниченным числом потоков и очередью:
+    при переполнении задача отклоняется (RejectedExecutionException), и клиент получает 503.
+    */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler passwordHashingScheduler() {
+        int threads = hashingThreads > 0 ? hashingThreads : Runtime.getRuntime().availableProcessors();
+
+        return Schedulers.newBoundedElastic(threads, hashingQueueCapacity, "password-hashing");
+    }
+
+    @Bean
+    public PasswordEncoder passwordEncoder() {
+        int strength = passwordStrength > 0
+                ? passwordStrength
+                : BCryptStrengthCalibrator.calibrate(targetHashTime, minPasswordStrength, maxPasswordStrength);
+
+        return new BCryptPasswordEncoder(strength);
+    }
+
+    /*
+    Проверка пароля (matches) выполняется на passwordHashingScheduler, устаревшие хэши пересчитываются при входе.
+    */
+    @Bean
+    public ReactiveAuthenticationManager authenticationManager() {
+        UserDetailsRepositoryReactiveAuthenticationManager authenticationManager =
+                new UserDetailsRepositoryReactiveAuthenticationManager(userDetailsService);
+
+        authenticationManager.setPasswordEncoder(passwordEncoder());
+        authenticationManager.setScheduler(passwordHashingScheduler());
+        authenticationManager.setUserDetailsPasswordService(userDetailsService);
+
+        return authenticationManager;
+    }
+
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http, JwtUtils jwtUtils,
+                                                         VerifiedTokenCache verifiedTokenCache,
+                                                         ReactiveSecurityVersionStore securityVersionStore,
+                                                         ReactiveAccessTokenDenylist accessTokenDenylist,
+                                                         AuthFailureTelemetry failureTelemetry,
+                                                         AuthMetrics authMetrics) {
+        ReactiveJwtTokenFilter jwtTokenFilter = new ReactiveJwtTokenFilter(jwtUtils, verifiedTokenCache,
+                userDetailsService, securityVersionStore, accessTokenDenylist, failureTelemetry, authMetrics);
+
+        return http.authorizeExchange(exchange ->
+                        exchange.pathMatchers("/api/v1/auth/**").permitAll()
+                                .pathMatchers("/api/v1/app/**").permitAll()
+                                .pathMatchers("/.well-known/**").permitAll()
+                                .pathMatchers("/actuator/health", "/actuator/prometheus").permitAll()
+                                .pathMatchers("/api/v1/admin/**").hasRole("ADMIN")
+                                .anyExchange().authenticated()
+                )
+                .exceptionHandling(configurer -> configurer.authenticationEntryPoint(jwtAuthenticationEntryPoint))
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable)
+                .formLogin(ServerHttpSecurity.FormLoginSpec::disable)
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance()) // без сессий, как STATELESS
+                .authenticationManager(authenticationManager())
+                .addFilterAt(jwtTokenFilter, SecurityWebFiltersOrder.AUTHENTICATION)
+                .build();
+    }
+
+}
@@ -1,59 +1,219 @@
 package com.example.spring_jwt_auth_example.configuration;
 
-import com.example.spring_jwt_auth_example.entity.RefreshToken;
+import com.example.spring_jwt_auth_example.util.RedisSlots;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.NettyCustomizer;
+import io.micrometer.core.instrument.binder.commonspool2.CommonsObjectPool2Metrics;
+import io.netty.channel.Channel;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisNode;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
-import org.springframework.data.redis.core.RedisKeyValueAdapter;
-import org.springframework.data.redis.core.convert.KeyspaceConfiguration;
-import org.springframework.data.redis.repository.configuration.EnableRedisRepositories;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import redis.clients.jedis.JedisPoolConfig;
 
 import java.time.Duration;
-import java.util.Collections;
 
+/*
+Клиент Redis servlet-стека, выбирается app.redis.client:
+- jedis   - пул соединений: каждый вызов берёт соединение из пула и держит его до ответа;
+- lettuce - общее мультиплексированное соединение: команды параллельных запросов пишутся в него не дожидаясь ответов,
+            а их flush объединяется (FlushConsolidationHandler), так что под нагрузкой они уходят пачками.
+Сравнение под одинаковой конкурентностью - RedisClientBenchmark (./gradlew redisClientBenchmark).
+*/
 @Configuration
-@EnableRedisRepositories(keyspaceConfiguration = RedisConfiguration.RefreshTokenKeyspaceConfiguration.class,
-enableKeyspaceEvents = RedisKeyValueAdapter.EnableKeyspaceEvents.ON_STARTUP) // та аннотация
+@Profile("!reactive") // в профиле reactive работает Lettuce из автоконфигурации Spring Boot
 public class RedisConfiguration {
 
-    @Value("${app.jwt.refreshTokenExpiration}")
-    private Duration refreshTokenExpiration;
+    @Value("${app.redis.pool.maxTotal}")
+    private int poolMaxTotal;
 
-    @Bean
-    public JedisConnectionFactory jedisConnectionFactory(RedisProperties redisProperties) { // фабрика клиентских подключений к Redis
-        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration();
+    @Value("${app.redis.pool.minIdle}")
+    private int poolMinIdle;
 
-        /*
-        RedisStandaloneConfiguration - Работаем в режиме одиночного сервиса.
-         */
+    @Value("${app.redis.pool.maxWait}")
+    private Duration poolMaxWait;
 
-        configuration.setHostName(redisProperties.getHost());
-        configuration.setPort(redisProperties.getPort());
+    @Value("${app.redis.connectTimeout}")
+    private Duration connectTimeout;
+
+    @Value("${app.redis.readTimeout}")
+    private Duration readTimeout;
+
+    @Value("${app.redis.lettuce.flushAfterCommands}")
+    private int flushAfterCommands;
+
+    @Value("${app.redis.lettuce.consolidateWhenNoReadInProgress}")
+    private boolean consolidateWhenNoReadInProgress;
+
+    /*
+    Фабрика клиентских подключений к Redis. Режим задаётся стандартными настройками spring.data.redis:
+    - cluster.nodes - Redis Cluster (ключи пользователя в одном слоте, см. RefreshTokenRepository и RedisSlots);
+    - sentinel.master и sentinel.nodes - Sentinel, подключение к текущему мастеру с переключением при отказе;
+    - иначе - одиночный сервер host:port.
+    */
+    @Bean
+    @ConditionalOnProperty(name = "app.redis.client", havingValue = "jedis", matchIfMissing = true)
+    public JedisConnectionFactory jedisConnectionFactory(RedisProperties redisProperties) {
+        JedisClientConfiguration clientConfiguration = clientConfiguration();
 
-        return new JedisConnectionFactory(configuration);
+        if (RedisSlots.isCluster(redisProperties)) {
+            return new JedisConnectionFactory(clusterConfiguration(redisProperties), clientConfiguration);
+        }
+        if (redisProperties.getSentinel() != null) {
+            return new JedisConnectionFactory(sentinelConfiguration(redisProperties), clientConfiguration);
+        }
+        return new JedisConnectionFactory(standaloneConfiguration(redisProperties), clientConfiguration);
     }
 
     /*
-    Чтобы этот класс заработал, его нужно подключить с помощью аннотации, которую мы используем внутри нашей java-конфигурации.
-    KeyspaceSettings - метод отвечает за удаление наших записей по сущности RefreshToken.
+    Размер пула соединений - реальный предел параллельных обращений к Redis (в кластере - к каждому узлу).
+    С виртуальными потоками запросов может быть сколько угодно, поэтому лишние ждут соединение не дольше maxWait.
+    readTimeout ограничивает ожидание ответа: зависший узел не должен держать поток запроса дольше этого.
+    */
+    private JedisClientConfiguration clientConfiguration() {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(poolMaxTotal);
+        poolConfig.setMaxIdle(poolMaxTotal);
+        poolConfig.setMinIdle(poolMinIdle);
+        poolConfig.setMaxWait(poolMaxWait);
+        poolConfig.setBlockWhenExhausted(true);
+
+        poolConfig.setJmxNamePrefix("jedis"); // имя пула в метриках commons.pool2.*
+
+        return JedisClientConfiguration.builder()
+                .connectTimeout(connectTimeout)
+                .readTimeout(readTimeout)
+                .usePooling()
+                .poolConfig(poolConfig)
+                .build();
+    }
 
+    /*
+    Насыщение пулов Jedis (в кластере - по пулу на узел): commons.pool2.num.active, num.idle и num.waiters с тегом name=jedis*.
+    Пулы commons-pool2 регистрируют себя в JMX, а CommonsObjectPool2Metrics переносит их оттуда в Micrometer.
     */
-    public class RefreshTokenKeyspaceConfiguration extends KeyspaceConfiguration {
+    @Bean
+    @ConditionalOnProperty(name = "app.redis.client", havingValue = "jedis", matchIfMissing = true)
+    public CommonsObjectPool2Metrics jedisPoolMetrics() {
+        return new CommonsObjectPool2Metrics();
+    }
 
-        private static final String REFRESH_TOKEN_KEYSPACE = "refresh_tokens";
+    // Режимы - те же, что у jedisConnectionFactory
+    @Bean
+    @ConditionalOnProperty(name = "app.redis.client", havingValue = "lettuce")
+    public LettuceConnectionFactory lettuceConnectionFactory(RedisProperties redisProperties, ClientResources lettuceClientResources) {
+        boolean cluster = RedisSlots.isCluster(redisProperties);
+        LettuceClientConfiguration clientConfiguration = lettuceClientConfiguration(lettuceClientResources, cluster);
+
+        LettuceConnectionFactory connectionFactory;
+        if (cluster) {
+            connectionFactory = new LettuceConnectionFactory(clusterConfiguration(redisProperties), clientConfiguration);
+        } else if (redisProperties.getSentinel() != null) {
+            connectionFactory = new LettuceConnectionFactory(sentinelConfiguration(redisProperties), clientConfiguration);
+        } else {
+            connectionFactory = new LettuceConnectionFactory(standaloneConfiguration(redisProperties), clientConfiguration);
+        }
 
-        @Override
-        protected Iterable<KeyspaceSettings> initialConfiguration() {
-            KeyspaceSettings keyspaceSettings = new KeyspaceSettings(RefreshToken.class, REFRESH_TOKEN_KEYSPACE);
+        connectionFactory.setShareNativeConnection(true); // одно соединение на все потоки, без пула
+        return connectionFactory;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "app.redis.client", havingValue = "lettuce")
+    public ClientResources lettuceClientResources() {
+        return clientResources(flushAfterCommands, consolidateWhenNoReadInProgress);
+    }
+
+    /*
+    FlushConsolidationHandler откладывает flush, пока идёт чтение ответов или (consolidateWhenNoReadInProgress)
+    до следующего прохода event loop, но не дольше flushAfterCommands команд: записи параллельных запросов
+    уходят в сокет одним системным вызовом. Больше flushAfterCommands - крупнее пачки, но дольше ждёт первая команда пачки.
+    */
+    public static ClientResources clientResources(int flushAfterCommands, boolean consolidateWhenNoReadInProgress) {
+        return ClientResources.builder()
+                .nettyCustomizer(new NettyCustomizer() {
+                    @Override
+                    public void afterChannelInitialized(Channel channel) {
+                        channel.pipeline().addFirst(new FlushConsolidationHandler(flushAfterCommands, consolidateWhenNoReadInProgress));
+                    }
+                })
+                .build();
+    }
 
-            keyspaceSettings.setTimeToLive(refreshTokenExpiration.getSeconds());
+    private LettuceClientConfiguration lettuceClientConfiguration(ClientResources clientResources, boolean cluster) {
+        SocketOptions socketOptions = SocketOptions.builder()
+                .connectTimeout(connectTimeout)
+                .build();
+
+        ClientOptions clientOptions = cluster
+                ? ClusterClientOptions.builder()
+                        .socketOptions(socketOptions)
+                        .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                                .enableAllAdaptiveRefreshTriggers()
+                                .build())
+                        .build()
+                : ClientOptions.builder()
+                        .socketOptions(socketOptions)
+                        .build();
+
+        return LettuceClientConfiguration.builder()
+                .clientResources(clientResources)
+                .clientOptions(clientOptions)
+                .commandTimeout(readTimeout)
+                .build();
+    }
+
+    private static RedisStandaloneConfiguration standaloneConfiguration(RedisProperties redisProperties) {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration();
+        configuration.setHostName(redisProperties.getHost());
+        configuration.setPort(redisProperties.getPort());
+        configuration.setDatabase(redisProperties.getDatabase());
+        configuration.setUsername(redisProperties.getUsername());
+        configuration.setPassword(RedisPassword.of(redisProperties.getPassword()));
+        return configuration;
+    }
+
+    private static RedisSentinelConfiguration sentinelConfiguration(RedisProperties redisProperties) {
+        RedisProperties.Sentinel sentinel = redisProperties.getSentinel();
+
+        RedisSentinelConfiguration configuration = new RedisSentinelConfiguration();
+        configuration.master(sentinel.getMaster());
+        sentinel.getNodes().forEach(node -> configuration.sentinel(RedisNode.fromString(node)));
+        configuration.setSentinelUsername(sentinel.getUsername());
+        configuration.setSentinelPassword(RedisPassword.of(sentinel.getPassword()));
+        configuration.setDatabase(redisProperties.getDatabase());
+        configuration.setUsername(redisProperties.getUsername());
+        configuration.setPassword(RedisPassword.of(redisProperties.getPassword()));
+        return configuration;
+    }
 
-            return Collections.singleton(keyspaceSettings);
+    // Узлы из настроек нужны только для первого подключения: остальную топологию клиент узнаёт от кластера
+    private static RedisClusterConfiguration clusterConfiguration(RedisProperties redisProperties) {
+        RedisProperties.Cluster cluster = redisProperties.getCluster();
 
+        RedisClusterConfiguration configuration = new RedisClusterConfiguration(cluster.getNodes());
+        if (cluster.getMaxRedirects() != null) {
+            configuration.setMaxRedirects(cluster.getMaxRedirects());
         }
+        configuration.setUsername(redisProperties.getUsername());
+        configuration.setPassword(RedisPassword.of(redisProperties.getPassword()));
+        return configuration;
     }
 
 }
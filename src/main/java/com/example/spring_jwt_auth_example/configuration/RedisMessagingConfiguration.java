@@ -0,0 +1,60 @@
+package com.example.spring_jwt_auth_example.configuration;
+
+import com.example.spring_jwt_auth_example.repository.ReadYourWritesWindow;
+import com.example.spring_jwt_auth_example.security.AccessTokenDenylist;
+import com.example.spring_jwt_auth_example.security.UserDetailsCache;
+import com.example.spring_jwt_auth_example.service.UserAvailabilityFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+Подписки Redis pub/sub - нужны в обоих режимах (servlet и reactive), поэтому отдельно от RedisConfiguration.
+*/
+@Configuration
+public class RedisMessagingConfiguration {
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    /*
+    Контейнер подписок Redis pub/sub.
+    Канал user_invalidation - другой узел изменил или зарегистрировал пользователя: удаляем его из локального кэша
+    и отмечаем username занятым (для уже существующих пользователей это ничего не меняет);
+    пока реплики догоняют основную БД, этого пользователя читаем с основной БД (ReadYourWritesWindow).
+    Канал revoked_jti_feed - другой узел отозвал Access Token, добавляем его jti в локальный фильтр.
+    */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       UserDetailsCache userDetailsCache,
+                                                                       AccessTokenDenylist accessTokenDenylist,
+                                                                       UserAvailabilityFilter availabilityFilter,
+                                                                       ReadYourWritesWindow readYourWrites) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("redis-listener-");
+        executor.setVirtualThreads(virtualThreads); // в режиме виртуальных потоков слушатели тоже на них
+        container.setTaskExecutor(executor);
+
+        container.addMessageListener((message, pattern) -> {
+            String username = new String(message.getBody(), StandardCharsets.UTF_8);
+            userDetailsCache.evict(username);
+            availabilityFilter.markTaken(username, null);
+            readYourWrites.markWritten(username);
+        }, new ChannelTopic(UserDetailsCache.INVALIDATION_CHANNEL));
+
+        container.addMessageListener((message, pattern) ->
+                        accessTokenDenylist.onRevoked(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(AccessTokenDenylist.REVOCATION_CHANNEL));
+
+        return container;
+    }
+
+}
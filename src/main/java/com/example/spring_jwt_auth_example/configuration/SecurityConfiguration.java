@@ -1,11 +1,16 @@
 package com.example.spring_jwt_auth_example.configuration;
 
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics;
+import com.example.spring_jwt_auth_example.security.BCryptStrengthCalibrator;
+import com.example.spring_jwt_auth_example.security.BoundedPasswordEncoder;
 import com.example.spring_jwt_auth_example.security.UserDetailsServiceImpl;
 import com.example.spring_jwt_auth_example.security.jwt.JwtAuthenticationEntryPoint;
 import com.example.spring_jwt_auth_example.security.jwt.JwtTokenFilter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.auditing.config.AuditingConfiguration;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -20,7 +25,10 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.time.Duration;
+
 @Configuration
+@Profile("!reactive") // в профиле reactive безопасность настраивает ReactiveSecurityConfiguration
 @EnableMethodSecurity
 @RequiredArgsConstructor
 public class SecurityConfiguration {
@@ -31,9 +39,43 @@ public class SecurityConfiguration {
 
     private final JwtTokenFilter jwtTokenFilter;
 
+    private final AuthMetrics authMetrics;
+
+    @Value("${app.password.strength}")
+    private int passwordStrength;
+
+    @Value("${app.password.targetHashTime}")
+    private Duration targetHashTime;
+
+    @Value("${app.password.minStrength}")
+    private int minPasswordStrength;
+
+    @Value("${app.password.maxStrength}")
+    private int maxPasswordStrength;
+
+    @Value("${app.password.hashingThreads}")
+    private int hashingThreads;
+
+    @Value("${app.password.queueCapacity}")
+    private int hashingQueueCapacity;
+
+    @Value("${app.password.maxWait}")
+    private Duration hashingMaxWait;
+
+    /*
+    BCryptPasswordEncoder - используется для кодирования паролей.
+    Хэширование выполняется на отдельном ограниченном пуле (BoundedPasswordEncoder), а не на потоках Tomcat.
+    Если app.password.strength = 0, сложность подбирается при старте под app.password.targetHashTime.
+    В кластере лучше задать её явно, чтобы все узлы хэшировали одинаково.
+    */
     @Bean
-    public PasswordEncoder passwordEncoder() { // BCryptPasswordEncoder - используется для кодирования паролей.
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder() {
+        int strength = passwordStrength > 0
+                ? passwordStrength
+                : BCryptStrengthCalibrator.calibrate(targetHashTime, minPasswordStrength, maxPasswordStrength);
+        int threads = hashingThreads > 0 ? hashingThreads : Runtime.getRuntime().availableProcessors();
+
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(strength), threads, hashingQueueCapacity, hashingMaxWait, authMetrics);
     }
 
     @Bean
@@ -42,6 +84,7 @@ public class SecurityConfiguration {
 
         authenticationProvider.setUserDetailsService(userDetailsService);
         authenticationProvider.setPasswordEncoder(passwordEncoder());
+        authenticationProvider.setUserDetailsPasswordService(userDetailsService); // пересчёт хэша при входе, если сложность выросла
 
         return authenticationProvider;
     }
@@ -66,6 +109,9 @@ public class SecurityConfiguration {
         http.authorizeHttpRequests((auth) ->
                 auth.requestMatchers("/api/v1/auth/**").permitAll()
                         .requestMatchers("/api/v1/app/**").permitAll()
+                        .requestMatchers("/.well-known/**").permitAll()
+                        .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll() // для балансировщика и Prometheus, снаружи закрывать на уровне сети
+                        .requestMatchers("/api/v1/admin/**").hasRole("ADMIN")
                         .anyRequest().authenticated()
         )
                 .exceptionHandling(configurer -> configurer.authenticationEntryPoint(jwtAuthenticationEntryPoint))
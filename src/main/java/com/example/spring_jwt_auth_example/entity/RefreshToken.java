@@ -4,35 +4,35 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.springframework.data.annotation.Id;
-import org.springframework.data.redis.core.RedisHash;
-import org.springframework.data.redis.core.index.Indexed;
 
 import java.time.Instant;
+import java.util.List;
 
-@RedisHash("refresh_tokens") // Аннотация говорит spring-data-redis, что сущность RefreshToken д.б. сохранена в Redis как хэш-структура. refresh_tokens - это имя хэша, в котором будут храниться данные сущности.
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
-public class RefreshToken {
+public class RefreshToken { // Хранится в Redis, см. RefreshTokenRepository
 
-    /*
-    @Indexed - поле, помеченное данной аннотацией, будет использоваться для поиска и индексирования данных в Redis.
-    Т.е. поля будут индексированными, что позволит быстро и эффективно искать и получать записи по этим полям.
-     */
-
-    @Id // см. импорт - идентификатор сущности (уникален)
-    @Indexed // см. импорт.
-    private Long id;
-
-    @Indexed
     private Long userId;
 
-    @Indexed
     private String token;
 
-    @Indexed
     private Instant expiryDate;
 
+    private String familyId; // общий для всех токенов, полученных друг из друга через refresh
+
+    /*
+    Данные владельца, достаточные для нового Access Token - при refresh не нужно обращаться к БД.
+    */
+    private String username;
+
+    private String email;
+
+    private List<String> roles;
+
+    private Long securityVersion; // версия безопасности владельца, при которой записаны его данные, см. SecurityVersionStore
+
+    private Instant ownerLoadedAt; // когда данные владельца прочитаны из БД, см. RefreshTokenService.withCurrentOwner
+
 }
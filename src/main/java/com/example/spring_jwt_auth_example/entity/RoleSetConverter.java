@@ -0,0 +1,25 @@
+package com.example.spring_jwt_auth_example.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.Set;
+
+/*
+Роли пользователя хранятся одним числом в app_users.roles_mask (бит на роль, см. RoleType),
+поэтому пользователь читается без join и второго запроса к user_roles.
+*/
+@Converter
+public class RoleSetConverter implements AttributeConverter<Set<RoleType>, Integer> {
+
+    @Override
+    public Integer convertToDatabaseColumn(Set<RoleType> roles) {
+        return RoleType.toMask(roles);
+    }
+
+    @Override
+    public Set<RoleType> convertToEntityAttribute(Integer mask) {
+        return RoleType.fromMask(mask == null ? 0 : mask);
+    }
+
+}
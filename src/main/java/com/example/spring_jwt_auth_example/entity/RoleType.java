@@ -1,9 +1,51 @@
 package com.example.spring_jwt_auth_example.entity;
 
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
 public enum RoleType {
 
+    // Порядок не менять: бит роли в app_users.roles_mask - её ordinal. Новые роли добавлять в конец
     ROLE_USER,
     ROLE_ADMIN,
-    ROLE_MANAGER
+    ROLE_MANAGER;
+
+    private static final RoleType[] VALUES = values();
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    public static int toMask(Collection<RoleType> roles) {
+        int mask = 0;
+        if (roles != null) {
+            for (RoleType role : roles) {
+                mask |= role.bit();
+            }
+        }
+        return mask;
+    }
+
+    // Роли из клаймов токена или записи Refresh Token
+    public static int toMaskFromNames(Collection<String> names) {
+        int mask = 0;
+        if (names != null) {
+            for (String name : names) {
+                mask |= valueOf(name).bit();
+            }
+        }
+        return mask;
+    }
+
+    public static Set<RoleType> fromMask(int mask) {
+        Set<RoleType> roles = EnumSet.noneOf(RoleType.class);
+        for (RoleType role : VALUES) {
+            if ((mask & role.bit()) != 0) {
+                roles.add(role);
+            }
+        }
+        return roles;
+    }
 
 }
@@ -6,19 +6,34 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.util.HashSet;
+import java.util.EnumSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "app_users")
+@Table(name = "app_users", uniqueConstraints = {
+        @UniqueConstraint(name = User.USERNAME_CONSTRAINT, columnNames = "username"),
+        @UniqueConstraint(name = User.EMAIL_CONSTRAINT, columnNames = "email")
+})
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class User { // Будет храниться в БД
 
+    // Уникальность username и email обеспечивает БД (db/migration): регистрация - один insert без предварительных проверок
+    public static final String USERNAME_CONSTRAINT = "uk_app_users_username";
+
+    public static final String EMAIL_CONSTRAINT = "uk_app_users_email";
+
+    public static final String ID_SEQUENCE = "app_users_seq";
+
+    /*
+    Id из последовательности с шагом 50 (оптимизатор pooled): Hibernate получает блок id одним nextval
+    и может объединять insert в JDBC-пакеты - с IDENTITY это невозможно.
+    */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = 50)
     private Long id;
 
     private String username;
@@ -27,11 +42,10 @@ public class User { // Будет храниться в БД
 
     private String password;
 
-    @ElementCollection(targetClass = RoleType.class, fetch = FetchType.EAGER) // Получать роли вместе с пользователями
-    @JoinTable(name = "user_roles", joinColumns = @JoinColumn(name = "user_id"))
-    @Column(name = "roles", nullable = false)
-    @Enumerated(EnumType.STRING)
+    // Маска ролей в той же строке, см. RoleSetConverter; default 0 - чтобы столбец добавился к существующим строкам
+    @Convert(converter = RoleSetConverter.class)
+    @Column(name = "roles_mask", nullable = false, columnDefinition = "integer default 0")
     @Builder.Default
-    private Set<RoleType> roles = new HashSet<>();
+    private Set<RoleType> roles = EnumSet.noneOf(RoleType.class);
 
 }
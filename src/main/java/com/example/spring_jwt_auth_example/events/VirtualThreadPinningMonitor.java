@@ -0,0 +1,94 @@
+package com.example.spring_jwt_auth_example.events;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/*
+Работает только в режиме виртуальных потоков (spring.threads.virtual.enabled=true).
+Подписывается на JFR-событие jdk.VirtualThreadPinned: виртуальный поток заблокировался внутри synchronized
+(или native-кода) и удерживает поток-носитель. Такие места в драйверах и пулах съедают выигрыш от виртуальных потоков.
+*/
+@Component
+@Slf4j
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static final int LOGGED_FRAMES = 8;
+
+    @Value("${app.virtualThreads.pinnedThreshold}")
+    private Duration pinnedThreshold;
+
+    private final Map<String, LongAdder> pinnedBySite = new ConcurrentHashMap<>(); // число блокировок по месту в коде
+
+    private final LongAdder pinnedCount = new LongAdder();
+
+    private RecordingStream recordingStream;
+
+    @PostConstruct
+    public void start() {
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(pinnedThreshold).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+
+        log.info("Virtual thread pinning monitor started, threshold {} ms", pinnedThreshold.toMillis());
+    }
+
+    @PreDestroy
+    public void stop() {
+        recordingStream.close();
+    }
+
+    public long getPinnedCount() {
+        return pinnedCount.sum();
+    }
+
+    public Map<String, Long> getPinnedBySite() {
+        return pinnedBySite.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().sum()));
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCount.increment();
+
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            log.warn("Virtual thread pinned for {} ms (no stack trace)", event.getDuration().toMillis());
+            return;
+        }
+
+        String site = frame(stackTrace.getFrames().get(0));
+        LongAdder counter = pinnedBySite.computeIfAbsent(site, k -> new LongAdder());
+        counter.increment();
+
+        if (counter.sum() == 1) { // полный стек пишем только для нового места, дальше лишь считаем
+            log.warn("Virtual thread pinned for {} ms at:\n\t{}", event.getDuration().toMillis(),
+                    stackTrace.getFrames().stream()
+                            .limit(LOGGED_FRAMES)
+                            .map(VirtualThreadPinningMonitor::frame)
+                            .collect(Collectors.joining("\n\t")));
+        }
+    }
+
+    private static String frame(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+}
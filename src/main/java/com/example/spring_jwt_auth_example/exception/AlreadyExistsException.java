@@ -1,8 +1,32 @@
 package com.example.spring_jwt_auth_example.exception;
 
+import com.example.spring_jwt_auth_example.entity.User;
+import org.springframework.dao.DataIntegrityViolationException;
+
 public class AlreadyExistsException extends RuntimeException {
 
     public AlreadyExistsException(String message) {
         super(message);
     }
+
+    /*
+    Нарушение уникального ограничения app_users при insert - пользователь с таким username или email уже есть.
+    Имя ограничения есть в тексте ошибки Postgres, который JPA и R2DBC оборачивают по-разному, поэтому ищем по всей цепочке причин.
+    Другие нарушения целостности возвращаются как есть.
+    */
+    public static RuntimeException fromConstraintViolation(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message == null) {
+                continue;
+            }
+            if (message.contains(User.USERNAME_CONSTRAINT)) {
+                return new AlreadyExistsException("Username already exists!");
+            }
+            if (message.contains(User.EMAIL_CONSTRAINT)) {
+                return new AlreadyExistsException("Email already exists!");
+            }
+        }
+        return e;
+    }
 }
@@ -0,0 +1,29 @@
+package com.example.spring_jwt_auth_example.exception;
+
+import lombok.Getter;
+
+@Getter
+public class JwtVerificationException extends RuntimeException {
+
+    private final Reason reason;
+
+    /*
+    Стек не заполняется: невалидные и просроченные токены - обычный поток запросов,
+    а сбор стека стоил бы дороже самой проверки.
+    */
+    public JwtVerificationException(Reason reason, String message) {
+        super(message, null, false, false);
+        this.reason = reason;
+    }
+
+    public enum Reason {
+
+        MALFORMED,      // Невалидный токен (структура, Base64URL или JSON)
+        UNSUPPORTED,    // Неподдерживаемый алгоритм, неподписанный токен или неизвестные расширения (crit, zip)
+        BAD_SIGNATURE,  // Подпись не совпадает или ключ подписи неизвестен
+        EXPIRED,        // Закончился срок действия (exp)
+        NOT_YET_VALID   // Токен ещё не действует (nbf)
+
+    }
+
+}
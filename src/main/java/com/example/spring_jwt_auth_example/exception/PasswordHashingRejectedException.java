@@ -0,0 +1,9 @@
+package com.example.spring_jwt_auth_example.exception;
+
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    public PasswordHashingRejectedException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.example.spring_jwt_auth_example.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+public class RateLimitExceededException extends RuntimeException {
+
+    private final Duration retryAfter; // когда в корзине появится следующий токен
+
+    // Стек не заполняется: при переборе паролей отказы идут потоком, и каждый должен стоить как можно меньше
+    public RateLimitExceededException(String message, Duration retryAfter) {
+        super(message, null, false, false);
+        this.retryAfter = retryAfter;
+    }
+
+}
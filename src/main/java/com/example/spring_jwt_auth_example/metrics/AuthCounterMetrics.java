@@ -0,0 +1,118 @@
+package com.example.spring_jwt_auth_example.metrics;
+
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics.Outcome;
+import com.example.spring_jwt_auth_example.repository.ReadReplicaRoutingDataSource;
+import com.example.spring_jwt_auth_example.repository.RefreshTokenNearCache;
+import com.example.spring_jwt_auth_example.security.AccessTokenDenylist;
+import com.example.spring_jwt_auth_example.security.AuthRateLimiter;
+import com.example.spring_jwt_auth_example.security.UserDetailsCache;
+import com.example.spring_jwt_auth_example.security.jwt.VerifiedTokenCache;
+import com.example.spring_jwt_auth_example.service.RefreshTokenExpiryProcessor;
+import com.example.spring_jwt_auth_example.service.UserAvailabilityFilter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.function.ToDoubleFunction;
+
+/*
+Счётчики компонентов аутентификации (LongAdder с геттерами) в /actuator/prometheus.
+Значения не копируются: FunctionCounter и Gauge читают геттер при каждом снятии метрик,
+так что на горячем пути по-прежнему только инкремент LongAdder.
+Кэши - по соглашению Micrometer (cache.gets с result=hit/miss, cache.evictions, cache.size) с тегом cache.
+ReadReplicaRoutingDataSource есть только в профиле !reactive.
+*/
+@Component
+@RequiredArgsConstructor
+public class AuthCounterMetrics implements MeterBinder {
+
+    // Исходы, которые AuthFailureTelemetry записывает как отказы
+    private static final EnumSet<Outcome> FAILURES = EnumSet.of(Outcome.MALFORMED, Outcome.UNSUPPORTED, Outcome.BAD_SIGNATURE,
+            Outcome.EXPIRED, Outcome.REVOKED, Outcome.STALE_VERSION, Outcome.USER_NOT_FOUND, Outcome.UNAUTHENTICATED, Outcome.ERROR);
+
+    private final RefreshTokenExpiryProcessor expiryProcessor;
+
+    private final VerifiedTokenCache verifiedTokenCache;
+
+    private final UserDetailsCache userDetailsCache;
+
+    private final RefreshTokenNearCache nearCache;
+
+    private final AccessTokenDenylist accessTokenDenylist;
+
+    private final UserAvailabilityFilter availabilityFilter;
+
+    private final AuthRateLimiter rateLimiter;
+
+    private final AuthFailureTelemetry failureTelemetry;
+
+    private final ObjectProvider<ReadReplicaRoutingDataSource> routingDataSource;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // Истёкшие токены, снятые с очереди, и устаревшие ссылки, удалённые из множеств пользователей
+        counter(registry, "refresh_tokens.expiry.expired", expiryProcessor, RefreshTokenExpiryProcessor::getExpiredCount);
+        counter(registry, "refresh_tokens.expiry.stale_index_entries", expiryProcessor,
+                RefreshTokenExpiryProcessor::getStaleIndexEntryCount);
+        counter(registry, "refresh_tokens.expiry.batches", expiryProcessor, RefreshTokenExpiryProcessor::getBatchCount);
+        counter(registry, "refresh_tokens.expiry.failures", expiryProcessor, RefreshTokenExpiryProcessor::getFailureCount);
+        gauge(registry, "refresh_tokens.expiry.owned_shards", expiryProcessor, RefreshTokenExpiryProcessor::getOwnedShardCount);
+
+        counter(registry, "cache.gets", verifiedTokenCache, VerifiedTokenCache::getHitCount, "cache", "verified_tokens", "result", "hit");
+        counter(registry, "cache.gets", verifiedTokenCache, VerifiedTokenCache::getMissCount, "cache", "verified_tokens", "result", "miss");
+        counter(registry, "cache.evictions", verifiedTokenCache, VerifiedTokenCache::getEvictionCount, "cache", "verified_tokens");
+        gauge(registry, "cache.size", verifiedTokenCache, VerifiedTokenCache::size, "cache", "verified_tokens");
+
+        counter(registry, "cache.gets", userDetailsCache, UserDetailsCache::getHitCount, "cache", "user_details", "result", "hit");
+        counter(registry, "cache.gets", userDetailsCache, UserDetailsCache::getMissCount, "cache", "user_details", "result", "miss");
+        gauge(registry, "cache.size", userDetailsCache, UserDetailsCache::size, "cache", "user_details");
+
+        counter(registry, "cache.gets", nearCache, RefreshTokenNearCache::getHitCount, "cache", "refresh_tokens", "result", "hit");
+        counter(registry, "cache.gets", nearCache, RefreshTokenNearCache::getMissCount, "cache", "refresh_tokens", "result", "miss");
+        counter(registry, "cache.evictions", nearCache, RefreshTokenNearCache::getInvalidationCount, "cache", "refresh_tokens");
+        counter(registry, "cache.puts.rejected", nearCache, RefreshTokenNearCache::getRejectedPutCount, "cache", "refresh_tokens");
+        gauge(registry, "cache.size", nearCache, RefreshTokenNearCache::size, "cache", "refresh_tokens");
+        gauge(registry, "cache.bytes", nearCache, RefreshTokenNearCache::getEstimatedBytes, "cache", "refresh_tokens");
+
+        // Ложные срабатывания фильтра - разность probable и confirmed
+        counter(registry, "auth.denylist.hits", accessTokenDenylist, AccessTokenDenylist::getProbableHitCount, "result", "probable");
+        counter(registry, "auth.denylist.hits", accessTokenDenylist, AccessTokenDenylist::getConfirmedHitCount, "result", "confirmed");
+
+        counter(registry, "auth.availability.checks", availabilityFilter, UserAvailabilityFilter::getAnsweredFromMemoryCount,
+                "source", "memory");
+        counter(registry, "auth.availability.checks", availabilityFilter, UserAvailabilityFilter::getDatabaseCheckCount,
+                "source", "database");
+
+        counter(registry, "auth.rate_limit.rejected", rateLimiter, AuthRateLimiter::getRejectedCount);
+        counter(registry, "auth.rate_limit.unlimited", rateLimiter, AuthRateLimiter::getUnlimitedCount);
+        counter(registry, "auth.rate_limit.sync_failures", rateLimiter, AuthRateLimiter::getSyncFailureCount);
+        gauge(registry, "auth.rate_limit.buckets", rateLimiter, AuthRateLimiter::size);
+
+        for (Outcome reason : FAILURES) {
+            counter(registry, "auth.failures", failureTelemetry, telemetry -> telemetry.getFailureCount(reason),
+                    "reason", reason.name().toLowerCase(Locale.ROOT));
+        }
+
+        routingDataSource.ifAvailable(dataSource -> {
+            counter(registry, "datasource.reads", dataSource, ReadReplicaRoutingDataSource::getReplicaReadCount, "target", "replica");
+            counter(registry, "datasource.reads", dataSource, ReadReplicaRoutingDataSource::getPrimaryReadCount, "target", "primary");
+            counter(registry, "datasource.replica.failovers", dataSource, ReadReplicaRoutingDataSource::getFailoverCount);
+            gauge(registry, "datasource.replicas.available", dataSource, ReadReplicaRoutingDataSource::getAvailableReplicaCount);
+        });
+    }
+
+    private static <T> void counter(MeterRegistry registry, String name, T source, ToDoubleFunction<T> count, String... tags) {
+        FunctionCounter.builder(name, source, count).tags(tags).register(registry);
+    }
+
+    private static <T> void gauge(MeterRegistry registry, String name, T source, ToDoubleFunction<T> value, String... tags) {
+        Gauge.builder(name, source, value).tags(tags).register(registry);
+    }
+
+}
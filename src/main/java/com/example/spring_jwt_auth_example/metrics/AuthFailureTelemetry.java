@@ -0,0 +1,148 @@
+package com.example.spring_jwt_auth_example.metrics;
+
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics.Outcome;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Отказы аутентификации (невалидный, просроченный, отозванный токен, 401 и т.п.) вместо строки лога на каждый запрос:
+на потоке запроса - только инкремент счётчика окна по паре причина-путь, без блокировок и без ввода-вывода.
+Раз в window окно подменяется новым, а итог старого пишется в лог одной строкой на пару:
+число отказов и пример - сообщение первого отказа этой пары (не больше exemplarsPerWindow примеров на окно).
+Путей в окне не больше maxPaths, остальные считаются под путём "other". Общие счётчики по причинам - getFailureCount.
+Отказ, записанный в момент подмены окна, может не попасть в итог, но всегда попадает в общий счётчик.
+*/
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class AuthFailureTelemetry {
+
+    private static final String OTHER_PATH = "other";
+
+    @Value("${app.authFailures.window}")
+    private Duration window;
+
+    @Value("${app.authFailures.maxPaths}")
+    private int maxPaths;
+
+    @Value("${app.authFailures.exemplarsPerWindow}")
+    private int exemplarsPerWindow;
+
+    private final TaskScheduler taskScheduler;
+
+    private final LongAdder[] totals = newTotals();
+
+    private volatile Window current;
+
+    @PostConstruct
+    public void init() {
+        current = new Window(exemplarsPerWindow);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        taskScheduler.scheduleAtFixedRate(this::flush, Instant.now().plus(window), window);
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    // detail - сообщение исключения, может стать примером в итоге окна
+    public void record(Outcome reason, String path, String detail) {
+        totals[reason.ordinal()].increment();
+        current.record(reason, path == null ? OTHER_PATH : path, detail, maxPaths);
+    }
+
+    public long getFailureCount(Outcome reason) {
+        return totals[reason.ordinal()].sum();
+    }
+
+    private void flush() {
+        Window finished = current;
+        current = new Window(exemplarsPerWindow);
+
+        finished.counters.forEach((key, counter) -> log.warn("Auth failures in last {}: reason={}, path={}, count={}, example: {}",
+                window, key.reason.name().toLowerCase(Locale.ROOT), key.path, counter.count.sum(),
+                counter.exemplar.get() == null ? "-" : counter.exemplar.get()));
+    }
+
+    private static LongAdder[] newTotals() {
+        LongAdder[] totals = new LongAdder[Outcome.values().length];
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = new LongAdder();
+        }
+        return totals;
+    }
+
+    private record Key(Outcome reason, String path) {
+    }
+
+    private static final class Counter {
+
+        private final LongAdder count = new LongAdder();
+
+        private final AtomicReference<String> exemplar = new AtomicReference<>();
+
+    }
+
+    private static final class Window {
+
+        private final Map<Key, Counter> counters = new ConcurrentHashMap<>();
+
+        private final AtomicInteger paths = new AtomicInteger();
+
+        private final AtomicInteger exemplarsLeft;
+
+        private Window(int exemplars) {
+            this.exemplarsLeft = new AtomicInteger(exemplars);
+        }
+
+        /*
+        Место под новый путь занимается только при создании его записи (внутри computeIfAbsent),
+        поэтому повторные промахи по уже учтённому пути или по "other" лимит не расходуют.
+        Пока лимит не достигнут, записи создаются под своим путём, после - остальные попадают в "other".
+        */
+        private void record(Outcome reason, String path, String detail, int maxPaths) {
+            Key key = new Key(reason, path);
+            Counter counter = counters.get(key);
+            if (counter == null) {
+                counter = paths.get() < maxPaths
+                        ? counters.computeIfAbsent(key, created -> newPathCounter(maxPaths))
+                        : null;
+                if (counter == null) {
+                    counter = counters.computeIfAbsent(new Key(reason, OTHER_PATH), created -> new Counter());
+                }
+            }
+
+            counter.count.increment();
+            if (counter.exemplar.get() == null && detail != null
+                    && exemplarsLeft.get() > 0 && exemplarsLeft.getAndDecrement() > 0) {
+                counter.exemplar.compareAndSet(null, detail);
+            }
+        }
+
+        // null - лимит путей исчерпан другими потоками, запись не создаётся
+        private Counter newPathCounter(int maxPaths) {
+            return paths.incrementAndGet() <= maxPaths ? new Counter() : null;
+        }
+    }
+
+}
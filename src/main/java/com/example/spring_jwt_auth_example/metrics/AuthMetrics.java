@@ -0,0 +1,187 @@
+package com.example.spring_jwt_auth_example.metrics;
+
+import com.example.spring_jwt_auth_example.exception.JwtVerificationException;
+import com.example.spring_jwt_auth_example.exception.PasswordHashingRejectedException;
+import com.example.spring_jwt_auth_example.exception.RefreshTokenException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/*
+Таймеры пути аутентификации (экспортируются через /actuator/prometheus):
+- auth.filter             - этапы JwtTokenFilter и ReactiveJwtTokenFilter (stage) с исходом запроса (outcome);
+- auth.password           - BCrypt matches и encode, включая ожидание в очереди BoundedPasswordEncoder;
+- auth.service            - authenticateUser, refreshToken и logout в SecurityService;
+- spring.data.repository.invocations - вызовы RefreshTokenRepository, с теми же тегами,
+  что Spring Boot ставит вызовам UserRepository (см. management.metrics.data.repository в application.yml).
+Счётчики компонентов (кэши, denylist, лимиты, отказы) привязывает AuthCounterMetrics.
+Время меряется System.nanoTime, а таймеры создаются один раз и дальше берутся из массива или карты:
+на горячем пути фильтра - только чтение часов и запись в гистограмму (см. JwtTokenFilterBenchmark, metrics=on/off).
+*/
+@Component
+public class AuthMetrics {
+
+    public static final String REPOSITORY_METRIC = "spring.data.repository.invocations";
+
+    private final MeterRegistry registry;
+
+    private final Timer[][] filterTimers = new Timer[FilterStage.values().length][Outcome.values().length];
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public AuthMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /*
+    Записывает время этапа от stageStart и возвращает момент окончания - начало следующего этапа.
+    Таймер создаётся при первом появлении пары этап-исход; повторная регистрация вернёт тот же таймер, так что гонка безвредна.
+    */
+    public long recordFilterStage(FilterStage stage, Outcome outcome, long stageStart) {
+        long now = System.nanoTime();
+
+        Timer timer = filterTimers[stage.ordinal()][outcome.ordinal()];
+        if (timer == null) {
+            timer = Timer.builder("auth.filter")
+                    .tag("stage", stage.tagValue())
+                    .tag("outcome", outcome.tagValue())
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(1_000))
+                    .maximumExpectedValue(Duration.ofSeconds(1))
+                    .register(registry);
+            filterTimers[stage.ordinal()][outcome.ordinal()] = timer;
+        }
+
+        timer.record(now - stageStart, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    public void recordPassword(String operation, Outcome outcome, long start) {
+        timer("auth.password", operation, outcome, Duration.ofMillis(1), Duration.ofSeconds(10))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    public <T> T timeServiceCall(String operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            timer("auth.service", operation, Outcome.SUCCESS, Duration.ofMillis(1), Duration.ofSeconds(10))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (RuntimeException e) {
+            timer("auth.service", operation, Outcome.of(e), Duration.ofMillis(1), Duration.ofSeconds(10))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    public void timeServiceCall(String operation, Runnable call) {
+        timeServiceCall(operation, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    // Гистограмму этому таймеру, как и таймерам Spring Data, включают настройки management.metrics.distribution
+    public <T> T timeRepositoryCall(String repository, String method, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            repositoryTimer(repository, method, "SUCCESS", "None").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (RuntimeException e) {
+            repositoryTimer(repository, method, "ERROR", e.getClass().getSimpleName())
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    public void timeRepositoryCall(String repository, String method, Runnable call) {
+        timeRepositoryCall(repository, method, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private Timer timer(String name, String operation, Outcome outcome, Duration min, Duration max) {
+        return timers.computeIfAbsent(name + '|' + operation + '|' + outcome, key -> Timer.builder(name)
+                .tag("operation", operation)
+                .tag("outcome", outcome.tagValue())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(min)
+                .maximumExpectedValue(max)
+                .register(registry));
+    }
+
+    private Timer repositoryTimer(String repository, String method, String state, String exception) {
+        return timers.computeIfAbsent(repository + '|' + method + '|' + state + '|' + exception, key -> Timer.builder(REPOSITORY_METRIC)
+                .tag("repository", repository)
+                .tag("method", method)
+                .tag("state", state)
+                .tag("exception", exception)
+                .register(registry));
+    }
+
+    public enum FilterStage {
+
+        EXTRACTION,     // Токен из заголовка Authorization
+        VERIFICATION,   // Подпись (или VerifiedTokenCache), версия безопасности и denylist
+        USER_LOADING,   // Principal из клаймов или, для старых токенов, из UserDetailsServiceImpl
+        TOTAL;          // Весь фильтр
+
+        private String tagValue() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+    }
+
+    public enum Outcome {
+
+        // Исходы фильтра
+        VALID, MISSING, MALFORMED, UNSUPPORTED, BAD_SIGNATURE, EXPIRED, REVOKED, STALE_VERSION, USER_NOT_FOUND,
+        // Ответ 401 (JwtAuthenticationEntryPoint)
+        UNAUTHENTICATED,
+        // Проверка пароля
+        MATCHED, MISMATCHED,
+        // Вызовы сервиса и хэширование
+        SUCCESS, BAD_CREDENTIALS, INVALID_TOKEN, REJECTED, ERROR;
+
+        private final String tagValue = name().toLowerCase(Locale.ROOT);
+
+        public static Outcome of(JwtVerificationException.Reason reason) {
+            return switch (reason) {
+                case MALFORMED -> MALFORMED;
+                case UNSUPPORTED -> UNSUPPORTED;
+                case BAD_SIGNATURE -> BAD_SIGNATURE;
+                case EXPIRED, NOT_YET_VALID -> EXPIRED;
+            };
+        }
+
+        public static Outcome of(RuntimeException e) {
+            if (e instanceof AuthenticationException) {
+                return BAD_CREDENTIALS;
+            }
+            if (e instanceof RefreshTokenException) {
+                return INVALID_TOKEN;
+            }
+            if (e instanceof PasswordHashingRejectedException) {
+                return REJECTED;
+            }
+            return ERROR;
+        }
+
+        private String tagValue() {
+            return tagValue;
+        }
+
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.example.spring_jwt_auth_example.repository;
+
+import com.example.spring_jwt_auth_example.entity.RoleType;
+import com.example.spring_jwt_auth_example.entity.User;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+Неблокирующий доступ к той же таблице app_users, что и UserRepository, через R2DBC.
+Роли хранятся маской в той же строке (roles_mask, см. RoleSetConverter), поэтому пользователь - одна строка без join.
+*/
+@Repository
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveUserRepository {
+
+    private static final String SELECT_USER = "select id, username, email, password, roles_mask from app_users ";
+
+    private final DatabaseClient databaseClient;
+
+    public Mono<User> findByUsername(String username) {
+        return toUser(databaseClient.sql(SELECT_USER + "where username = :username")
+                .bind("username", username));
+    }
+
+    public Mono<User> findById(Long id) {
+        return toUser(databaseClient.sql(SELECT_USER + "where id = :id")
+                .bind("id", id));
+    }
+
+    public Mono<Boolean> existsByUsername(String username) {
+        return databaseClient.sql("select exists(select 1 from app_users where lower(username) = lower(:username))")
+                .bind("username", username)
+                .map(row -> row.get(0, Boolean.class))
+                .one();
+    }
+
+    public Mono<Boolean> existsByEmail(String email) {
+        return databaseClient.sql("select exists(select 1 from app_users where lower(email) = lower(:email))")
+                .bind("email", email)
+                .map(row -> row.get(0, Boolean.class))
+                .one();
+    }
+
+    public Mono<Long> count() {
+        return databaseClient.sql("select count(*) from app_users")
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    // Только username и email - для построения UserAvailabilityFilter
+    public Flux<User> findAllIdentifiers() {
+        return databaseClient.sql("select username, email from app_users")
+                .map(row -> User.builder()
+                        .username(row.get("username", String.class))
+                        .email(row.get("email", String.class))
+                        .build())
+                .all();
+    }
+
+    /*
+    Id берётся из той же последовательности, что и у JPA. Каждый nextval резервирует блок из 50 id, из которого здесь
+    используется один, - для единичных регистраций это приемлемо.
+    */
+    public Mono<User> save(User user) {
+        return databaseClient.sql("insert into app_users (id, username, email, password, roles_mask) "
+                        + "values (nextval('" + User.ID_SEQUENCE + "'), :username, :email, :password, :rolesMask)")
+                .filter(statement -> statement.returnGeneratedValues("id"))
+                .bind("username", user.getUsername())
+                .bind("email", user.getEmail())
+                .bind("password", user.getPassword())
+                .bind("rolesMask", RoleType.toMask(user.getRoles()))
+                .map(row -> row.get("id", Long.class))
+                .one()
+                .map(id -> {
+                    user.setId(id);
+                    return user;
+                });
+    }
+
+    public Mono<Long> updatePassword(String username, String password) {
+        return databaseClient.sql("update app_users set password = :password where username = :username")
+                .bind("password", password)
+                .bind("username", username)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private Mono<User> toUser(DatabaseClient.GenericExecuteSpec spec) {
+        return spec.map((row, metadata) -> User.builder()
+                        .id(row.get("id", Long.class))
+                        .username(row.get("username", String.class))
+                        .email(row.get("email", String.class))
+                        .password(row.get("password", String.class))
+                        .roles(RoleType.fromMask(row.get("roles_mask", Integer.class)))
+                        .build())
+                .one();
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.example.spring_jwt_auth_example.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+Маршрутизация соединений JDBC: read-only транзакции (см. @Transactional(readOnly = true) на UserRepository) идут на реплики,
+всё остальное - на основную БД. Реплики выбираются по кругу.
+Реплика, к которой не удалось подключиться, выводится из ротации на retryInterval - чтение уходит на следующую реплику,
+а если доступных реплик нет, то на основную БД.
+Работает только за LazyConnectionDataSourceProxy (см. DataSourceConfiguration): признак read-only становится известен
+после начала транзакции, поэтому настоящее соединение должно браться при первом запросе, а не в начале транзакции.
+*/
+@Slf4j
+public class ReadReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final Duration retryInterval;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final LongAdder replicaReads = new LongAdder();
+
+    private final LongAdder primaryReads = new LongAdder();
+
+    private final LongAdder failovers = new LongAdder();
+
+    // replicas - реплики по имени (jdbc-url), пустой набор - всё идёт на основную БД
+    public ReadReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, Duration retryInterval) {
+        this.primary = primary;
+        this.retryInterval = retryInterval;
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+    }
+
+    // Чтения внутри action идут на основную БД - для данных, которые реплика могла ещё не получить
+    public static <T> T onPrimary(Supplier<T> action) {
+        if (PRIMARY_ONLY.get() != null) {
+            return action.get();
+        }
+
+        PRIMARY_ONLY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            PRIMARY_ONLY.remove();
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return primary.getConnection();
+        }
+
+        if (PRIMARY_ONLY.get() == null && !replicas.isEmpty()) {
+            int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get((start + i) % replicas.size());
+                if (replica.isAvailable()) {
+                    try {
+                        Connection connection = replica.dataSource.getConnection();
+                        replicaReads.increment();
+                        return connection;
+                    } catch (SQLException e) {
+                        replica.downUntil = System.currentTimeMillis() + retryInterval.toMillis();
+                        failovers.increment();
+                        log.warn("Read replica {} is unavailable, excluded for {}: {}", replica.name, retryInterval, e.getMessage());
+                    }
+                }
+            }
+        }
+
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    public long getReplicaReadCount() {
+        return replicaReads.sum();
+    }
+
+    public long getPrimaryReadCount() {
+        return primaryReads.sum();
+    }
+
+    public long getFailoverCount() {
+        return failovers.sum();
+    }
+
+    public int getAvailableReplicaCount() {
+        return (int) replicas.stream().filter(Replica::isAvailable).count();
+    }
+
+    // Пулы реплик создаются здесь же, поэтому и закрываются здесь; основную БД закрывает Spring
+    @Override
+    public void close() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private static final class Replica {
+
+        private final String name;
+
+        private final DataSource dataSource;
+
+        private volatile long downUntil;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        private boolean isAvailable() {
+            return System.currentTimeMillis() >= downUntil;
+        }
+    }
+
+}
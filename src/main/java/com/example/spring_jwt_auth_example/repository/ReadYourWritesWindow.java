@@ -0,0 +1,72 @@
+package com.example.spring_jwt_auth_example.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*
+Окно read-your-writes: сразу после записи реплика может ещё не получить изменения,
+поэтому чтения по только что записанным username и email какое-то время идут на основную БД.
+Записи на других узлах отмечаются через канал user_invalidation (см. RedisMessagingConfiguration).
+Сверх CLEANUP_THRESHOLD истёкшие отметки вычищаются проходом по всей карте - не чаще раза в SWEEP_INTERVAL_MILLIS:
+при потоке регистраций выше порога за время окна иначе такой проход делал бы каждый markWritten.
+*/
+@Component
+public class ReadYourWritesWindow {
+
+    private static final int CLEANUP_THRESHOLD = 10_000;
+
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+    @Value("${app.datasource.readYourWritesWindow}")
+    private Duration window;
+
+    private final Map<String, Long> writtenUntil = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastSweep = new AtomicLong();
+
+    public void markWritten(String... keys) {
+        long now = System.currentTimeMillis();
+        for (String key : keys) {
+            if (key != null) {
+                writtenUntil.put(lowerCase(key), now + window.toMillis());
+            }
+        }
+
+        if (writtenUntil.size() > CLEANUP_THRESHOLD) {
+            sweep(now);
+        }
+    }
+
+    // query выполняется на основной БД, если по key недавно была запись
+    public <T> T read(String key, Supplier<T> query) {
+        String normalized = lowerCase(key);
+        Long until = writtenUntil.get(normalized);
+        if (until == null) {
+            return query.get();
+        }
+        if (until < System.currentTimeMillis()) {
+            writtenUntil.remove(normalized, until);
+            return query.get();
+        }
+        return ReadReplicaRoutingDataSource.onPrimary(query);
+    }
+
+    private void sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last >= SWEEP_INTERVAL_MILLIS && lastSweep.compareAndSet(last, now)) {
+            writtenUntil.values().removeIf(until -> until < now);
+        }
+    }
+
+    private static String lowerCase(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.example.spring_jwt_auth_example.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Локальный (near) кэш записей Refresh Token: токены, выданные или полученные через refresh на этом узле.
+Клиент обычно приходит за refresh на тот же узел, поэтому запись чаще всего уже здесь, и обмен токена
+(RefreshTokenRepository.rotate, ReactiveRefreshTokenService) не читает её из Redis перед ROTATE_SCRIPT.
+Запись - только подсказка: скрипт сверяет её с Redis и при расхождении (токен обменян или удалён на другом узле)
+просит повторить, тогда запись выбрасывается (invalidate) и читается из Redis. Поэтому узлы не рассылают друг другу
+инвалидации, а устаревшая запись занимает память не дольше срока самого токена и не дольше maxAge.
+Размер ограничен числом записей и оценкой занимаемой памяти; при заполнении новые записи не кладутся, пока не истекут старые.
+Истёкшие записи при заполнении вычищаются проходом по всему кэшу - не чаще раза в SWEEP_INTERVAL_MILLIS,
+иначе в заполненном кэше такой проход делал бы каждый put.
+*/
+@Component
+public class RefreshTokenNearCache {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 96; // узел ConcurrentHashMap, Entry и заголовки строк
+
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+    @Value("${app.refreshTokens.nearCache.maxEntries}")
+    private int maxEntries;
+
+    @Value("${app.refreshTokens.nearCache.maxMemory}")
+    private DataSize maxMemory;
+
+    @Value("${app.refreshTokens.nearCache.maxAge}")
+    private Duration maxAge;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong estimatedBytes = new AtomicLong();
+
+    private final AtomicLong lastSweep = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    private final LongAdder rejectedPuts = new LongAdder();
+
+    // value - запись в формате RefreshTokenRepository.encode: строки неизменяемы, в отличие от RefreshToken
+    public void put(String token, String value, long expiresAtMillis) {
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(value, Math.min(expiresAtMillis, now + maxAge.toMillis()), sizeOf(token, value));
+        if (entry.expiresAtMillis <= now) {
+            return;
+        }
+
+        if (entries.size() >= maxEntries || estimatedBytes.get() + entry.bytes > maxMemory.toBytes()) {
+            sweep(now);
+            if (entries.size() >= maxEntries || estimatedBytes.get() + entry.bytes > maxMemory.toBytes()) {
+                rejectedPuts.increment();
+                return;
+            }
+        }
+
+        Entry previous = entries.put(token, entry);
+        estimatedBytes.addAndGet(entry.bytes - (previous == null ? 0 : previous.bytes));
+    }
+
+    // Запись в формате RefreshTokenRepository.encode; null - записи нет в кэше (или она истекла), тогда нужно идти в Redis
+    public String get(String token) {
+        Entry entry = entries.get(token);
+
+        if (entry != null && entry.expiresAtMillis > System.currentTimeMillis()) {
+            hits.increment();
+            return entry.value;
+        }
+
+        if (entry != null && entries.remove(token, entry)) {
+            estimatedBytes.addAndGet(-entry.bytes);
+        }
+        misses.increment();
+        return null;
+    }
+
+    // Запись разошлась с Redis: токен обменян или удалён на другом узле
+    public void invalidate(String token) {
+        invalidations.increment();
+        remove(token);
+    }
+
+    // Токен обменян или удалён этим узлом
+    public void remove(String token) {
+        Entry removed = entries.remove(token);
+        if (removed != null) {
+            estimatedBytes.addAndGet(-removed.bytes);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public long getRejectedPutCount() {
+        return rejectedPuts.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes.get();
+    }
+
+    private void sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last >= SWEEP_INTERVAL_MILLIS && lastSweep.compareAndSet(last, now)) {
+            removeExpired(now);
+        }
+    }
+
+    private void removeExpired(long now) {
+        entries.forEach((token, entry) -> {
+            if (entry.expiresAtMillis <= now && entries.remove(token, entry)) {
+                estimatedBytes.addAndGet(-entry.bytes);
+            }
+        });
+    }
+
+    private static int sizeOf(String token, String value) {
+        return ENTRY_OVERHEAD_BYTES + 2 * (token.length() + value.length());
+    }
+
+    private record Entry(String value, long expiresAtMillis, int bytes) {
+    }
+
+}
@@ -1,16 +1,632 @@
 package com.example.spring_jwt_auth_example.repository;
 
 import com.example.spring_jwt_auth_example.entity.RefreshToken;
-import org.springframework.data.repository.CrudRepository;
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Repository;
 
-import java.util.Optional;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
+/*
+Хранилище Refresh Token в Redis без вторичных индексов Spring Data:
+refresh_token:{userId}.<id>        - строка "userId|expiryDate(ms)|familyId|roles|email|username|securityVersion|ownerLoadedAt(ms)"
+                                     с собственным TTL,
+                                     поиск по токену - один GET
+user_refresh_tokens:{userId}       - множество токенов пользователя, нужно для logout; живёт столько же, сколько самый новый токен
+refresh_family:{userId}<familyId>  - текущий (единственный живой) токен семейства
+refresh_token_used:{userId}.<id>   - метка "токен уже обменян", значение - "userId|familyId"
+refresh_token_expiry:<shard>       - ZSET "userId|token" -> expiryDate(ms), очередь истечения для RefreshTokenExpiryProcessor;
+                                     шард - userId % EXPIRY_SHARDS
+Токен имеет вид "<userId>.<id>", поэтому по нему самому известен владелец. {userId} - hash tag Redis Cluster:
+все ключи пользователя (кроме очереди истечения) лежат в одном слоте, и скрипты ниже работают с одним узлом кластера.
+Очередь истечения общая для многих пользователей, поэтому обновляется отдельной командой после скрипта.
+Токены и множества, выданные до появления hash tag (токен - просто UUID, множество user_refresh_tokens:<userId>),
+работают только без кластера и исчезают сами через refreshTokenExpiration после обновления.
+Семейство - цепочка токенов, полученных друг из друга через refresh, начиная с одного логина.
+Запись, обмен и удаление выполняются Lua-скриптами атомарно. Все ключи, которые трогает скрипт, передаются ему в KEYS
+(иначе Redis Cluster не может проверить слот): ключи, зависящие от данных в Redis, вызывающий сначала читает,
+а скрипт проверяет, что прочитанное не изменилось, и иначе просит повторить.
+Запись предъявленного токена при обмене берётся из RefreshTokenNearCache, если она есть на этом узле.
+Та же раскладка используется ReactiveRefreshTokenService.
+*/
 @Repository
-public interface RefreshTokenRepository extends CrudRepository<RefreshToken, Long> {
+@RequiredArgsConstructor
+public class RefreshTokenRepository {
 
-    Optional<RefreshToken> findByToken(String token);
+    public static final String TOKEN_KEY_PREFIX = "refresh_token:";
 
-    void deleteByUserId(Long userId);
+    public static final String USER_TOKENS_KEY_PREFIX = "user_refresh_tokens:";
+
+    public static final String FAMILY_KEY_PREFIX = "refresh_family:";
+
+    public static final String USED_KEY_PREFIX = "refresh_token_used:";
+
+    public static final String EXPIRY_KEY_PREFIX = "refresh_token_expiry:";
+
+    public static final int EXPIRY_SHARDS = 16;
+
+    private static final String METRIC_NAME = "RefreshTokenRepository"; // тег repository в метриках
+
+    private static final char SEPARATOR = '|';
+
+    private static final char OWNER_SEPARATOR = '.';
+
+    private static final String ROLES_SEPARATOR = ",";
+
+    private static final String RETRY = "RETRY";
+
+    // Сколько раз скрипт повторяется, если данные изменились между чтением и скриптом
+    public static final int SCRIPT_ATTEMPTS = 5;
+
+    /*
+    KEYS[1] - ключ токена, KEYS[2] - множество токенов пользователя, KEYS[3] - ключ семейства
+    ARGV[1] - значение, ARGV[2] - токен, ARGV[3] - TTL в мс
+    TTL множества только продлевается: при миграции старые токены приходят с меньшим остатком.
+    */
+    public static final RedisScript<Long> SAVE_SCRIPT = RedisScript.of("""
+            redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[3])
+            redis.call('SADD', KEYS[2], ARGV[2])
+            if redis.call('PTTL', KEYS[2]) < tonumber(ARGV[3]) then
+                redis.call('PEXPIRE', KEYS[2], ARGV[3])
+            end
+            redis.call('SET', KEYS[3], ARGV[2], 'PX', ARGV[3])
+            return 1
+            """, Long.class);
+
+    /*
+    Погашение предъявленного токена и выпуск нового одной атомарной операцией.
+    Запись предъявленного токена вызывающий уже прочитал: по ней известны владелец и семейство,
+    поэтому все ключи, которые трогает скрипт, передаются в KEYS.
+    KEYS[1] - ключ предъявленного токена, KEYS[2] - его метка "обменян", KEYS[3] - множество токенов владельца,
+    KEYS[4] - ключ нового токена, KEYS[5] - ключ семейства
+    ARGV[1] - предъявленный токен, ARGV[2] - прочитанное значение его записи, ARGV[3] - текущее время (мс),
+    ARGV[4] - новый токен, ARGV[5] - значение его записи, ARGV[6] - его TTL (мс), ARGV[7] - значение метки "обменян"
+    Результат: "OK", "EXPIRED" или "RETRY" - запись изменилась или исчезла после чтения (токен обменян параллельным
+    запросом или запись взята из устаревшего near-кэша), тогда вызывающий читает её из Redis заново.
+    */
+    public static final RedisScript<String> ROTATE_SCRIPT = RedisScript.of("""
+            local value = redis.call('GET', KEYS[1])
+            if value ~= ARGV[2] then
+                return 'RETRY'
+            end
+            redis.call('UNLINK', KEYS[1])
+            redis.call('SREM', KEYS[3], ARGV[1])
+            if tonumber(string.match(value, '^%d+|(%d+)')) < tonumber(ARGV[3]) then
+                return 'EXPIRED'
+            end
+
+            redis.call('SET', KEYS[2], ARGV[7], 'PX', ARGV[6])
+            redis.call('SET', KEYS[4], ARGV[5], 'PX', ARGV[6])
+            redis.call('SADD', KEYS[3], ARGV[4])
+            if redis.call('PTTL', KEYS[3]) < tonumber(ARGV[6]) then
+                redis.call('PEXPIRE', KEYS[3], ARGV[6])
+            end
+            redis.call('SET', KEYS[5], ARGV[4], 'PX', ARGV[6])
+            return 'OK'
+            """, String.class);
+
+    /*
+    Предъявление уже обменянного токена означает, что его кто-то украл: отзываем текущий токен семейства.
+    KEYS[1] - ключ семейства, KEYS[2] - ключ текущего токена семейства, KEYS[3] - множество токенов владельца (если известен)
+    ARGV[1] - текущий токен семейства, как его прочитал вызывающий
+    Результат: 1 - отозван, 0 - семейство за это время сменило текущий токен (вызывающий читает его заново).
+    */
+    public static final RedisScript<Long> REVOKE_FAMILY_SCRIPT = RedisScript.of("""
+            if redis.call('GET', KEYS[1]) ~= ARGV[1] then
+                return 0
+            end
+            redis.call('UNLINK', KEYS[2])
+            if KEYS[3] then
+                redis.call('SREM', KEYS[3], ARGV[1])
+            end
+            redis.call('UNLINK', KEYS[1])
+            return 1
+            """, Long.class);
+
+    // KEYS - множества токенов пользователей (в кластере - из одного слота). Результат - их элементы, по списку на множество
+    public static final RedisScript<List> MEMBERS_SCRIPT = RedisScript.of("""
+            local result = {}
+            for k = 1, #KEYS do
+                result[k] = redis.call('SMEMBERS', KEYS[k])
+            end
+            return result
+            """, List.class);
+
+    /*
+    Удаление множеств токенов пользователей вместе с самими токенами. Элементы множеств вызывающий читает заранее
+    (MEMBERS_SCRIPT), чтобы передать ключи токенов в KEYS; множество, которое с тех пор изменилось, и его токены
+    не удаляются, остальные - удаляются.
+    KEYS[1..n] - множества (без кластера - любые, в кластере - из одного слота), KEYS[n+j] - ключ j-го токена
+    ARGV[1] - n, ARGV[2j] - номер множества j-го токена, ARGV[2j+1] - сам токен
+    Элементы очереди истечения не трогаем: RefreshTokenExpiryProcessor снимет их в свой срок.
+    Результат - список: число удалённых токенов, затем номера (с 1) изменившихся множеств (вызывающий читает их заново).
+    */
+    public static final RedisScript<List> DELETE_BY_USER_SCRIPT = RedisScript.of("""
+            local sets = tonumber(ARGV[1])
+            local counts = {}
+            local changed = {}
+            for i = sets + 1, #KEYS do
+                local j = i - sets
+                local set = tonumber(ARGV[2 * j])
+                counts[set] = (counts[set] or 0) + 1
+                if redis.call('SISMEMBER', KEYS[set], ARGV[2 * j + 1]) == 0 then
+                    changed[set] = true
+                end
+            end
+
+            local result = {0}
+            for k = 1, sets do
+                if not changed[k] and redis.call('SCARD', KEYS[k]) ~= (counts[k] or 0) then
+                    changed[k] = true
+                end
+                if changed[k] then
+                    result[#result + 1] = k
+                else
+                    redis.call('UNLINK', KEYS[k])
+                end
+            end
+            for i = sets + 1, #KEYS do
+                if not changed[tonumber(ARGV[2 * (i - sets)])] then
+                    redis.call('UNLINK', KEYS[i])
+                    result[1] = result[1] + 1
+                end
+            end
+            return result
+            """, List.class);
+
+    // KEYS[1] - шард очереди истечения, ARGV[1] - элемент погашенного токена, ARGV[2] - элемент нового, ARGV[3] - его expiryDate (мс)
+    public static final RedisScript<Long> MOVE_EXPIRY_SCRIPT = RedisScript.of("""
+            redis.call('ZREM', KEYS[1], ARGV[1])
+            redis.call('ZADD', KEYS[1], ARGV[3], ARGV[2])
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RefreshTokenNearCache nearCache;
+
+    private final AuthMetrics authMetrics; // каждый вызов - в таймер spring.data.repository.invocations, как у UserRepository
+
+    // TTL записи берётся из expiryDate, поэтому истёкший токен Redis удалит сам
+    public RefreshToken save(RefreshToken refreshToken) {
+        return authMetrics.timeRepositoryCall(METRIC_NAME, "save", () -> {
+            redisTemplate.execute(SAVE_SCRIPT, saveKeys(refreshToken), saveArgs(refreshToken).toArray());
+            redisTemplate.opsForZSet().add(expiryKey(refreshToken.getUserId()),
+                    expiryMember(refreshToken.getUserId(), refreshToken.getToken()), refreshToken.getExpiryDate().toEpochMilli());
+            cache(refreshToken);
+
+            return refreshToken;
+        });
+    }
+
+    /*
+    Гасит предъявленный токен и выпускает вместо него новый (с id newTokenId) с тем же владельцем и семейством.
+    Сначала читается запись предъявленного токена (по ней строятся ключи скрипта), затем ROTATE_SCRIPT;
+    если запись успела измениться, оба шага повторяются. Нет записи - проверяется метка "обменян".
+    Запись берётся из near-кэша, если токен выпущен этим узлом, - тогда обмен обходится одним запросом к Redis.
+    Скрипт сверяет её с Redis, поэтому устаревшая запись кэша стоит только повтора с чтением из Redis.
+    update применяется к новому токену до записи - например, чтобы обновить данные владельца. Вызывается один раз
+    за обмен, на первой попытке, где нашлась запись, поэтому списание лимита или чтение БД внутри update не повторяются.
+    Если update заменил данные владельца, повторы берут их из его результата (см. withOwner),
+    если вернул токен как есть - данные владельца из перечитанной записи.
+    */
+    public RotationResult rotate(String presentedToken, String newTokenId, Instant newExpiryDate, UnaryOperator<RefreshToken> update) {
+        return authMetrics.timeRepositoryCall(METRIC_NAME, "rotate", () -> {
+            boolean updated = false;
+            RefreshToken owner = null; // данные владельца, заменённые update
+            for (int attempt = 0; attempt < SCRIPT_ATTEMPTS; attempt++) {
+                String value = attempt == 0 ? nearCache.get(presentedToken) : null;
+                if (value == null) {
+                    value = redisTemplate.opsForValue().get(tokenKey(presentedToken));
+                }
+                if (value == null) {
+                    return new RotationResult(revokeFamily(presentedToken), null);
+                }
+
+                RefreshToken successor = successor(decode(presentedToken, value), newTokenId, newExpiryDate);
+                RefreshToken rotated;
+                if (!updated) {
+                    rotated = update.apply(successor);
+                    owner = rotated == successor ? null : rotated;
+                    updated = true;
+                } else {
+                    rotated = owner == null ? successor : withOwner(successor, owner);
+                }
+                String result = redisTemplate.execute(ROTATE_SCRIPT, rotateKeys(presentedToken, rotated),
+                        rotateArgs(presentedToken, value, rotated).toArray());
+                if (RETRY.equals(result)) {
+                    nearCache.invalidate(presentedToken);
+                    continue;
+                }
+
+                nearCache.remove(presentedToken);
+                RotationResult rotation = rotationResult(result, rotated);
+                if (rotation.getStatus() == RotationStatus.OK) {
+                    redisTemplate.execute(MOVE_EXPIRY_SCRIPT, List.of(expiryKey(rotated.getUserId())),
+                            moveExpiryArgs(presentedToken, rotated).toArray());
+                    cache(rotated);
+                }
+                return rotation;
+            }
+
+            return new RotationResult(RotationStatus.NOT_FOUND, null);
+        });
+    }
+
+    /*
+    Множество старого формата - отдельным вызовом: в кластере оно в другом слоте (и его там просто нет).
+    Результат - множества, которые так и не удалось удалить, см. deleteTokenSets.
+    */
+    public List<String> deleteByUserId(Long userId) {
+        return authMetrics.timeRepositoryCall(METRIC_NAME, "deleteByUserId", () -> {
+            List<String> changing = new ArrayList<>(deleteTokenSets(List.of(userTokensKey(userId))).getChangingSets());
+            changing.addAll(deleteTokenSets(List.of(legacyUserTokensKey(userId))).getChangingSets());
+            return changing;
+        });
+    }
+
+    /*
+    Удаляет множества токенов пользователей (в кластере - из одного слота) вместе с их токенами.
+    Если между чтением множеств и удалением в множестве добавился или исчез токен (параллельный refresh),
+    оба шага повторяются только для таких множеств; остальные уже удалены. Множества, которые менялись
+    на всех SCRIPT_ATTEMPTS попытках, возвращаются в результате - решение о них за вызывающим.
+    */
+    public DeletionResult deleteTokenSets(List<String> userTokensKeys) {
+        long deleted = 0;
+        List<String> remaining = userTokensKeys;
+        for (int attempt = 0; attempt < SCRIPT_ATTEMPTS && !remaining.isEmpty(); attempt++) {
+            List<?> members = redisTemplate.execute(MEMBERS_SCRIPT, remaining);
+            List<?> result = redisTemplate.execute(DELETE_BY_USER_SCRIPT, deleteKeys(remaining, members),
+                    deleteArgs(members).toArray());
+
+            Set<Integer> changed = changedSets(result);
+            forEachDeletedToken(members, changed, nearCache::remove);
+            deleted += deletedTokens(result);
+            remaining = selectSets(remaining, changed);
+        }
+
+        return new DeletionResult(deleted, remaining);
+    }
+
+    // Повторное предъявление обменянного токена: отзываем текущий токен его семейства
+    private RotationStatus revokeFamily(String presentedToken) {
+        String used = redisTemplate.opsForValue().get(usedKey(presentedToken));
+        if (used == null) {
+            return RotationStatus.NOT_FOUND;
+        }
+
+        String familyKey = familyKeyOfUsed(used);
+        for (int attempt = 0; attempt < SCRIPT_ATTEMPTS; attempt++) {
+            String current = redisTemplate.opsForValue().get(familyKey);
+            if (current == null) {
+                break;
+            }
+
+            Long userId = ownerOf(used, current);
+            if (userId == null) { // метка и токен старого формата: владелец - только в записи токена
+                String currentValue = redisTemplate.opsForValue().get(tokenKey(current));
+                userId = currentValue == null ? null : decode(current, currentValue).getUserId();
+            }
+
+            Long revoked = redisTemplate.execute(REVOKE_FAMILY_SCRIPT, revokeKeys(familyKey, current, userId),
+                    revokeArgs(current).toArray());
+            if (Long.valueOf(1L).equals(revoked)) {
+                break;
+            }
+        }
+
+        return RotationStatus.REUSED;
+    }
+
+    private void cache(RefreshToken refreshToken) {
+        nearCache.put(refreshToken.getToken(), encode(refreshToken), refreshToken.getExpiryDate().toEpochMilli());
+    }
+
+    public static String newToken(Long userId) {
+        return token(userId, UUID.randomUUID().toString());
+    }
+
+    public static String token(Long userId, String id) {
+        return userId.toString() + OWNER_SEPARATOR + id;
+    }
+
+    // Hash tag Redis Cluster: ключи с одинаковым тегом всегда в одном слоте
+    public static String userTag(Long userId) {
+        return "{" + userId + "}";
+    }
+
+    // Токен с владельцем "42.<id>" - "{42}.<id>"; токен старого формата (UUID) возвращается как есть
+    public static String tagged(String token) {
+        String owner = owner(token);
+        return owner == null ? token : "{" + owner + "}" + token.substring(owner.length());
+    }
+
+    // Id владельца из токена "42.<id>" без обращения к Redis; null - токен старого формата
+    public static String owner(String token) {
+        int separator = token.indexOf(OWNER_SEPARATOR);
+        if (separator <= 0) {
+            return null;
+        }
+        for (int i = 0; i < separator; i++) {
+            if (!Character.isDigit(token.charAt(i))) {
+                return null;
+            }
+        }
+        return token.substring(0, separator);
+    }
+
+    public static String tokenKey(String token) {
+        return TOKEN_KEY_PREFIX + tagged(token);
+    }
+
+    public static String usedKey(String token) {
+        return USED_KEY_PREFIX + tagged(token);
+    }
+
+    public static String userTokensKey(Long userId) {
+        return USER_TOKENS_KEY_PREFIX + userTag(userId);
+    }
+
+    // Множество токенов, выданных до появления hash tag
+    public static String legacyUserTokensKey(Long userId) {
+        return USER_TOKENS_KEY_PREFIX + userId;
+    }
+
+    public static String familyKey(Long userId, String familyId) {
+        return FAMILY_KEY_PREFIX + userTag(userId) + familyId;
+    }
+
+    public static String expiryKey(Long userId) {
+        return EXPIRY_KEY_PREFIX + Math.floorMod(userId, EXPIRY_SHARDS);
+    }
+
+    public static String expiryKey(int shard) {
+        return EXPIRY_KEY_PREFIX + shard;
+    }
+
+    public static String expiryMember(Long userId, String token) {
+        return userId.toString() + SEPARATOR + token;
+    }
+
+    public static List<String> saveKeys(RefreshToken refreshToken) {
+        return List.of(tokenKey(refreshToken.getToken()), userTokensKey(refreshToken.getUserId()),
+                familyKey(refreshToken.getUserId(), familyOf(refreshToken)));
+    }
+
+    public static List<String> saveArgs(RefreshToken refreshToken) {
+        return List.of(encode(refreshToken), refreshToken.getToken(), Long.toString(ttlMillis(refreshToken)));
+    }
+
+    // rotated - новый токен, см. successor
+    public static List<String> rotateKeys(String presentedToken, RefreshToken rotated) {
+        return List.of(tokenKey(presentedToken), usedKey(presentedToken), userTokensKey(rotated.getUserId()),
+                tokenKey(rotated.getToken()), familyKey(rotated.getUserId(), rotated.getFamilyId()));
+    }
+
+    public static List<String> rotateArgs(String presentedToken, String presentedValue, RefreshToken rotated) {
+        return List.of(presentedToken, presentedValue, Long.toString(System.currentTimeMillis()),
+                rotated.getToken(), encode(rotated), Long.toString(ttlMillis(rotated)),
+                rotated.getUserId().toString() + SEPARATOR + rotated.getFamilyId());
+    }
+
+    // userId - владелец семейства, null - неизвестен (тогда множество владельца не чистится)
+    public static List<String> revokeKeys(String familyKey, String currentToken, Long userId) {
+        return userId == null
+                ? List.of(familyKey, tokenKey(currentToken))
+                : List.of(familyKey, tokenKey(currentToken), userTokensKey(userId));
+    }
+
+    public static List<String> revokeArgs(String currentToken) {
+        return List.of(currentToken);
+    }
+
+    // members - результат MEMBERS_SCRIPT для тех же множеств
+    public static List<String> deleteKeys(List<String> userTokensKeys, List<?> members) {
+        List<String> keys = new ArrayList<>(userTokensKeys);
+        for (Object setMembers : members) {
+            for (Object token : (List<?>) setMembers) {
+                keys.add(tokenKey(token.toString()));
+            }
+        }
+        return keys;
+    }
+
+    // result - ответ DELETE_BY_USER_SCRIPT
+    public static long deletedTokens(List<?> result) {
+        return ((Number) result.get(0)).longValue();
+    }
+
+    // Номера (с 0) множеств, которые DELETE_BY_USER_SCRIPT не удалил, потому что они изменились
+    public static Set<Integer> changedSets(List<?> result) {
+        Set<Integer> changed = new HashSet<>();
+        for (int i = 1; i < result.size(); i++) {
+            changed.add(((Number) result.get(i)).intValue() - 1);
+        }
+        return changed;
+    }
+
+    public static List<String> selectSets(List<String> userTokensKeys, Set<Integer> sets) {
+        List<String> selected = new ArrayList<>(sets.size());
+        for (int set = 0; set < userTokensKeys.size(); set++) {
+            if (sets.contains(set)) {
+                selected.add(userTokensKeys.get(set));
+            }
+        }
+        return selected;
+    }
+
+    // Токены удалённых множеств: members - результат MEMBERS_SCRIPT, changed - см. changedSets
+    public static void forEachDeletedToken(List<?> members, Set<Integer> changed, Consumer<String> action) {
+        for (int set = 0; set < members.size(); set++) {
+            if (!changed.contains(set)) {
+                for (Object token : (List<?>) members.get(set)) {
+                    action.accept(token.toString());
+                }
+            }
+        }
+    }
+
+    public static List<String> deleteArgs(List<?> members) {
+        List<String> args = new ArrayList<>();
+        args.add(Integer.toString(members.size()));
+        for (int set = 0; set < members.size(); set++) {
+            for (Object token : (List<?>) members.get(set)) {
+                args.add(Integer.toString(set + 1));
+                args.add(token.toString());
+            }
+        }
+        return args;
+    }
+
+    /*
+    Ключ семейства по метке "обменян": "userId|familyId", у меток старого формата - просто familyId
+    (тогда и ключ семейства старого формата, без hash tag).
+    */
+    public static String familyKeyOfUsed(String used) {
+        Long owner = ownerOfUsed(used);
+        return owner == null ? FAMILY_KEY_PREFIX + used : familyKey(owner, used.substring(used.indexOf(SEPARATOR) + 1));
+    }
+
+    // Владелец семейства - из метки "обменян" или из текущего токена; null - оба старого формата
+    public static Long ownerOf(String used, String currentToken) {
+        Long owner = ownerOfUsed(used);
+        if (owner != null) {
+            return owner;
+        }
+        String tokenOwner = owner(currentToken);
+        return tokenOwner == null ? null : Long.valueOf(tokenOwner);
+    }
+
+    public static List<String> moveExpiryArgs(String presentedToken, RefreshToken rotated) {
+        return List.of(expiryMember(rotated.getUserId(), presentedToken), expiryMember(rotated.getUserId(), rotated.getToken()),
+                Long.toString(rotated.getExpiryDate().toEpochMilli()));
+    }
+
+    /*
+    Новый токен с тем же владельцем, семейством и данными пользователя, что у предъявленного.
+    Записи без семейства (до ротации) получают семейство, равное самому предъявленному токену.
+    */
+    public static RefreshToken successor(RefreshToken previous, String newTokenId, Instant newExpiryDate) {
+        return previous.toBuilder()
+                .token(token(previous.getUserId(), newTokenId))
+                .expiryDate(newExpiryDate)
+                .familyId(familyOf(previous))
+                .build();
+    }
+
+    // Токен с данными владельца из owner - результата обновления на одной из предыдущих попыток обмена
+    public static RefreshToken withOwner(RefreshToken token, RefreshToken owner) {
+        return token.toBuilder()
+                .username(owner.getUsername())
+                .email(owner.getEmail())
+                .roles(owner.getRoles())
+                .securityVersion(owner.getSecurityVersion())
+                .ownerLoadedAt(owner.getOwnerLoadedAt())
+                .build();
+    }
+
+    // result - ответ ROTATE_SCRIPT, кроме RETRY
+    public static RotationResult rotationResult(String result, RefreshToken rotated) {
+        if (result == null) {
+            return new RotationResult(RotationStatus.NOT_FOUND, null);
+        }
+
+        RotationStatus status = RotationStatus.valueOf(result);
+        return new RotationResult(status, status == RotationStatus.OK ? rotated : null);
+    }
+
+    public static String encode(RefreshToken refreshToken) {
+        return refreshToken.getUserId().toString() + SEPARATOR
+                + refreshToken.getExpiryDate().toEpochMilli() + SEPARATOR
+                + familyOf(refreshToken) + SEPARATOR
+                + (refreshToken.getRoles() == null ? "" : String.join(ROLES_SEPARATOR, refreshToken.getRoles())) + SEPARATOR
+                + escape(refreshToken.getEmail()) + SEPARATOR
+                + escape(refreshToken.getUsername()) + SEPARATOR
+                + (refreshToken.getSecurityVersion() == null ? "" : refreshToken.getSecurityVersion()) + SEPARATOR
+                + (refreshToken.getOwnerLoadedAt() == null ? "" : refreshToken.getOwnerLoadedAt().toEpochMilli());
+    }
+
+    /*
+    Записи, созданные до появления семейств, содержат только "userId|expiryDate" - остальные поля у них null;
+    записи до появления версии безопасности - первые шесть полей, до появления ownerLoadedAt - первые семь.
+    */
+    public static RefreshToken decode(String token, String value) {
+        String[] fields = value.split("\\|", 8);
+
+        return RefreshToken.builder()
+                .token(token)
+                .userId(Long.valueOf(fields[0]))
+                .expiryDate(Instant.ofEpochMilli(Long.parseLong(fields[1])))
+                .familyId(fields.length > 2 ? fields[2] : null)
+                .roles(fields.length > 3 && !fields[3].isEmpty() ? Arrays.asList(fields[3].split(ROLES_SEPARATOR)) : null)
+                .email(fields.length > 4 ? unescape(fields[4]) : null)
+                .username(fields.length > 5 ? unescape(fields[5]) : null)
+                .securityVersion(fields.length > 6 && !fields[6].isEmpty() ? Long.valueOf(fields[6]) : null)
+                .ownerLoadedAt(fields.length > 7 && !fields[7].isEmpty() ? Instant.ofEpochMilli(Long.parseLong(fields[7])) : null)
+                .build();
+    }
+
+    public static long ttlMillis(RefreshToken refreshToken) {
+        return Math.max(1L, Duration.between(Instant.now(), refreshToken.getExpiryDate()).toMillis());
+    }
+
+    private static String familyOf(RefreshToken refreshToken) {
+        return refreshToken.getFamilyId() == null ? refreshToken.getToken() : refreshToken.getFamilyId();
+    }
+
+    private static Long ownerOfUsed(String used) {
+        int separator = used.indexOf(SEPARATOR);
+        if (separator <= 0) {
+            return null;
+        }
+        for (int i = 0; i < separator; i++) {
+            if (!Character.isDigit(used.charAt(i))) {
+                return null;
+            }
+        }
+        return Long.valueOf(used.substring(0, separator));
+    }
+
+    // Разделитель "|" внутри email и username экранируем, пустая строка означает отсутствие значения
+    private static String escape(String value) {
+        return value == null ? "" : value.replace("%", "%25").replace("|", "%7C");
+    }
+
+    private static String unescape(String value) {
+        return value.isEmpty() ? null : value.replace("%7C", "|").replace("%25", "%");
+    }
+
+    public enum RotationStatus {
+        OK, NOT_FOUND, EXPIRED, REUSED
+    }
+
+    @lombok.Value
+    public static class RotationResult {
+
+        RotationStatus status;
+
+        RefreshToken refreshToken; // новый токен, только для OK
+
+    }
+
+    @lombok.Value
+    public static class DeletionResult {
+
+        long deletedTokens;
+
+        List<String> changingSets; // множества, которые менялись на каждой попытке и не удалены
+
+    }
 
 }
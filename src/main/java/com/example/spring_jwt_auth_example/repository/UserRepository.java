@@ -1,16 +1,75 @@
 package com.example.spring_jwt_auth_example.repository;
 
+import com.example.spring_jwt_auth_example.entity.RoleType;
 import com.example.spring_jwt_auth_example.entity.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+// Запросы - read-only транзакции, их обслуживают реплики (см. ReadReplicaRoutingDataSource); записи объявляют свои транзакции
+@Transactional(readOnly = true)
 public interface UserRepository extends JpaRepository<User, Long> {
 
-    Optional<User> findByUsername(String username);
+    /*
+    Только то, что нужно для входа, - все поля есть в покрывающем индексе uk_app_users_username (см. V2__auth_lookup_indexes.sql),
+    поэтому таблица не читается.
+    */
+    @Query("select u.id as id, u.username as username, u.email as email, u.password as password, u.roles as roles "
+            + "from User u where u.username = :username")
+    Optional<UserCredentials> findCredentialsByUsername(@Param("username") String username);
 
-    Boolean existsByUsername(String username);
+    // Занятость без учёта регистра - как у уникальных индексов по lower(username) и lower(email)
+    @Query("select count(u) > 0 from User u where lower(u.username) = lower(:username)")
+    Boolean existsByUsername(@Param("username") String username);
 
-    Boolean existsByEmail(String email);
+    @Query("select count(u) > 0 from User u where lower(u.email) = lower(:email)")
+    Boolean existsByEmail(@Param("email") String email);
+
+    // Параметры - уже в нижнем регистре
+    @Query("select lower(u.username) from User u where lower(u.username) in :usernames")
+    List<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
+
+    @Query("select lower(u.email) from User u where lower(u.email) in :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    // Постраничное чтение по id (keyset) для построения UserAvailabilityFilter
+    List<UserIdentifiers> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @Modifying
+    @Transactional
+    @Query("update User u set u.password = :password where u.username = :username")
+    int updatePassword(@Param("username") String username, @Param("password") String password);
+
+    interface UserCredentials {
+
+        Long getId();
+
+        String getUsername();
+
+        String getEmail();
+
+        String getPassword();
+
+        Set<RoleType> getRoles();
+
+    }
+
+    interface UserIdentifiers {
+
+        Long getId();
+
+        String getUsername();
+
+        String getEmail();
+
+    }
 
 }
@@ -0,0 +1,165 @@
+package com.example.spring_jwt_auth_example.security;
+
+import com.example.spring_jwt_auth_example.security.jwt.TokenClaims;
+import com.example.spring_jwt_auth_example.util.ExpiringBloomFilter;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Список отозванных Access Token (по клайму jti) - чтобы logout действовал сразу, а не после истечения токена.
+В Redis: ZSET revoked_jti (jti -> exp в мс) и канал revoked_jti_feed, по которому узлы узнают об отзыве.
+Локально каждый узел держит фильтры Блума по окнам exp: проверка каждого запроса - только в памяти,
+и лишь при вероятном совпадении выполняется точный ZSCORE в Redis.
+Периодическая пересинхронизация с ZSET закрывает пропущенные сообщения (например, при переподключении к Redis).
+*/
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class AccessTokenDenylist {
+
+    public static final String REVOKED_KEY = "revoked_jti";
+
+    public static final String REVOCATION_CHANNEL = "revoked_jti_feed";
+
+    private static final char SEPARATOR = '|';
+
+    // KEYS[1] - ZSET отозванных, ARGV[1] - jti, ARGV[2] - exp (мс), ARGV[3] - канал
+    static final RedisScript<Long> REVOKE_SCRIPT = RedisScript.of("""
+            redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+            return redis.call('PUBLISH', ARGV[3], ARGV[1] .. '|' .. ARGV[2])
+            """, Long.class);
+
+    @Value("${app.jwt.denylist.window}")
+    private Duration window;
+
+    @Value("${app.jwt.denylist.expectedRevocationsPerWindow}")
+    private int expectedRevocationsPerWindow;
+
+    @Value("${app.jwt.denylist.falsePositiveRate}")
+    private double falsePositiveRate;
+
+    @Value("${app.jwt.denylist.resyncInterval}")
+    private Duration resyncInterval;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final TaskScheduler taskScheduler;
+
+    private final LongAdder probableHits = new LongAdder();
+
+    private final LongAdder confirmedHits = new LongAdder();
+
+    private ExpiringBloomFilter revoked;
+
+    @PostConstruct
+    public void init() {
+        revoked = new ExpiringBloomFilter(window, expectedRevocationsPerWindow, falsePositiveRate);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startSync() {
+        resync();
+        taskScheduler.scheduleWithFixedDelay(this::resync, Instant.now().plus(resyncInterval), resyncInterval);
+    }
+
+    /*
+    Отзывает Access Token до истечения его срока. Токены без jti (выданные до его появления) отозвать нельзя.
+    */
+    public void revoke(TokenClaims claims) {
+        if (claims.getTokenId() == null || claims.getExpiration() == null) {
+            return;
+        }
+
+        long expiresAt = claims.getExpiration().toEpochMilli();
+        remember(claims.getTokenId(), expiresAt);
+        redisTemplate.execute(REVOKE_SCRIPT, List.of(REVOKED_KEY),
+                claims.getTokenId(), Long.toString(expiresAt), REVOCATION_CHANNEL);
+    }
+
+    // Проверка без сетевого вызова: false - токен точно не отозван
+    public boolean mightBeRevoked(TokenClaims claims) {
+        return claims.getTokenId() != null && claims.getExpiration() != null
+                && revoked.mightContain(claims.getTokenId(), claims.getExpiration().toEpochMilli());
+    }
+
+    // Точная проверка в Redis - вызывать только после mightBeRevoked
+    public boolean isRevokedExactly(TokenClaims claims) {
+        return recordExactCheck(redisTemplate.opsForZSet().score(REVOKED_KEY, claims.getTokenId()) != null);
+    }
+
+    public boolean isRevoked(TokenClaims claims) {
+        return mightBeRevoked(claims) && isRevokedExactly(claims);
+    }
+
+    // Сообщение из канала revoked_jti_feed: "jti|exp"
+    public void onRevoked(String message) {
+        int separator = message.lastIndexOf(SEPARATOR);
+        if (separator > 0) {
+            remember(message.substring(0, separator), Long.parseLong(message.substring(separator + 1)));
+        }
+    }
+
+    /*
+    Локальный фильтр и счётчики общие с ReactiveAccessTokenDenylist, который ходит в Redis реактивно.
+    */
+    void remember(String tokenId, long expiresAt) {
+        revoked.add(tokenId, expiresAt);
+    }
+
+    // Итог точной проверки в Redis - в счётчики вероятных и подтверждённых совпадений
+    boolean recordExactCheck(boolean confirmed) {
+        probableHits.increment();
+        if (confirmed) {
+            confirmedHits.increment();
+        }
+        return confirmed;
+    }
+
+    public long getProbableHitCount() {
+        return probableHits.sum();
+    }
+
+    /*
+    Ложные срабатывания фильтра - probableHits - confirmedHits.
+    */
+    public long getConfirmedHitCount() {
+        return confirmedHits.sum();
+    }
+
+    /*
+    Удаляет из ZSET истёкшие записи и загружает в фильтр все действующие.
+    Повторное добавление уже известных jti безвредно.
+    */
+    private void resync() {
+        try {
+            long now = System.currentTimeMillis();
+            redisTemplate.opsForZSet().removeRangeByScore(REVOKED_KEY, Double.NEGATIVE_INFINITY, now);
+
+            Set<ZSetOperations.TypedTuple<String>> active = redisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(REVOKED_KEY, now, Double.POSITIVE_INFINITY);
+            if (active != null) {
+                active.forEach(tuple -> revoked.add(tuple.getValue(), tuple.getScore().longValue()));
+            }
+
+            revoked.expire(now);
+        } catch (Exception e) {
+            log.error("Cannot resync access token denylist: {}", e.getMessage());
+        }
+    }
+
+}
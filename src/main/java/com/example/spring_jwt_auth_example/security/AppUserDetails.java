@@ -1,41 +1,70 @@
 package com.example.spring_jwt_auth_example.security;
 
+import com.example.spring_jwt_auth_example.entity.RoleType;
 import com.example.spring_jwt_auth_example.entity.User;
-import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
-import java.util.Collection;
+import java.util.List;
 
-@RequiredArgsConstructor
+/*
+Неизменяемая копия данных пользователя: не держит сущность JPA, поэтому безопасно кэшируется и передаётся между потоками.
+Роли хранятся маской, а полномочия берутся из общей таблицы RoleAuthorities.
+*/
 public class AppUserDetails implements UserDetails {
 
-    private final User user;
+    private final Long id;
+
+    private final String username;
+
+    private final String email;
+
+    private final String password; // null, если пользователь собран из клаймов токена
+
+    private final int rolesMask;
+
+    public AppUserDetails(User user) {
+        this(user.getId(), user.getUsername(), user.getEmail(), user.getPassword(), RoleType.toMask(user.getRoles()));
+    }
+
+    public AppUserDetails(Long id, String username, String email, String password, int rolesMask) {
+        this.id = id;
+        this.username = username;
+        this.email = email;
+        this.password = password;
+        this.rolesMask = rolesMask;
+    }
 
     public Long getId() {
-        return user.getId();
+        return id;
     }
 
     public String getEmail() {
-        return user.getEmail();
+        return email;
+    }
+
+    public int getRolesMask() {
+        return rolesMask;
+    }
+
+    // Имена ролей для ответов и токенов - тоже из общей таблицы
+    public List<String> getRoleNames() {
+        return RoleAuthorities.names(rolesMask);
     }
 
     @Override
-    public Collection<? extends GrantedAuthority> getAuthorities() {
-        return user.getRoles().stream()
-                .map(r -> new SimpleGrantedAuthority(r.name()))
-                .toList();
+    public List<GrantedAuthority> getAuthorities() {
+        return RoleAuthorities.authorities(rolesMask);
     }
 
     @Override
     public String getPassword() {
-        return user.getPassword();
+        return password;
     }
 
     @Override
     public String getUsername() {
-        return user.getUsername();
+        return username;
     }
 
     @Override
@@ -0,0 +1,376 @@
+package com.example.spring_jwt_auth_example.security;
+
+import com.example.spring_jwt_auth_example.exception.RateLimitExceededException;
+import com.example.spring_jwt_auth_example.util.RedisSlots;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Ограничение частоты /signin (по IP клиента и по паре IP и username) и /refresh-token (по IP и по владельцу найденного токена).
+Корзина токенов на каждый ключ: capacity запросов, которые восстанавливаются за period.
+Решение принимается по локальной корзине узла - без блокировок и без обращения к Redis.
+Раз в syncInterval узел отправляет в Redis (SYNC_SCRIPT) сколько запросов он пропустил по каждому ключу
+и получает остаток общей корзины кластера, которым ужимает локальную. Поэтому лимит общий для кластера,
+а превысить его можно не больше чем на то, что остальные узлы пропустят за один syncInterval.
+Ключей в памяти не больше maxKeys: сверх этого вытесняются простаивающие корзины, а если таких нет, запрос с новым ключом
+пропускается без ограничения (getUnlimitedCount). Одна общая корзина на всех новых клиентов позволила бы атакующему,
+заполнив таблицу, исчерпать её и отказать всем остальным.
+*/
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class AuthRateLimiter {
+
+    private static final String KEY_PREFIX = "rate_limit:";
+
+    private static final int SYNC_BATCH_SIZE = 500;
+
+    private static final long EVICTION_INTERVAL_NANOS = Duration.ofSeconds(1).toNanos();
+
+    /*
+    Общие корзины: hash {t - остаток токенов, ts - время последнего обновления} на каждый ключ.
+    ARGV на каждый ключ - тройка: пропущено запросов с прошлой синхронизации, capacity, period (мс).
+    Время - от Redis (TIME), чтобы расхождение часов узлов не влияло на пополнение.
+    Пустая корзина через period без запросов полна, поэтому ключ живёт не дольше period.
+    */
+    static final RedisScript<List> SYNC_SCRIPT = RedisScript.of("""
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local result = {}
+            for i = 1, #KEYS do
+                local base = (i - 1) * 3
+                local consumed = tonumber(ARGV[base + 1])
+                local capacity = tonumber(ARGV[base + 2])
+                local period = tonumber(ARGV[base + 3])
+                local bucket = redis.call('HMGET', KEYS[i], 't', 'ts')
+                local tokens = tonumber(bucket[1]) or capacity
+                local updated = tonumber(bucket[2]) or now
+                tokens = math.min(capacity, tokens + math.max(0, now - updated) * capacity / period)
+                tokens = math.max(0, tokens - consumed)
+                redis.call('HSET', KEYS[i], 't', tostring(tokens), 'ts', now)
+                redis.call('PEXPIRE', KEYS[i], period)
+                result[i] = tostring(tokens)
+            end
+            return result
+            """, List.class);
+
+    @Value("${app.rateLimit.enabled}")
+    private boolean enabled;
+
+    @Value("${app.rateLimit.syncInterval}")
+    private Duration syncInterval;
+
+    @Value("${app.rateLimit.maxKeys}")
+    private int maxKeys;
+
+    @Value("${app.rateLimit.signinPerIp.capacity}")
+    private int signinPerIpCapacity;
+
+    @Value("${app.rateLimit.signinPerIp.period}")
+    private Duration signinPerIpPeriod;
+
+    @Value("${app.rateLimit.signinPerIpAndUsername.capacity}")
+    private int signinPerIpAndUsernameCapacity;
+
+    @Value("${app.rateLimit.signinPerIpAndUsername.period}")
+    private Duration signinPerIpAndUsernamePeriod;
+
+    @Value("${app.rateLimit.refreshPerIp.capacity}")
+    private int refreshPerIpCapacity;
+
+    @Value("${app.rateLimit.refreshPerIp.period}")
+    private Duration refreshPerIpPeriod;
+
+    @Value("${app.rateLimit.refreshPerOwner.capacity}")
+    private int refreshPerOwnerCapacity;
+
+    @Value("${app.rateLimit.refreshPerOwner.period}")
+    private Duration refreshPerOwnerPeriod;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisProperties redisProperties;
+
+    private final TaskScheduler taskScheduler;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder syncFailures = new LongAdder();
+
+    private final LongAdder unlimited = new LongAdder();
+
+    private final AtomicLong lastEviction = new AtomicLong(System.nanoTime() - EVICTION_INTERVAL_NANOS);
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            taskScheduler.scheduleWithFixedDelay(this::sync, Instant.now().plus(syncInterval), syncInterval);
+        }
+    }
+
+    /*
+    Сначала IP: перебор паролей одного адреса по разным username упирается в него.
+    Корзина username - своя у каждого IP: общая на username расходовалась бы до проверки пароля,
+    и любой мог бы запросами с чужим username закрыть вход его владельцу.
+    */
+    public void checkSignin(String clientIp, String username) {
+        if (!enabled) {
+            return;
+        }
+        acquire(Limit.SIGNIN_IP, clientIp);
+        if (clientIp != null && username != null) {
+            // '|' не встречается в IP, поэтому ключ однозначен; username - без учёта регистра, как и при входе
+            acquire(Limit.SIGNIN_IP_USERNAME, clientIp + "|" + username.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    // До обмена токена - только IP: владелец пока не проверен, см. checkRefreshOwner
+    public void checkRefresh(String clientIp) {
+        if (!enabled) {
+            return;
+        }
+        acquire(Limit.REFRESH_IP, clientIp);
+    }
+
+    /*
+    Владелец Refresh Token - все его устройства делят одну корзину. Вызывается при обмене, когда запись токена
+    уже найдена в Redis: владелец из самого токена ("<userId>.<id>") ничем не подтверждён, и поддельные токены
+    с чужим id исчерпывали бы корзину этого пользователя.
+    */
+    public void checkRefreshOwner(Long userId) {
+        if (!enabled) {
+            return;
+        }
+        acquire(Limit.REFRESH_OWNER, userId.toString());
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getSyncFailureCount() {
+        return syncFailures.sum();
+    }
+
+    // Запросы, пропущенные без ограничения: таблица корзин заполнена
+    public long getUnlimitedCount() {
+        return unlimited.sum();
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    private void acquire(Limit limit, String id) {
+        Bucket bucket = id == null ? null : bucket(limit, id);
+        if (bucket == null) {
+            return;
+        }
+
+        long retryAfterNanos = bucket.tryAcquire(System.nanoTime());
+        if (retryAfterNanos > 0) {
+            rejected.increment();
+            throw new RateLimitExceededException("Too many requests. Retry later", Duration.ofNanos(retryAfterNanos));
+        }
+    }
+
+    private Bucket bucket(Limit limit, String id) {
+        String key = KEY_PREFIX + limit.keyPart + ":" + id;
+
+        Bucket bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxKeys && !evictIdle()) {
+            unlimited.increment();
+            return null;
+        }
+        return buckets.computeIfAbsent(key, newKey -> newBucket(newKey, limit));
+    }
+
+    /*
+    Проход по всем корзинам - не чаще раза в EVICTION_INTERVAL_NANOS, чтобы поток новых ключей
+    не превращал каждый запрос в такой проход. true - место освободилось.
+    */
+    private boolean evictIdle() {
+        long now = System.nanoTime();
+        long last = lastEviction.get();
+        if (now - last >= EVICTION_INTERVAL_NANOS && lastEviction.compareAndSet(last, now)) {
+            removeIdle(now);
+        }
+        return buckets.size() < maxKeys;
+    }
+
+    // Полные корзины без запросов удаляются - их состояние совпадает с новой корзиной
+    private void removeIdle(long now) {
+        for (Bucket bucket : buckets.values()) {
+            if (bucket.isIdle(now)) {
+                buckets.remove(bucket.key, bucket);
+            }
+        }
+    }
+
+    private Bucket newBucket(String key, Limit limit) {
+        return switch (limit) {
+            case SIGNIN_IP -> new Bucket(key, signinPerIpCapacity, signinPerIpPeriod);
+            case SIGNIN_IP_USERNAME -> new Bucket(key, signinPerIpAndUsernameCapacity, signinPerIpAndUsernamePeriod);
+            case REFRESH_IP -> new Bucket(key, refreshPerIpCapacity, refreshPerIpPeriod);
+            case REFRESH_OWNER -> new Bucket(key, refreshPerOwnerCapacity, refreshPerOwnerPeriod);
+        };
+    }
+
+    /*
+    Синхронизируются корзины, по которым были запросы или которые ещё не восполнились:
+    по ним же могут идти запросы и на других узлах. Простаивающие корзины удаляются.
+    В Redis Cluster скрипт вызывается по слотам.
+    */
+    private void sync() {
+        try {
+            removeIdle(System.nanoTime());
+            List<Bucket> active = new ArrayList<>(buckets.values());
+
+            boolean cluster = RedisSlots.isCluster(redisProperties);
+            for (List<Bucket> slotBuckets : RedisSlots.groupBySlot(active, bucket -> bucket.key, cluster)) {
+                for (int from = 0; from < slotBuckets.size(); from += SYNC_BATCH_SIZE) {
+                    sync(slotBuckets.subList(from, Math.min(from + SYNC_BATCH_SIZE, slotBuckets.size())));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Cannot sync rate limit buckets: {}", e.getMessage());
+        }
+    }
+
+    private void sync(List<Bucket> batch) {
+        List<String> keys = new ArrayList<>(batch.size());
+        List<String> args = new ArrayList<>(batch.size() * 3);
+        long[] reported = new long[batch.size()];
+
+        for (int i = 0; i < batch.size(); i++) {
+            Bucket bucket = batch.get(i);
+            reported[i] = bucket.takeConsumed();
+            keys.add(bucket.key);
+            args.add(Long.toString(reported[i]));
+            args.add(Long.toString(bucket.capacity));
+            args.add(Long.toString(bucket.periodNanos / 1_000_000));
+        }
+
+        List<?> remaining;
+        try {
+            remaining = redisTemplate.execute(SYNC_SCRIPT, keys, args.toArray());
+        } catch (RuntimeException e) {
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).consumed.addAndGet(reported[i]); // не потеряли: отправим при следующей синхронизации
+            }
+            syncFailures.increment();
+            throw e;
+        }
+
+        long now = System.nanoTime();
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).limitTo(Double.parseDouble((String) remaining.get(i)), now);
+        }
+    }
+
+    private enum Limit {
+
+        SIGNIN_IP("signin_ip"),
+        SIGNIN_IP_USERNAME("signin_ip_user"),
+        REFRESH_IP("refresh_ip"),
+        REFRESH_OWNER("refresh_owner");
+
+        private final String keyPart;
+
+        Limit(String keyPart) {
+            this.keyPart = keyPart;
+        }
+
+    }
+
+    /*
+    Корзина в виде GCRA: состояние - одно число, "теоретическое время прихода" следующего запроса (tat).
+    Каждый пропущенный запрос сдвигает его на interval = period / capacity; запрос отклоняется,
+    если tat ушло вперёд дальше чем на period. Обновление - CAS, без блокировок.
+    Время (now) передаётся снаружи - System.nanoTime.
+    */
+    static final class Bucket {
+
+        private final String key;
+
+        private final long capacity;
+
+        private final long periodNanos;
+
+        private final long intervalNanos;
+
+        private final AtomicLong tat;
+
+        private final AtomicLong consumed = new AtomicLong(); // пропущено с последней синхронизации
+
+        Bucket(String key, long capacity, Duration period) {
+            this(key, capacity, period, System.nanoTime());
+        }
+
+        Bucket(String key, long capacity, Duration period, long now) {
+            this.key = key;
+            this.capacity = capacity;
+            this.periodNanos = period.toNanos();
+            this.intervalNanos = periodNanos / capacity;
+            this.tat = new AtomicLong(now);
+        }
+
+        // 0 - запрос пропущен, иначе - через сколько наносекунд появится токен
+        long tryAcquire(long now) {
+            while (true) {
+                long current = tat.get();
+                long next = Math.max(current, now) + intervalNanos;
+                if (next - now > periodNanos) {
+                    return next - now - periodNanos;
+                }
+                if (tat.compareAndSet(current, next)) {
+                    consumed.incrementAndGet();
+                    return 0;
+                }
+            }
+        }
+
+        /*
+        Оставляет в корзине не больше remaining токенов (остаток общей корзины) за вычетом запросов,
+        пропущенных этим узлом, пока шла синхронизация. Локальная корзина от этого может только ужаться.
+        */
+        void limitTo(double remaining, long now) {
+            double available = Math.max(0, remaining - consumed.get());
+            long target = now + periodNanos - (long) (available * intervalNanos);
+            tat.accumulateAndGet(target, Math::max);
+        }
+
+        boolean isIdle(long now) {
+            return tat.get() - now <= 0 && consumed.get() == 0;
+        }
+
+        // Пропущено с последней синхронизации; синхронизация забирает значение себе
+        long takeConsumed() {
+            return consumed.getAndSet(0);
+        }
+    }
+
+}
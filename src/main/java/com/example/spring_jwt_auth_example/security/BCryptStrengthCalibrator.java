@@ -0,0 +1,46 @@
+package com.example.spring_jwt_auth_example.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+
+/*
+Подбирает сложность (log rounds) BCrypt под заданное время хэширования на текущем железе.
+Каждая единица сложности удваивает время, поэтому достаточно одного замера на минимальной сложности.
+*/
+@Slf4j
+public final class BCryptStrengthCalibrator {
+
+    private static final String PROBE_PASSWORD = "calibration-probe-password";
+
+    private static final int MEASUREMENTS = 3;
+
+    private BCryptStrengthCalibrator() {
+    }
+
+    public static int calibrate(Duration targetHashTime, int minStrength, int maxStrength) {
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(minStrength);
+        probe.encode(PROBE_PASSWORD); // прогрев
+
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < MEASUREMENTS; i++) {
+            long start = System.nanoTime();
+            probe.encode(PROBE_PASSWORD);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+
+        int strength = minStrength;
+        long estimatedNanos = bestNanos;
+        while (strength < maxStrength && estimatedNanos * 2 <= targetHashTime.toNanos()) {
+            strength++;
+            estimatedNanos *= 2;
+        }
+
+        log.info("BCrypt strength calibrated to {} (~{} ms per hash, target {} ms)", strength,
+                Duration.ofNanos(estimatedNanos).toMillis(), targetHashTime.toMillis());
+
+        return strength;
+    }
+
+}
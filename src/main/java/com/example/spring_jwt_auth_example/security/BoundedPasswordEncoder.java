@@ -0,0 +1,118 @@
+package com.example.spring_jwt_auth_example.security;
+
+import com.example.spring_jwt_auth_example.exception.PasswordHashingRejectedException;
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics;
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics.Outcome;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+Выполняет хэширование и проверку паролей на отдельном пуле фиксированного размера с ограниченной очередью.
+При всплеске логинов BCrypt занимает не больше threads ядер, а запросы сверх очереди сразу получают отказ
+(PasswordHashingRejectedException -> 503), вместо того чтобы занять все потоки Tomcat.
+Время matches и encode (вместе с ожиданием в очереди) пишется в таймер auth.password.
+*/
+public class BoundedPasswordEncoder implements PasswordEncoder, DisposableBean {
+
+    private final PasswordEncoder delegate;
+
+    private final ThreadPoolExecutor executor;
+
+    private final int queueCapacity;
+
+    private final Duration maxWait;
+
+    private final AuthMetrics authMetrics;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity, Duration maxWait, AuthMetrics authMetrics) {
+        this.delegate = delegate;
+        this.queueCapacity = queueCapacity;
+        this.maxWait = maxWait;
+        this.authMetrics = authMetrics;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("password-hashing-", 0).daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        long start = System.nanoTime();
+        try {
+            String encoded = execute(() -> delegate.encode(rawPassword));
+            authMetrics.recordPassword("encode", Outcome.SUCCESS, start);
+            return encoded;
+        } catch (RuntimeException e) {
+            authMetrics.recordPassword("encode", Outcome.of(e), start);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        long start = System.nanoTime();
+        try {
+            boolean matches = execute(() -> delegate.matches(rawPassword, encodedPassword));
+            authMetrics.recordPassword("matches", matches ? Outcome.MATCHED : Outcome.MISMATCHED, start);
+            return matches;
+        } catch (RuntimeException e) {
+            authMetrics.recordPassword("matches", Outcome.of(e), start);
+            throw e;
+        }
+    }
+
+    /*
+    Пересчёт хэша после успешного логина - необязательная работа, поэтому под нагрузкой (очередь заполнена наполовину)
+    откладываем его до следующего входа пользователя.
+    */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return executor.getQueue().size() < queueCapacity / 2 && delegate.upgradeEncoding(encodedPassword);
+    }
+
+    // Для фоновых задач с собственным пулом (импорт пользователей), которым не нужна очередь логинов
+    public PasswordEncoder unbounded() {
+        return delegate;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private <T> T execute(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new PasswordHashingRejectedException("Too many concurrent password checks. Retry later");
+        }
+
+        try {
+            return future.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new PasswordHashingRejectedException("Password check timed out. Retry later");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingRejectedException("Password check was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+}
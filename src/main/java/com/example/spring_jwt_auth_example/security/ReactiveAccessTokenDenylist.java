@@ -0,0 +1,52 @@
+package com.example.spring_jwt_auth_example.security;
+
+import com.example.spring_jwt_auth_example.security.jwt.TokenClaims;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/*
+Отзыв и точная проверка Access Token для профиля reactive: Redis через Lettuce (ReactiveStringRedisTemplate).
+Локальный фильтр, его пересинхронизация и подписка на revoked_jti_feed - у AccessTokenDenylist, см. его описание.
+*/
+@Component
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveAccessTokenDenylist {
+
+    private final AccessTokenDenylist accessTokenDenylist;
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    // См. AccessTokenDenylist.revoke
+    public Mono<Void> revoke(TokenClaims claims) {
+        if (claims.getTokenId() == null || claims.getExpiration() == null) {
+            return Mono.empty();
+        }
+
+        long expiresAt = claims.getExpiration().toEpochMilli();
+        return Mono.defer(() -> {
+            accessTokenDenylist.remember(claims.getTokenId(), expiresAt);
+            return redisTemplate.execute(AccessTokenDenylist.REVOKE_SCRIPT, List.of(AccessTokenDenylist.REVOKED_KEY),
+                            List.of(claims.getTokenId(), Long.toString(expiresAt), AccessTokenDenylist.REVOCATION_CHANNEL))
+                    .then();
+        });
+    }
+
+    // В Redis идём только при вероятном совпадении в локальном фильтре
+    public Mono<Boolean> isRevoked(TokenClaims claims) {
+        if (!accessTokenDenylist.mightBeRevoked(claims)) {
+            return Mono.just(false);
+        }
+
+        return redisTemplate.opsForZSet().score(AccessTokenDenylist.REVOKED_KEY, claims.getTokenId())
+                .map(score -> true)
+                .defaultIfEmpty(false)
+                .map(accessTokenDenylist::recordExactCheck);
+    }
+
+}
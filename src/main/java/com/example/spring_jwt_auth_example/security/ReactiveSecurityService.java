@@ -0,0 +1,137 @@
+package com.example.spring_jwt_auth_example.security;
+
+import com.example.spring_jwt_auth_example.entity.RoleType;
+import com.example.spring_jwt_auth_example.entity.User;
+import com.example.spring_jwt_auth_example.exception.AlreadyExistsException;
+import com.example.spring_jwt_auth_example.exception.PasswordHashingRejectedException;
+import com.example.spring_jwt_auth_example.repository.ReactiveUserRepository;
+import com.example.spring_jwt_auth_example.security.jwt.JwtUtils;
+import com.example.spring_jwt_auth_example.security.jwt.TokenClaims;
+import com.example.spring_jwt_auth_example.service.ReactiveRefreshTokenService;
+import com.example.spring_jwt_auth_example.service.UserAvailabilityFilter;
+import com.example.spring_jwt_auth_example.web.model.*;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+/*
+WebFlux-версия SecurityService. Логика та же, но ни один вызов не блокирует event loop:
+пользователи читаются через R2DBC, Refresh Token - через Lettuce, BCrypt выполняется на ограниченном passwordHashingScheduler.
+*/
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveSecurityService {
+
+    private final ReactiveAuthenticationManager authenticationManager;
+
+    private final JwtUtils jwtUtils;
+
+    private final ReactiveRefreshTokenService refreshTokenService;
+
+    private final ReactiveUserRepository userRepository;
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final ReactiveSecurityVersionStore securityVersionStore;
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    private final ReactiveAccessTokenDenylist accessTokenDenylist;
+
+    private final UserAvailabilityFilter availabilityFilter;
+
+    private final Scheduler passwordHashingScheduler; // ограниченный пул для BCrypt, см. ReactiveSecurityConfiguration
+
+    public Mono<AuthResponse> authenticateUser(LoginRequest loginRequest) {
+        return authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(
+                        loginRequest.getUsername(),
+                        loginRequest.getPassword()))
+                .onErrorMap(RejectedExecutionException.class, this::hashingRejected)
+                .map(authentication -> (AppUserDetails) authentication.getPrincipal())
+                .flatMap(userDetails -> generateJwtToken(userDetails)
+                        .zipWith(refreshTokenService.createRefreshToken(userDetails))
+                        .map(tokens -> AuthResponse.builder()
+                                .id(userDetails.getId())
+                                .token(tokens.getT1())
+                                .refreshToken(tokens.getT2().getToken())
+                                .username(userDetails.getUsername())
+                                .email(userDetails.getEmail())
+                                .roles(userDetails.getRoleNames())
+                                .build()));
+    }
+
+    public Mono<Void> register(CreateUserRequest createUserRequest) {
+        return Mono.fromCallable(() -> passwordEncoder.encode(createUserRequest.getPassword()))
+                .subscribeOn(passwordHashingScheduler)
+                .onErrorMap(RejectedExecutionException.class, this::hashingRejected)
+                .flatMap(password -> userRepository.save(User.builder()
+                        .username(createUserRequest.getUsername())
+                        .email(createUserRequest.getEmail())
+                        .password(password)
+                        .roles(createUserRequest.getRoles() == null ? Set.of() : createUserRequest.getRoles())
+                        .build()))
+                .onErrorMap(DataIntegrityViolationException.class, AlreadyExistsException::fromConstraintViolation)
+                .doOnNext(user -> availabilityFilter.markTaken(user.getUsername(), user.getEmail()))
+                // Сообщаем servlet-узлам, что данные пользователя изменились
+                .flatMap(user -> redisTemplate.convertAndSend(UserDetailsCache.INVALIDATION_CHANNEL, user.getUsername()))
+                .then();
+    }
+
+    /*
+    Как и SecurityService.refreshToken: запись токена содержит данные владельца, БД нужна, только если изменилась
+    его версия безопасности, и для записей старого формата (см. ReactiveRefreshTokenService.withCurrentOwner).
+    */
+    public Mono<RefreshTokenResponse> refreshToken(RefreshTokenRequest request) {
+        return refreshTokenService.rotateRefreshToken(request.getRefreshToken())
+                .flatMap(rotated -> generateJwtToken(new AppUserDetails(rotated.getUserId(), rotated.getUsername(),
+                                rotated.getEmail(), null, RoleType.toMaskFromNames(rotated.getRoles())))
+                        .map(token -> new RefreshTokenResponse(token, rotated.getToken())));
+    }
+
+    /*
+    Как и SecurityService.logout: отзываем текущий Access Token и удаляем все Refresh Token пользователя.
+    */
+    public Mono<Void> logout() {
+        return ReactiveSecurityContextHolder.getContext()
+                .map(context -> context.getAuthentication())
+                .flatMap(authentication -> revokeAccessToken(authentication.getCredentials())
+                        .then(Mono.justOrEmpty(authentication.getPrincipal())))
+                .ofType(AppUserDetails.class)
+                .flatMap(userDetails -> refreshTokenService.deleteByUserId(userDetails.getId()));
+    }
+
+    private Mono<Void> revokeAccessToken(Object credentials) {
+        if (!(credentials instanceof TokenClaims claims)) {
+            return Mono.empty();
+        }
+
+        return accessTokenDenylist.revoke(claims);
+    }
+
+    // При включённой проверке версия безопасности читается из Redis реактивно и передаётся в JwtUtils готовой
+    private Mono<String> generateJwtToken(AppUserDetails userDetails) {
+        if (!securityVersionStore.isEnabled()) {
+            return Mono.fromCallable(() -> jwtUtils.generateJwtToken(userDetails, null));
+        }
+
+        return securityVersionStore.currentVersion(userDetails.getId())
+                .map(version -> jwtUtils.generateJwtToken(userDetails, version));
+    }
+
+    private PasswordHashingRejectedException hashingRejected(RejectedExecutionException e) {
+        return new PasswordHashingRejectedException("Too many concurrent password checks. Retry later");
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.example.spring_jwt_auth_example.security;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/*
+Чтение версии безопасности для профиля reactive: Redis через Lettuce (ReactiveStringRedisTemplate), без блокирующего
+RedisTemplate на boundedElastic. Кэш версий и их увеличение - у SecurityVersionStore, см. его описание.
+*/
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveSecurityVersionStore {
+
+    private final SecurityVersionStore securityVersionStore;
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    public boolean isEnabled() {
+        return securityVersionStore.isEnabled();
+    }
+
+    // См. SecurityVersionStore.currentVersion
+    public Mono<Long> currentVersion(Long userId) {
+        Long cached = securityVersionStore.cachedVersion(userId);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+
+        return Mono.defer(() -> {
+            long now = System.currentTimeMillis();
+            return redisTemplate.opsForValue().get(SecurityVersionStore.key(userId))
+                    .map(SecurityVersionStore::parseVersion)
+                    .defaultIfEmpty(SecurityVersionStore.parseVersion(null))
+                    .doOnNext(version -> securityVersionStore.cache(userId, version, now));
+        });
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.example.spring_jwt_auth_example.security;
+
+import com.example.spring_jwt_auth_example.entity.RoleType;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Общая таблица полномочий: для каждой комбинации ролей (маски) один неизменяемый список
+с одними и теми же объектами SimpleGrantedAuthority. Списки строятся один раз при загрузке класса,
+так что AppUserDetails.getAuthorities() ничего не создаёт.
+*/
+public final class RoleAuthorities {
+
+    private static final List<List<GrantedAuthority>> AUTHORITIES;
+
+    private static final List<List<String>> NAMES;
+
+    static {
+        RoleType[] roles = RoleType.values();
+        GrantedAuthority[] authorities = new GrantedAuthority[roles.length];
+        for (RoleType role : roles) {
+            authorities[role.ordinal()] = new SimpleGrantedAuthority(role.name());
+        }
+
+        int combinations = 1 << roles.length;
+        List<List<GrantedAuthority>> authorityTable = new ArrayList<>(combinations);
+        List<List<String>> nameTable = new ArrayList<>(combinations);
+        for (int mask = 0; mask < combinations; mask++) {
+            List<GrantedAuthority> maskAuthorities = new ArrayList<>();
+            List<String> maskNames = new ArrayList<>();
+            for (RoleType role : roles) {
+                if ((mask & role.bit()) != 0) {
+                    maskAuthorities.add(authorities[role.ordinal()]);
+                    maskNames.add(role.name());
+                }
+            }
+            authorityTable.add(List.copyOf(maskAuthorities));
+            nameTable.add(List.copyOf(maskNames));
+        }
+
+        AUTHORITIES = List.copyOf(authorityTable);
+        NAMES = List.copyOf(nameTable);
+    }
+
+    private RoleAuthorities() {
+    }
+
+    public static List<GrantedAuthority> authorities(int rolesMask) {
+        return AUTHORITIES.get(rolesMask);
+    }
+
+    public static List<String> names(int rolesMask) {
+        return NAMES.get(rolesMask);
+    }
+
+}
@@ -1,24 +1,30 @@
 package com.example.spring_jwt_auth_example.security;
 
 import com.example.spring_jwt_auth_example.entity.RefreshToken;
+import com.example.spring_jwt_auth_example.entity.RoleType;
 import com.example.spring_jwt_auth_example.entity.User;
-import com.example.spring_jwt_auth_example.exception.RefreshTokenException;
+import com.example.spring_jwt_auth_example.exception.AlreadyExistsException;
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics;
+import com.example.spring_jwt_auth_example.repository.ReadYourWritesWindow;
 import com.example.spring_jwt_auth_example.repository.UserRepository;
 import com.example.spring_jwt_auth_example.security.jwt.JwtUtils;
+import com.example.spring_jwt_auth_example.security.jwt.TokenClaims;
 import com.example.spring_jwt_auth_example.service.RefreshTokenService;
+import com.example.spring_jwt_auth_example.service.UserAvailabilityFilter;
 import com.example.spring_jwt_auth_example.web.model.*;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
 
 @Service
+@Profile("!reactive")
 @RequiredArgsConstructor
 public class SecurityService {
 
@@ -32,6 +38,16 @@ public class SecurityService {
 
     private final PasswordEncoder passwordEncoder;              // сист.
 
+    private final UserDetailsCache userDetailsCache;
+
+    private final AccessTokenDenylist accessTokenDenylist;
+
+    private final UserAvailabilityFilter availabilityFilter;
+
+    private final ReadYourWritesWindow readYourWrites;
+
+    private final AuthMetrics authMetrics;                      // время и исход authenticateUser, refreshToken и logout
+
     /*
     Метод authenticateUser отвечает за логин пользователя,  Занесение его в контекст Spring Security, за выдачу Access- и Refresh-токенов клиенту.
     Метод .authenticate выполняется для аутентификации пользователя.
@@ -39,29 +55,27 @@ public class SecurityService {
     SecurityContextHolder - Управляет данными аутентификации текущего потока выполнения
     */
     public AuthResponse authenticateUser(LoginRequest loginRequest) {
-        Authentication authentication = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(
-                loginRequest.getUsername(),
-                loginRequest.getPassword()
-        ));
-
-        SecurityContextHolder.getContext().setAuthentication(authentication); // Если аутентификация успешна, то результат сохраняется в SecurityContextHolder
-
-        AppUserDetails userDetails = (AppUserDetails) authentication.getPrincipal(); // Получаем детали аутентифицированного пользователя
-
-        List<String> roles = userDetails.getAuthorities().stream()
-                .map(GrantedAuthority::getAuthority)
-                .toList(); // Получаем роли
-
-        RefreshToken refreshToken = refreshTokenService.createRefreshToken(userDetails.getId()); // Создаём новый RefreshToken для пользователя
-
-        return AuthResponse.builder()
-                .id(userDetails.getId())
-                .token(jwtUtils.generateJwtToken(userDetails))
-                .refreshToken(refreshToken.getToken())
-                .username(userDetails.getUsername())
-                .email(userDetails.getEmail())
-                .roles(roles)
-                .build(); // Содержит информацию об успешной аутентификации
+        return authMetrics.timeServiceCall("authenticate", () -> {
+            Authentication authentication = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(
+                    loginRequest.getUsername(),
+                    loginRequest.getPassword()
+            ));
+
+            SecurityContextHolder.getContext().setAuthentication(authentication); // Если аутентификация успешна, то результат сохраняется в SecurityContextHolder
+
+            AppUserDetails userDetails = (AppUserDetails) authentication.getPrincipal(); // Получаем детали аутентифицированного пользователя
+
+            RefreshToken refreshToken = refreshTokenService.createRefreshToken(userDetails); // Создаём новый RefreshToken для пользователя
+
+            return AuthResponse.builder()
+                    .id(userDetails.getId())
+                    .token(jwtUtils.generateJwtToken(userDetails))
+                    .refreshToken(refreshToken.getToken())
+                    .username(userDetails.getUsername())
+                    .email(userDetails.getEmail())
+                    .roles(userDetails.getRoleNames()) // Получаем роли
+                    .build(); // Содержит информацию об успешной аутентификации
+        });
     }
 
     /*
@@ -75,42 +89,52 @@ public class SecurityService {
                 .build();
         user.setRoles(createUserRequest.getRoles());
 
-        userRepository.save(user);
+        try {
+            userRepository.saveAndFlush(user); // один insert, занятый username или email - нарушение уникального ограничения
+        } catch (DataIntegrityViolationException e) {
+            throw AlreadyExistsException.fromConstraintViolation(e);
+        }
+
+        readYourWrites.markWritten(user.getUsername(), user.getEmail()); // вход сразу после регистрации - не с отстающей реплики
+        availabilityFilter.markTaken(user.getUsername(), user.getEmail());
+        userDetailsCache.evictEverywhere(user.getUsername()); // Сообщаем всем узлам, что данные пользователя изменились
     }
 
     /*
-    Получаем от пользователя текущий RefreshToken и пытаемся найти его в Redis.
-    Если находим, то проверяем поле на результат валидности.
-    Если токен валиден, то получаем из него id пользователя.
-    Ищем пользователя в БД postgres по его Id.
-    Генерируем для него новые Access- и Refresh-токены.
-    Возвращаем результат пользователю.
+    Получаем от пользователя текущий RefreshToken и обмениваем его в Redis на новый одной атомарной операцией.
+    Запись токена содержит id, username, email и роли владельца, поэтому новый Access Token выпускается без обращения к БД.
+    Пользователь ищется в postgres, только если с момента записи изменилась его версия безопасности
+    или запись старого формата (см. RefreshTokenService.withCurrentOwner).
     */
     public RefreshTokenResponse refreshToken(RefreshTokenRequest request) {
-        String requestRefreshToken = request.getRefreshToken();
-
-        return refreshTokenService.findByRefreshToken(requestRefreshToken)
-                .map(refreshTokenService::checkRefreshToken)
-                .map(RefreshToken::getUserId)
-                .map(userId -> {
-                    User tokenOwner = userRepository.findById(userId).orElseThrow(() ->
-                            new RefreshTokenException("Exception trying to get token for userId: " + userId));
-                    String token = jwtUtils.generateTokenFromUsername(tokenOwner.getUsername());
-
-                    return new RefreshTokenResponse(token, refreshTokenService.createRefreshToken(userId).getToken());
-                }).orElseThrow(() -> new RefreshTokenException(requestRefreshToken, "Refresh token not found"));
+        return authMetrics.timeServiceCall("refresh", () -> {
+            RefreshToken rotated = refreshTokenService.rotateRefreshToken(request.getRefreshToken());
+
+            AppUserDetails tokenOwner = new AppUserDetails(rotated.getUserId(), rotated.getUsername(), rotated.getEmail(), null,
+                    RoleType.toMaskFromNames(rotated.getRoles()));
+
+            return new RefreshTokenResponse(jwtUtils.generateJwtToken(tokenOwner), rotated.getToken());
+        });
     }
 
     /*
     Метод logout() удаляет из системы Refresh Token пользователя, чтобы он не смог сделать refresh и получить новый token.
+    Текущий Access Token отзывается сразу (по jti из клаймов, которые JwtTokenFilter положил в credentials).
     */
     public void logout() {
-        var currentPrincipal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        if (currentPrincipal instanceof AppUserDetails userDetails) {
-            Long userId = userDetails.getId();
-
-            refreshTokenService.deleteByUserId(userId);
-        }
+        authMetrics.timeServiceCall("logout", () -> {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if (authentication.getCredentials() instanceof TokenClaims claims) {
+                accessTokenDenylist.revoke(claims);
+            }
+
+            var currentPrincipal = authentication.getPrincipal();
+            if (currentPrincipal instanceof AppUserDetails userDetails) {
+                Long userId = userDetails.getId();
+
+                refreshTokenService.deleteByUserId(userId);
+            }
+        });
     }
 
 }
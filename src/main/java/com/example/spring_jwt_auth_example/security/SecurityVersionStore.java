@@ -0,0 +1,130 @@
+package com.example.spring_jwt_auth_example.security;
+
+import com.example.spring_jwt_auth_example.util.RedisSlots;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+@RequiredArgsConstructor
+public class SecurityVersionStore { // хранит "версию безопасности" пользователя (меняется при смене ролей, пароля и т.п.)
+
+    private static final String KEY_PREFIX = "security_version:";
+
+    private static final int MAX_CACHED_USERS = 100_000;
+
+    private static final RedisScript<Long> INCR_ALL_SCRIPT = RedisScript.of("""
+            for i = 1, #KEYS do
+                redis.call('INCR', KEYS[i])
+            end
+            return #KEYS
+            """, Long.class);
+
+    @Value("${app.jwt.securityVersionCheck}")
+    private boolean enabled;
+
+    @Value("${app.jwt.securityVersionCacheTtl}")
+    private Duration cacheTtl;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisProperties redisProperties;
+
+    private final Map<Long, CachedVersion> cache = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /*
+    Текущая версия пользователя. Значение берётся из Redis не чаще одного раза за cacheTtl,
+    поэтому проверка версии в фильтре почти всегда обходится без сетевого вызова.
+    Пользователь, для которого версия ещё ни разу не менялась, имеет версию 0.
+    */
+    public long currentVersion(Long userId) {
+        Long cached = cachedVersion(userId);
+        if (cached != null) {
+            return cached;
+        }
+
+        long now = System.currentTimeMillis();
+        long version = parseVersion(redisTemplate.opsForValue().get(key(userId)));
+        cache(userId, version, now);
+
+        return version;
+    }
+
+    /*
+    Через сколько после increment старые Access Token перестают приниматься всеми узлами: кэш версии сбрасывается
+    только на узле, вызвавшем increment, остальные узлы увидят новую версию, когда истечёт их запись (cacheTtl).
+    */
+    public Duration getPropagationDelay() {
+        return cacheTtl;
+    }
+
+    /*
+    Увеличивает версию - ранее выданные пользователю Access Token перестают приниматься: на этом узле сразу,
+    на остальных - в пределах getPropagationDelay.
+    Вызывать при изменении ролей, пароля или принудительном завершении сессий.
+    */
+    public long increment(Long userId) {
+        Long version = redisTemplate.opsForValue().increment(key(userId));
+        cache.remove(userId);
+
+        return version == null ? 0L : version;
+    }
+
+    /*
+    То же для множества пользователей одним скриптом INCR_ALL_SCRIPT - для массового отзыва сессий.
+    В Redis Cluster скрипт вызывается по одному разу на слот. Локальный кэш сбрасывается тоже только на этом узле.
+    */
+    public void incrementAll(Collection<Long> userIds) {
+        boolean cluster = RedisSlots.isCluster(redisProperties);
+        List<String> keys = userIds.stream().map(SecurityVersionStore::key).toList();
+
+        for (List<String> slotKeys : RedisSlots.groupBySlot(keys, key -> key, cluster)) {
+            redisTemplate.execute(INCR_ALL_SCRIPT, slotKeys);
+        }
+        userIds.forEach(cache::remove);
+    }
+
+    /*
+    Локальный кэш версий общий с ReactiveSecurityVersionStore: тот читает Redis реактивно, но кладёт сюда же.
+    null - версии нет в кэше или она старше cacheTtl.
+    */
+    Long cachedVersion(Long userId) {
+        CachedVersion cached = cache.get(userId);
+
+        return cached != null && cached.loadedAt + cacheTtl.toMillis() > System.currentTimeMillis() ? cached.version : null;
+    }
+
+    // loadedAt - время до чтения из Redis: запись не должна жить дольше cacheTtl с момента запроса
+    void cache(Long userId, long version, long loadedAt) {
+        if (cache.size() >= MAX_CACHED_USERS) {
+            cache.clear();
+        }
+        cache.put(userId, new CachedVersion(version, loadedAt));
+    }
+
+    static String key(Long userId) {
+        return KEY_PREFIX + userId;
+    }
+
+    // Пользователь, для которого версия ещё ни разу не менялась, имеет версию 0
+    static long parseVersion(String value) {
+        return value == null ? 0L : Long.parseLong(value);
+    }
+
+    private record CachedVersion(long version, long loadedAt) {
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.example.spring_jwt_auth_example.security;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+@RequiredArgsConstructor
+public class UserDetailsCache { // локальный кэш AppUserDetails, согласованный между узлами через Redis pub/sub
+
+    public static final String INVALIDATION_CHANNEL = "user_invalidation";
+
+    @Value("${app.userDetailsCache.maxSize}")
+    private int maxSize;
+
+    @Value("${app.userDetailsCache.ttl}")
+    private Duration ttl;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /*
+    Счётчик инвалидаций. Значение запоминается перед чтением из БД, и если за время чтения пришла
+    хоть одна инвалидация, прочитанный снимок в кэш не кладётся (он мог устареть).
+    */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public AppUserDetails get(String username) {
+        Entry entry = entries.get(username);
+
+        if (entry != null && entry.expiresAtMillis > System.currentTimeMillis()) {
+            hits.increment();
+            return entry.userDetails;
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    public long currentGeneration() {
+        return invalidations.get();
+    }
+
+    public void put(String username, AppUserDetails userDetails, long generation) {
+        if (generation != invalidations.get()) {
+            return;
+        }
+
+        if (entries.size() >= maxSize) {
+            long now = System.currentTimeMillis();
+            entries.values().removeIf(entry -> entry.expiresAtMillis <= now);
+
+            if (entries.size() >= maxSize) {
+                return;
+            }
+        }
+
+        entries.put(username, new Entry(userDetails, System.currentTimeMillis() + ttl.toMillis()));
+    }
+
+    // Удаление только на текущем узле (вызывается подписчиком канала)
+    public void evict(String username) {
+        invalidations.incrementAndGet();
+        entries.remove(username);
+    }
+
+    /*
+    Удаляет пользователя из кэша на всех узлах. Вызывать после любого изменения пользователя
+    (регистрация, смена ролей или пароля).
+    */
+    public void evictEverywhere(String username) {
+        evict(username);
+        redisTemplate.convertAndSend(INVALIDATION_CHANNEL, username);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private record Entry(AppUserDetails userDetails, long expiresAtMillis) {
+    }
+
+}
@@ -1,24 +1,63 @@
 package com.example.spring_jwt_auth_example.security;
 
-import com.example.spring_jwt_auth_example.entity.User;
+import com.example.spring_jwt_auth_example.entity.RoleType;
+import com.example.spring_jwt_auth_example.repository.ReadYourWritesWindow;
 import com.example.spring_jwt_auth_example.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 @Service
+@Profile("!reactive")
 @RequiredArgsConstructor
-public class UserDetailsServiceImpl implements UserDetailsService { // здесь просто устанавливаем User (ищем в БД)
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService { // здесь просто устанавливаем User (ищем в БД)
 
     private final UserRepository userRepository;
 
+    private final UserDetailsCache userDetailsCache;
+
+    private final ReadYourWritesWindow readYourWrites;
+
+    /*
+    Сначала ищем пользователя в локальном кэше, и только при промахе идём в БД.
+    Из БД читаются только поля для входа (проекция, а не сущность), в кэш кладётся неизменяемый AppUserDetails.
+    Читаем с реплики, а только что зарегистрированного пользователя - с основной БД.
+    */
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username)
+        AppUserDetails cached = userDetailsCache.get(username);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = userDetailsCache.currentGeneration();
+        UserRepository.UserCredentials user = readYourWrites.read(username, () -> userRepository.findCredentialsByUsername(username))
                 .orElseThrow(() -> new UsernameNotFoundException("User not found. Username is: " + username));
-        return new AppUserDetails(user);
+
+        AppUserDetails userDetails = new AppUserDetails(user.getId(), user.getUsername(), user.getEmail(), user.getPassword(),
+                RoleType.toMask(user.getRoles()));
+        userDetailsCache.put(username, userDetails, generation);
+
+        return userDetails;
+    }
+
+    /*
+    Вызывается DaoAuthenticationProvider после успешного входа, если хэш пароля сохранён с меньшей сложностью,
+    чем текущая (PasswordEncoder.upgradeEncoding). newPassword - уже новый хэш.
+    Кэшированную копию пользователя сбрасываем на всех узлах, чтобы они не сравнивали пароль со старым хэшем.
+    Перечитываем с основной БД: реплика может ещё вернуть старый хэш, и он снова попал бы в кэш.
+    */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        userRepository.updatePassword(user.getUsername(), newPassword);
+        readYourWrites.markWritten(user.getUsername());
+        userDetailsCache.evictEverywhere(user.getUsername());
+
+        return loadUserByUsername(user.getUsername()); // перечитываем пользователя уже с новым хэшем
     }
 
 }
@@ -0,0 +1,39 @@
+package com.example.spring_jwt_auth_example.security.jwt;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/*
+Поддерживаемые алгоритмы подписи Access Token.
+Для ECDSA используется формат подписи P1363 (R || S фиксированной длины) - именно его требует JWS (RFC 7518).
+*/
+@Getter
+@RequiredArgsConstructor
+public enum JwtAlgorithm {
+
+    HS512("HmacSHA512", null, 64),
+    ES256("SHA256withECDSAinP1363Format", "P-256", 64),
+    ES384("SHA384withECDSAinP1363Format", "P-384", 96),
+    ES512("SHA512withECDSAinP1363Format", "P-521", 132);
+
+    private final String jcaName;
+
+    private final String curveName; // имя кривой в JWK, null для HMAC
+
+    private final int signatureLength;
+
+    public boolean isHmac() {
+        return curveName == null;
+    }
+
+    public static JwtAlgorithm fromHeader(String alg) {
+        for (JwtAlgorithm algorithm : values()) {
+            if (algorithm.name().equals(alg)) {
+                return algorithm;
+            }
+        }
+
+        return null;
+    }
+
+}
@@ -1,10 +1,13 @@
 package com.example.spring_jwt_auth_example.security.jwt;
 
+import com.example.spring_jwt_auth_example.metrics.AuthFailureTelemetry;
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics.Outcome;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.extern.slf4j.Slf4j;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.AuthenticationEntryPoint;
@@ -15,11 +18,14 @@ import java.util.HashMap;
 import java.util.Map;
 
 @Component
-@Slf4j
+@Profile("!reactive")
+@RequiredArgsConstructor
 public class JwtAuthenticationEntryPoint implements AuthenticationEntryPoint {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    private final AuthFailureTelemetry failureTelemetry; // 401 считаются и попадают в лог итогом за окно, а не строкой на запрос
+
     /*
     Метод commence(...) вызывается, когда запрос питается получить доступ к защищённому ресурсу, но аутентификация не прошла успешно.
     Мы подготавливаем ответ для возвращения в формате JSON со статусом 401.
@@ -29,7 +35,7 @@ public class JwtAuthenticationEntryPoint implements AuthenticationEntryPoint {
     */
     @Override
     public void commence(HttpServletRequest request, HttpServletResponse response, AuthenticationException authException) throws IOException, ServletException {
-        log.error("Unauthorized error: {}", authException.getMessage());
+        failureTelemetry.record(Outcome.UNAUTHENTICATED, request.getServletPath(), authException.getMessage());
 
         response.setContentType(MediaType.APPLICATION_JSON_VALUE);
         response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
@@ -0,0 +1,687 @@
+package com.example.spring_jwt_auth_example.security.jwt;
+
+import com.example.spring_jwt_auth_example.exception.JwtVerificationException;
+import com.example.spring_jwt_auth_example.exception.JwtVerificationException.Reason;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Кодек JWS (compact serialization) для нашего набора клаймов, заменяющий jjwt на горячем пути.
+
+- Mac/Signature берутся из StripedPool и переиспользуются (в т.ч. виртуальными потоками), ключ в Mac инициализируется только при его смене.
+- Base64URL декодируется прямо из байтов токена, без промежуточных подстрок.
+- Подпись сравнивается за постоянное время (MessageDigest.isEqual).
+- JSON разбирается потоково: извлекаются только нужные клаймы, остальные значения пропускаются без построения Map.
+
+Формат совместим со стандартными JWT: токены jjwt и других библиотек читаются, наши токены читаются ими.
+*/
+public class JwtCodec {
+
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+    private static final byte[] BASE64_URL_DECODE = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_URL_DECODE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_URL_DECODE[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    // Имена клаймов в виде байтов - сравниваются с JSON без создания строк
+    private static final byte[] ALG = ascii("alg");
+    private static final byte[] KID = ascii("kid");
+    private static final byte[] CRIT = ascii("crit");
+    private static final byte[] ZIP = ascii("zip");
+    private static final byte[] SUB = ascii("sub");
+    private static final byte[] JTI = ascii(JwtUtils.TOKEN_ID_CLAIM);
+    private static final byte[] IAT = ascii("iat");
+    private static final byte[] EXP = ascii("exp");
+    private static final byte[] NBF = ascii("nbf");
+    private static final byte[] USER_ID = ascii(JwtUtils.USER_ID_CLAIM);
+    private static final byte[] EMAIL = ascii(JwtUtils.EMAIL_CLAIM);
+    private static final byte[] ROLES = ascii(JwtUtils.ROLES_CLAIM);
+    private static final byte[] SECURITY_VERSION = ascii(JwtUtils.SECURITY_VERSION_CLAIM);
+
+    private final Map<JwtAlgorithm, StripedPool<MacHolder>> macs = new EnumMap<>(JwtAlgorithm.class);
+
+    private final Map<JwtAlgorithm, StripedPool<Signature>> signatures = new EnumMap<>(JwtAlgorithm.class);
+
+    private final Map<String, byte[]> encodedHeaders = new ConcurrentHashMap<>(); // заголовок одинаков для всех токенов одного ключа
+
+    public JwtCodec() {
+        for (JwtAlgorithm algorithm : JwtAlgorithm.values()) {
+            if (algorithm.isHmac()) {
+                macs.put(algorithm, new StripedPool<>(() -> new MacHolder(Mac.getInstance(algorithm.getJcaName()))));
+            } else {
+                signatures.put(algorithm, new StripedPool<>(() -> Signature.getInstance(algorithm.getJcaName())));
+            }
+        }
+    }
+
+    /*
+    По алгоритму и kid из заголовка возвращает ключ проверки подписи.
+    Может выбросить JwtVerificationException, если алгоритм не ожидается или ключ неизвестен.
+    */
+    @FunctionalInterface
+    public interface KeyResolver {
+
+        Key resolve(JwtAlgorithm algorithm, String keyId);
+
+    }
+
+    public String encode(TokenClaims claims, JwtAlgorithm algorithm, String keyId, Key signingKey) {
+        byte[] header = encodedHeaders.computeIfAbsent(algorithm.name() + '|' + keyId, k -> encodeHeader(algorithm, keyId));
+        byte[] payload = BASE64_URL.encode(payloadJson(claims).getBytes(StandardCharsets.UTF_8));
+
+        byte[] signingInput = new byte[header.length + 1 + payload.length];
+        System.arraycopy(header, 0, signingInput, 0, header.length);
+        signingInput[header.length] = '.';
+        System.arraycopy(payload, 0, signingInput, header.length + 1, payload.length);
+
+        byte[] signature = BASE64_URL.encode(sign(algorithm, signingKey, signingInput));
+
+        byte[] token = Arrays.copyOf(signingInput, signingInput.length + 1 + signature.length);
+        token[signingInput.length] = '.';
+        System.arraycopy(signature, 0, token, signingInput.length + 1, signature.length);
+
+        return new String(token, StandardCharsets.ISO_8859_1);
+    }
+
+    /*
+    Проверяет подпись, затем exp/nbf, и возвращает клаймы.
+    Порядок как в jjwt: по содержимому неподписанного или неверно подписанного токена решения не принимаются.
+    */
+    public TokenClaims decode(String token, KeyResolver keyResolver) {
+        if (token == null || token.isEmpty()) {
+            throw new JwtVerificationException(Reason.MALFORMED, "Token is empty");
+        }
+
+        int firstDot = token.indexOf('.');
+        int secondDot = firstDot < 0 ? -1 : token.indexOf('.', firstDot + 1);
+        if (secondDot < 0 || token.indexOf('.', secondDot + 1) >= 0) {
+            throw new JwtVerificationException(Reason.MALFORMED, "JWT must consist of exactly 3 parts");
+        }
+        if (secondDot == token.length() - 1) {
+            throw new JwtVerificationException(Reason.UNSUPPORTED, "Unsigned JWT is not supported");
+        }
+
+        byte[] bytes = token.getBytes(StandardCharsets.ISO_8859_1);
+
+        JsonReader header = new JsonReader(base64UrlDecode(bytes, 0, firstDot));
+        String alg = null;
+        String keyId = null;
+        header.beginObject();
+        while (header.nextField()) {
+            if (header.fieldIs(ALG)) {
+                alg = header.readString();
+            } else if (header.fieldIs(KID)) {
+                keyId = header.readString();
+            } else if (header.fieldIs(CRIT) || header.fieldIs(ZIP)) {
+                throw new JwtVerificationException(Reason.UNSUPPORTED, "JWT header extensions are not supported");
+            } else {
+                header.skipValue();
+            }
+        }
+        header.endDocument();
+
+        JwtAlgorithm algorithm = JwtAlgorithm.fromHeader(alg);
+        if (algorithm == null) {
+            throw new JwtVerificationException(Reason.UNSUPPORTED, "Unsupported signing algorithm: " + alg);
+        }
+
+        Key key = keyResolver.resolve(algorithm, keyId);
+        byte[] signature = base64UrlDecode(bytes, secondDot + 1, bytes.length);
+        if (!verifySignature(algorithm, key, bytes, secondDot, signature)) {
+            throw new JwtVerificationException(Reason.BAD_SIGNATURE,
+                    "JWT signature does not match locally computed signature");
+        }
+
+        TokenClaims claims = readClaims(base64UrlDecode(bytes, firstDot + 1, secondDot));
+        long now = System.currentTimeMillis();
+
+        if (claims.getExpiration() != null && now > claims.getExpiration().toEpochMilli()) {
+            throw new JwtVerificationException(Reason.EXPIRED, "JWT expired at " + claims.getExpiration());
+        }
+
+        return claims;
+    }
+
+    private TokenClaims readClaims(byte[] payload) {
+        JsonReader json = new JsonReader(payload);
+        TokenClaims.TokenClaimsBuilder claims = TokenClaims.builder();
+        Instant notBefore = null;
+
+        json.beginObject();
+        while (json.nextField()) {
+            if (json.fieldIs(SUB)) {
+                claims.subject(json.readString());
+            } else if (json.fieldIs(JTI)) {
+                claims.tokenId(json.readString());
+            } else if (json.fieldIs(EXP)) {
+                claims.expiration(json.readEpochSeconds());
+            } else if (json.fieldIs(IAT)) {
+                claims.issuedAt(json.readEpochSeconds());
+            } else if (json.fieldIs(NBF)) {
+                notBefore = json.readEpochSeconds();
+            } else if (json.fieldIs(USER_ID)) {
+                claims.userId(json.readLong());
+            } else if (json.fieldIs(EMAIL)) {
+                claims.email(json.readString());
+            } else if (json.fieldIs(ROLES)) {
+                claims.roles(json.readStringArray());
+            } else if (json.fieldIs(SECURITY_VERSION)) {
+                claims.securityVersion(json.readLong());
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endDocument();
+
+        if (notBefore != null && System.currentTimeMillis() < notBefore.toEpochMilli()) {
+            throw new JwtVerificationException(Reason.NOT_YET_VALID, "JWT must not be accepted before " + notBefore);
+        }
+
+        return claims.build();
+    }
+
+    private boolean verifySignature(JwtAlgorithm algorithm, Key key, byte[] token, int signingInputLength, byte[] signature) {
+        try {
+            if (algorithm.isHmac()) {
+                if (!(key instanceof SecretKey)) {
+                    return false;
+                }
+
+                StripedPool<MacHolder> pool = macs.get(algorithm);
+                MacHolder holder = pool.borrow();
+                byte[] expected;
+                try {
+                    Mac mac = holder.init(key);
+                    mac.update(token, 0, signingInputLength);
+                    expected = mac.doFinal();
+                } finally {
+                    pool.release(holder);
+                }
+
+                return MessageDigest.isEqual(expected, signature);
+            }
+
+            if (!(key instanceof PublicKey publicKey) || signature.length != algorithm.getSignatureLength()) {
+                return false;
+            }
+
+            StripedPool<Signature> pool = signatures.get(algorithm);
+            Signature verifier = pool.borrow();
+            try {
+                verifier.initVerify(publicKey);
+                verifier.update(token, 0, signingInputLength);
+                return verifier.verify(signature);
+            } finally {
+                pool.release(verifier);
+            }
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    private byte[] sign(JwtAlgorithm algorithm, Key key, byte[] signingInput) {
+        try {
+            if (algorithm.isHmac()) {
+                StripedPool<MacHolder> pool = macs.get(algorithm);
+                MacHolder holder = pool.borrow();
+                try {
+                    return holder.init(key).doFinal(signingInput);
+                } finally {
+                    pool.release(holder);
+                }
+            }
+
+            StripedPool<Signature> pool = signatures.get(algorithm);
+            Signature signer = pool.borrow();
+            try {
+                signer.initSign((PrivateKey) key);
+                signer.update(signingInput);
+                return signer.sign();
+            } finally {
+                pool.release(signer);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign JWT with " + algorithm, e);
+        }
+    }
+
+    private static byte[] encodeHeader(JwtAlgorithm algorithm, String keyId) {
+        StringBuilder json = new StringBuilder(64).append('{');
+        if (keyId != null) {
+            appendString(json.append("\"kid\":"), keyId).append(',');
+        }
+        json.append("\"alg\":\"").append(algorithm.name()).append("\"}");
+
+        return BASE64_URL.encode(json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String payloadJson(TokenClaims claims) {
+        StringBuilder json = new StringBuilder(256).append('{');
+
+        if (claims.getSubject() != null) {
+            appendString(json.append("\"sub\":"), claims.getSubject()).append(',');
+        }
+        if (claims.getTokenId() != null) {
+            appendString(json.append("\"jti\":"), claims.getTokenId()).append(',');
+        }
+        if (claims.getUserId() != null) {
+            json.append("\"id\":").append(claims.getUserId()).append(',');
+        }
+        if (claims.getEmail() != null) {
+            appendString(json.append("\"email\":"), claims.getEmail()).append(',');
+        }
+        if (claims.getRoles() != null) {
+            json.append("\"roles\":[");
+            for (int i = 0; i < claims.getRoles().size(); i++) {
+                appendString(i == 0 ? json : json.append(','), claims.getRoles().get(i));
+            }
+            json.append("],");
+        }
+        if (claims.getSecurityVersion() != null) {
+            json.append("\"ver\":").append(claims.getSecurityVersion()).append(',');
+        }
+        if (claims.getIssuedAt() != null) {
+            json.append("\"iat\":").append(claims.getIssuedAt().getEpochSecond()).append(',');
+        }
+        if (claims.getExpiration() != null) {
+            json.append("\"exp\":").append(claims.getExpiration().getEpochSecond()).append(',');
+        }
+
+        if (json.charAt(json.length() - 1) == ',') {
+            json.setLength(json.length() - 1);
+        }
+
+        return json.append('}').toString();
+    }
+
+    private static StringBuilder appendString(StringBuilder json, String value) {
+        json.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+
+        return json.append('"');
+    }
+
+    private static byte[] base64UrlDecode(byte[] source, int from, int to) {
+        int length = to - from;
+        if (length % 4 == 1) {
+            throw new JwtVerificationException(Reason.MALFORMED, "Invalid Base64URL length");
+        }
+
+        byte[] result = new byte[length * 3 / 4];
+        int bits = 0;
+        int bitCount = 0;
+        int position = 0;
+
+        for (int i = from; i < to; i++) {
+            int b = source[i];
+            int value = b < 0 ? -1 : BASE64_URL_DECODE[b];
+            if (value < 0) {
+                throw new JwtVerificationException(Reason.MALFORMED, "Invalid Base64URL character");
+            }
+
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                result[position++] = (byte) (bits >> bitCount);
+            }
+        }
+
+        return result;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Mac с ключом, которым он инициализирован: при том же ключе повторный init не нужен
+    private static final class MacHolder {
+
+        private final Mac mac;
+
+        private Key key;
+
+        private MacHolder(Mac mac) {
+            this.mac = mac;
+        }
+
+        // Экземпляр возвращается в пул и после исключения: ключ запоминаем только после успешного init
+        private Mac init(Key newKey) throws GeneralSecurityException {
+            if (key != newKey) {
+                key = null;
+                mac.init(newKey);
+                key = newKey;
+            }
+            return mac;
+        }
+
+    }
+
+    /*
+    Минимальный потоковый разборщик JSON (RFC 8259) поверх массива байтов UTF-8.
+    Умеет читать строки, числа и массивы строк, остальные значения (в т.ч. вложенные объекты) пропускает.
+    */
+    private static final class JsonReader {
+
+        private final byte[] buf;
+
+        private int pos;
+
+        private int fieldStart;
+
+        private int fieldEnd;
+
+        private String escapedField; // имя поля, если в нём были escape-последовательности
+
+        private boolean first = true;
+
+        private JsonReader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        private void beginObject() {
+            skipWhitespace();
+            expect('{');
+        }
+
+        // Переходит к следующему полю объекта, false - объект закончился
+        private boolean nextField() {
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return false;
+            }
+            if (!first) {
+                expect(',');
+                skipWhitespace();
+            }
+            first = false;
+
+            expect('"');
+            fieldStart = pos;
+            escapedField = null;
+            while (peek() != '"') {
+                if (buf[pos] == '\\') {
+                    pos = fieldStart - 1;
+                    escapedField = readString();
+                    pos--; // readString уже съел закрывающую кавычку
+                    break;
+                }
+                pos++;
+            }
+            fieldEnd = pos;
+            pos++;
+
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            return true;
+        }
+
+        private boolean fieldIs(byte[] name) {
+            if (escapedField != null) {
+                return escapedField.equals(new String(name, StandardCharsets.US_ASCII));
+            }
+
+            return Arrays.equals(buf, fieldStart, fieldEnd, name, 0, name.length);
+        }
+
+        private void endDocument() {
+            skipWhitespace();
+            if (pos != buf.length) {
+                throw malformed();
+            }
+        }
+
+        private String readString() {
+            if (readNull()) {
+                return null;
+            }
+
+            expect('"');
+            int start = pos;
+            StringBuilder escaped = null;
+
+            while (true) {
+                byte b = next();
+                if (b == '"') {
+                    if (escaped == null) {
+                        return new String(buf, start, pos - 1 - start, StandardCharsets.UTF_8);
+                    }
+                    return escaped.append(new String(buf, start, pos - 1 - start, StandardCharsets.UTF_8)).toString();
+                }
+                if (b == '\\') {
+                    if (escaped == null) {
+                        escaped = new StringBuilder();
+                    }
+                    escaped.append(new String(buf, start, pos - 1 - start, StandardCharsets.UTF_8));
+                    escaped.append(readEscape());
+                    start = pos;
+                } else if ((b & 0xFF) < 0x20) {
+                    throw malformed();
+                }
+            }
+        }
+
+        private char readEscape() {
+            byte b = next();
+            return switch (b) {
+                case '"' -> '"';
+                case '\\' -> '\\';
+                case '/' -> '/';
+                case 'b' -> '\b';
+                case 'f' -> '\f';
+                case 'n' -> '\n';
+                case 'r' -> '\r';
+                case 't' -> '\t';
+                case 'u' -> {
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(next(), 16);
+                        if (digit < 0) {
+                            throw malformed();
+                        }
+                        code = (code << 4) | digit;
+                    }
+                    yield (char) code;
+                }
+                default -> throw malformed();
+            };
+        }
+
+        private List<String> readStringArray() {
+            if (readNull()) {
+                return null;
+            }
+
+            expect('[');
+            List<String> values = new ArrayList<>(4);
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return values;
+            }
+
+            while (true) {
+                skipWhitespace();
+                values.add(readString());
+                skipWhitespace();
+                if (next() == ']') {
+                    return values;
+                }
+                if (buf[pos - 1] != ',') {
+                    throw malformed();
+                }
+            }
+        }
+
+        private Long readLong() {
+            if (readNull()) {
+                return null;
+            }
+
+            int start = pos;
+            boolean negative = peek() == '-';
+            if (negative) {
+                pos++;
+            }
+
+            long value = 0;
+            int digits = 0;
+            while (pos < buf.length && buf[pos] >= '0' && buf[pos] <= '9') {
+                value = value * 10 + (buf[pos++] - '0');
+                digits++;
+            }
+            if (digits == 0) {
+                throw malformed();
+            }
+
+            // Дробная часть или экспонента встречается редко (например, exp от некоторых библиотек) - разбираем как double
+            if (pos < buf.length && (buf[pos] == '.' || buf[pos] == 'e' || buf[pos] == 'E')) {
+                while (pos < buf.length && "+-.eE0123456789".indexOf(buf[pos]) >= 0) {
+                    pos++;
+                }
+                try {
+                    return (long) Double.parseDouble(new String(buf, start, pos - start, StandardCharsets.US_ASCII));
+                } catch (NumberFormatException e) {
+                    throw malformed();
+                }
+            }
+            if (digits > 18) {
+                throw malformed();
+            }
+
+            return negative ? -value : value;
+        }
+
+        private Instant readEpochSeconds() {
+            Long seconds = readLong();
+            return seconds == null ? null : Instant.ofEpochSecond(seconds);
+        }
+
+        private void skipValue() {
+            skipWhitespace();
+            byte b = peek();
+
+            switch (b) {
+                case '"' -> readString();
+                case '{' -> skipContainer('{');
+                case '[' -> skipContainer('[');
+                case 't' -> expectLiteral("true");
+                case 'f' -> expectLiteral("false");
+                case 'n' -> expectLiteral("null");
+                default -> skipNumber();
+            }
+        }
+
+        private void skipNumber() {
+            int start = pos;
+            while (pos < buf.length && "+-.eE0123456789".indexOf(buf[pos]) >= 0) {
+                pos++;
+            }
+            if (pos == start) {
+                throw malformed();
+            }
+        }
+
+        private void skipContainer(char open) {
+            expect(open);
+            int depth = 1;
+
+            while (depth > 0) {
+                byte b = next();
+                if (b == '"') {
+                    pos--;
+                    readString();
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+            }
+        }
+
+        private boolean readNull() {
+            if (peek() == 'n') {
+                expectLiteral("null");
+                return true;
+            }
+            return false;
+        }
+
+        private void expectLiteral(String literal) {
+            for (int i = 0; i < literal.length(); i++) {
+                expect(literal.charAt(i));
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < buf.length && (buf[pos] == ' ' || buf[pos] == '\t' || buf[pos] == '\n' || buf[pos] == '\r')) {
+                pos++;
+            }
+        }
+
+        private void expect(char c) {
+            if (next() != c) {
+                throw malformed();
+            }
+        }
+
+        private byte peek() {
+            if (pos >= buf.length) {
+                throw malformed();
+            }
+            return buf[pos];
+        }
+
+        private byte next() {
+            byte b = peek();
+            pos++;
+            return b;
+        }
+
+        private JwtVerificationException malformed() {
+            return new JwtVerificationException(Reason.MALFORMED, "Invalid JSON in JWT at position " + pos);
+        }
+    }
+
+}
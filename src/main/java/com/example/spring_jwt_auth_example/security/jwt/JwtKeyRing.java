@@ -0,0 +1,373 @@
+package com.example.spring_jwt_auth_example.security.jwt;
+
+import com.example.spring_jwt_auth_example.exception.JwtVerificationException;
+import com.example.spring_jwt_auth_example.exception.JwtVerificationException.Reason;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+Набор ключей подписи Access Token.
+
+HS512 (по умолчанию) - один симметричный ключ из app.jwt.secret, как и раньше.
+ES256/ES384/ES512 - асимметричные ключи с заголовком kid. Ключи хранятся в Redis (общие для всех узлов),
+один из узлов по расписанию создаёт следующий ключ заранее - не позже чем за publicationLead до начала подписи им:
+узлы перечитывают набор раз в keyRingRefreshInterval, создающий узел может заметить срок тоже только через интервал,
+а внешние сервисы держат /.well-known/jwks.json в кэше ещё jwksMaxAge. Иначе они отклоняли бы токены с новым kid.
+Старый ключ остаётся доступным для проверки ещё keyOverlap после того, как его сменил следующий.
+Закрытые ключи в Redis шифруются ключом app.jwt.keyEncryptionKey (AES-256-GCM). Без него они лежат в открытом виде,
+и любой, кто может читать Redis, может выпускать токены от имени сервиса.
+*/
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class JwtKeyRing implements JwtCodec.KeyResolver {
+
+    private static final String KEYS_KEY = "jwt_signing_keys";
+
+    private static final String ROTATION_LOCK_KEY = "jwt_signing_keys:rotation_lock";
+
+    private static final long MIN_RELOAD_INTERVAL_MILLIS = 1000;
+
+    private static final String ENCRYPTED_PREFIX = "gcm:";
+
+    private static final int GCM_IV_BYTES = 12;
+
+    private static final int GCM_TAG_BITS = 128;
+
+    @Value("${app.jwt.secret}")
+    private String jwtSecret;
+
+    @Value("${app.jwt.signingAlgorithm}")
+    private JwtAlgorithm algorithm;
+
+    @Value("${app.jwt.keyRotationInterval}")
+    private Duration rotationInterval;
+
+    @Value("${app.jwt.keyOverlap}")
+    private Duration keyOverlap;
+
+    @Value("${app.jwt.keyRingRefreshInterval}")
+    private Duration refreshInterval;
+
+    @Value("${app.jwt.keyEncryptionKey:}")
+    private String keyEncryptionKey; // Base64, 32 байта
+
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final TaskScheduler taskScheduler;
+
+    private volatile Map<String, SigningKey> keys = Map.of(); // kid -> ключ
+
+    private volatile SigningKey currentKey;
+
+    private volatile long lastReloadMillis;
+
+    @PostConstruct
+    public void init() {
+        if (algorithm.isHmac()) {
+            // Секрет декодируется как Base64 - так же, как это делал jjwt, поэтому ранее выданные токены остаются валидными
+            Key secretKey = new SecretKeySpec(DatatypeConverter.parseBase64Binary(jwtSecret), algorithm.getJcaName());
+            currentKey = new SigningKey(null, algorithm, secretKey, secretKey, 0);
+            return;
+        }
+
+        if (keyEncryptionKey.isBlank()) {
+            log.warn("app.jwt.keyEncryptionKey is not set: JWT signing keys are stored in Redis unencrypted, "
+                    + "anyone with read access to Redis can issue tokens");
+        }
+
+        refresh();
+        taskScheduler.scheduleWithFixedDelay(this::refresh, Instant.now().plus(refreshInterval), refreshInterval);
+    }
+
+    /*
+    Ключа нет, пока первый ключ создаёт другой узел (этот проиграл блокировку ротации), - тогда набор перечитывается,
+    с тем же ограничением частоты, что и в resolve, а не ждёт следующего refresh.
+    */
+    public SigningKey currentSigningKey() {
+        SigningKey key = currentKey;
+
+        if (key == null) {
+            reloadRateLimited();
+            key = currentKey;
+        }
+        if (key == null) {
+            throw new IllegalStateException("No active signing key");
+        }
+
+        return key;
+    }
+
+    /*
+    Вызывается кодеком для каждого токена: по заголовку kid выбирает открытый ключ.
+    Если kid неизвестен (ключ только что создан другим узлом), набор перечитывается из Redis, но не чаще раза в секунду.
+    На event loop (ReactiveJwtTokenFilter) в Redis не ходим: перечитывание уходит в TaskScheduler, а токен отклоняется.
+    Ключ публикуется за publicationLead до начала подписи, так что неизвестный kid здесь - почти всегда чужой токен.
+    */
+    @Override
+    public Key resolve(JwtAlgorithm tokenAlgorithm, String kid) {
+        if (tokenAlgorithm != algorithm) {
+            throw new JwtVerificationException(Reason.UNSUPPORTED, "Unexpected signing algorithm: " + tokenAlgorithm);
+        }
+
+        if (algorithm.isHmac()) {
+            return currentKey.getVerificationKey();
+        }
+
+        SigningKey key = kid == null ? null : keys.get(kid);
+
+        if (key == null && kid != null) {
+            reloadRateLimited();
+            key = keys.get(kid);
+        }
+
+        if (key == null) {
+            throw new JwtVerificationException(Reason.BAD_SIGNATURE, "Unknown signing key: " + kid);
+        }
+
+        return key.getVerificationKey();
+    }
+
+    // Открытые ключи в формате JWK Set (для HS512 набор пуст - симметричный ключ не публикуется)
+    public Map<String, Object> jwkSet() {
+        List<JWK> jwks = keys.values().stream()
+                .sorted(Comparator.comparingLong(SigningKey::getActivateAt).reversed())
+                .map(key -> (JWK) new ECKey.Builder(curve(), (ECPublicKey) key.getVerificationKey())
+                        .keyID(key.getKeyId())
+                        .keyUse(KeyUse.SIGNATURE)
+                        .algorithm(JWSAlgorithm.parse(algorithm.name()))
+                        .build())
+                .toList();
+
+        return new JWKSet(jwks).toJSONObject();
+    }
+
+    // Сколько внешние сервисы могут кэшировать /.well-known/jwks.json
+    public Duration getJwksMaxAge() {
+        return refreshInterval;
+    }
+
+    // Следующий ключ публикуется не позже чем за это время до начала подписи им
+    public Duration publicationLead() {
+        return refreshInterval.multipliedBy(2).plus(getJwksMaxAge());
+    }
+
+    private void refresh() {
+        try {
+            reload();
+            rotateIfNeeded();
+        } catch (Exception e) {
+            log.error("Cannot refresh JWT signing keys: {}", e.getMessage());
+        }
+    }
+
+    // Не чаще раза в MIN_RELOAD_INTERVAL_MILLIS; на event loop - в фоне, перечитанный набор увидят следующие запросы
+    private void reloadRateLimited() {
+        if (System.currentTimeMillis() - lastReloadMillis <= MIN_RELOAD_INTERVAL_MILLIS) {
+            return;
+        }
+
+        if (Schedulers.isInNonBlockingThread()) {
+            lastReloadMillis = System.currentTimeMillis(); // следующие запросы не ставят задачу повторно
+            taskScheduler.schedule(this::reloadInBackground, Instant.now());
+        } else {
+            reload();
+        }
+    }
+
+    private void reloadInBackground() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.error("Cannot reload JWT signing keys: {}", e.getMessage());
+        }
+    }
+
+    private void rotateIfNeeded() {
+        long now = System.currentTimeMillis();
+        long lead = publicationLead().toMillis();
+        long newestActivateAt = keys.values().stream().mapToLong(SigningKey::getActivateAt).max().orElse(-1);
+
+        if (newestActivateAt >= 0 && newestActivateAt + rotationInterval.toMillis() - lead > now) {
+            return; // следующий ключ ещё рано создавать
+        }
+
+        Boolean locked = redisTemplate.opsForValue()
+                .setIfAbsent(ROTATION_LOCK_KEY, UUID.randomUUID().toString(), refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            // Ротацию выполняет другой узел. Если ключей ещё нет совсем, его первый ключ нужен сразу, а не через refreshInterval
+            if (currentKey == null) {
+                taskScheduler.schedule(this::reloadInBackground, Instant.now().plusMillis(MIN_RELOAD_INTERVAL_MILLIS));
+            }
+            return;
+        }
+
+        /*
+        Первый ключ начинает действовать сразу: проверять пока нечего. Следующие - когда закончится период текущего,
+        но не раньше чем через publicationLead (если ротация опоздала, текущий ключ подписывает дольше своего периода).
+        */
+        long activateAt = newestActivateAt < 0 ? now : Math.max(now + lead, newestActivateAt + rotationInterval.toMillis());
+        String kid = UUID.randomUUID().toString();
+        KeyPair keyPair = generateKeyPair();
+
+        redisTemplate.opsForHash().put(KEYS_KEY, kid, activateAt + "|"
+                + encodePrivateKey(kid, keyPair.getPrivate().getEncoded()) + "|"
+                + Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+
+        // Ключ удаляется через keyOverlap после начала действия следующего: до этого им ещё подписывали
+        List<Long> activations = keys.values().stream().map(SigningKey::getActivateAt).sorted().toList();
+        keys.values().stream()
+                .filter(key -> activations.stream()
+                        .anyMatch(next -> next > key.getActivateAt() && next + keyOverlap.toMillis() < now))
+                .forEach(key -> redisTemplate.opsForHash().delete(KEYS_KEY, key.getKeyId()));
+
+        log.info("New JWT signing key {} created, active from {}", kid, Instant.ofEpochMilli(activateAt));
+        reload();
+    }
+
+    private void reload() {
+        lastReloadMillis = System.currentTimeMillis();
+        Map<Object, Object> stored = redisTemplate.opsForHash().entries(KEYS_KEY);
+        Map<String, SigningKey> loaded = new HashMap<>();
+
+        stored.forEach((kid, value) -> loaded.put((String) kid, parseKey((String) kid, (String) value)));
+
+        long now = System.currentTimeMillis();
+        keys = Map.copyOf(loaded);
+        currentKey = loaded.values().stream()
+                .filter(key -> key.getActivateAt() <= now)
+                .max(Comparator.comparingLong(SigningKey::getActivateAt))
+                .orElse(currentKey);
+    }
+
+    private SigningKey parseKey(String kid, String value) {
+        String[] parts = value.split("\\|");
+
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance("EC");
+            Key privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(decodePrivateKey(kid, parts[1])));
+            PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(parts[2])));
+
+            return new SigningKey(kid, algorithm, privateKey, publicKey, Long.parseLong(parts[0]));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot decode JWT signing key " + kid, e);
+        }
+    }
+
+    // kid - дополнительные данные GCM: зашифрованный ключ нельзя подставить под другим kid
+    private String encodePrivateKey(String kid, byte[] privateKey) {
+        if (keyEncryptionKey.isBlank()) {
+            return Base64.getEncoder().encodeToString(privateKey);
+        }
+
+        try {
+            byte[] iv = new byte[GCM_IV_BYTES];
+            secureRandom.nextBytes(iv);
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, keyEncryptionKey(), new GCMParameterSpec(GCM_TAG_BITS, iv));
+            cipher.updateAAD(kid.getBytes(StandardCharsets.UTF_8));
+            byte[] encrypted = cipher.doFinal(privateKey);
+
+            return ENCRYPTED_PREFIX + Base64.getEncoder().encodeToString(ByteBuffer.allocate(iv.length + encrypted.length)
+                    .put(iv)
+                    .put(encrypted)
+                    .array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot encrypt JWT signing key " + kid, e);
+        }
+    }
+
+    // Ключи, созданные до включения шифрования, хранятся без префикса и читаются как есть
+    private byte[] decodePrivateKey(String kid, String value) throws GeneralSecurityException {
+        if (!value.startsWith(ENCRYPTED_PREFIX)) {
+            return Base64.getDecoder().decode(value);
+        }
+        if (keyEncryptionKey.isBlank()) {
+            throw new IllegalStateException("JWT signing key " + kid + " is encrypted, but app.jwt.keyEncryptionKey is not set");
+        }
+
+        byte[] stored = Base64.getDecoder().decode(value.substring(ENCRYPTED_PREFIX.length()));
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, keyEncryptionKey(), new GCMParameterSpec(GCM_TAG_BITS, stored, 0, GCM_IV_BYTES));
+        cipher.updateAAD(kid.getBytes(StandardCharsets.UTF_8));
+
+        return cipher.doFinal(stored, GCM_IV_BYTES, stored.length - GCM_IV_BYTES);
+    }
+
+    private SecretKeySpec keyEncryptionKey() {
+        return new SecretKeySpec(Base64.getDecoder().decode(keyEncryptionKey), "AES");
+    }
+
+    private KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec(curve().getStdName()));
+
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot generate JWT signing key", e);
+        }
+    }
+
+    private Curve curve() {
+        return Curve.parse(algorithm.getCurveName());
+    }
+
+    @lombok.Value
+    public static class SigningKey {
+
+        String keyId; // null для HS512 - заголовок kid не добавляется
+
+        JwtAlgorithm algorithm;
+
+        Key signingKey;
+
+        Key verificationKey;
+
+        long activateAt;
+
+    }
+
+}
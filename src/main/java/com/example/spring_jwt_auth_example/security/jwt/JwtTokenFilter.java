@@ -1,16 +1,26 @@
 package com.example.spring_jwt_auth_example.security.jwt;
 
+import com.example.spring_jwt_auth_example.entity.RoleType;
+import com.example.spring_jwt_auth_example.exception.JwtVerificationException;
+import com.example.spring_jwt_auth_example.metrics.AuthFailureTelemetry;
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics;
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics.FilterStage;
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics.Outcome;
+import com.example.spring_jwt_auth_example.security.AccessTokenDenylist;
+import com.example.spring_jwt_auth_example.security.AppUserDetails;
+import com.example.spring_jwt_auth_example.security.SecurityVersionStore;
 import com.example.spring_jwt_auth_example.security.UserDetailsServiceImpl;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
@@ -19,37 +29,105 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import java.io.IOException;
 
 @RequiredArgsConstructor
-@Slf4j
+@Profile("!reactive")
 @Component
 public class JwtTokenFilter extends OncePerRequestFilter {
 
     private final JwtUtils jwtUtils;
 
+    private final VerifiedTokenCache verifiedTokenCache;
+
     private final UserDetailsServiceImpl userDetailsService;
 
+    private final SecurityVersionStore securityVersionStore;
+
+    private final AccessTokenDenylist accessTokenDenylist;
+
+    private final AuthMetrics authMetrics;
+
+    private final AuthFailureTelemetry failureTelemetry;
+
+    // Каждый этап пишется в таймер auth.filter с исходом запроса (см. AuthMetrics), отказы - в AuthFailureTelemetry вместо лога
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.MISSING;
         try {
             String jwtToken = getToken(request); // Здесь мы получаем токен из http-заголовка.
+            long stageStart = authMetrics.recordFilterStage(FilterStage.EXTRACTION, jwtToken == null ? Outcome.MISSING : Outcome.VALID, start);
 
-            if (jwtToken != null && jwtUtils.validate(jwtToken)) { // Проверяем, что он представлен в заголовке и валиден.
-                String username = jwtUtils.getUsername(jwtToken);
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username); // Ищем пользователя в БД
-
-                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(userDetails,
-                        null, userDetails.getAuthorities());
-
-                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-
-                SecurityContextHolder.getContext().setAuthentication(authentication); // Помещаем информацию о пользователе в контекст
+            if (jwtToken != null) {
+                outcome = authenticate(request, jwtToken, stageStart);
             }
         } catch (Exception e) {
-            log.error("Cannot set user authentication: {}", e.getMessage());
+            outcome = Outcome.ERROR;
+            failureTelemetry.record(outcome, request.getServletPath(), "Cannot set user authentication: " + e.getMessage());
         }
 
+        authMetrics.recordFilterStage(FilterStage.TOTAL, outcome, start);
         filterChain.doFilter(request, response);
     }
 
+    private Outcome authenticate(HttpServletRequest request, String jwtToken, long stageStart) {
+        TokenClaims claims;
+        try {
+            claims = verifiedTokenCache.getOrVerify(jwtToken, jwtUtils::decode); // Проверяем подпись один раз, повторные запросы с тем же токеном берём из кэша
+        } catch (JwtVerificationException e) {
+            Outcome outcome = Outcome.of(e.getReason());
+            authMetrics.recordFilterStage(FilterStage.VERIFICATION, outcome, stageStart);
+            failureTelemetry.record(outcome, request.getServletPath(), e.getMessage());
+            return outcome;
+        }
+
+        Outcome verification = !isCurrentSecurityVersion(claims) ? Outcome.STALE_VERSION
+                : accessTokenDenylist.isRevoked(claims) ? Outcome.REVOKED // Отозванный при logout токен не принимаем (в сеть - только при вероятном совпадении)
+                : Outcome.VALID;
+        stageStart = authMetrics.recordFilterStage(FilterStage.VERIFICATION, verification, stageStart);
+        if (verification != Outcome.VALID) {
+            failureTelemetry.record(verification, request.getServletPath(), null);
+            return verification;
+        }
+
+        UserDetails userDetails;
+        try {
+            userDetails = claims.getUserId() != null
+                    ? principalFromClaims(claims) // Токен содержит всё нужное - в БД не ходим
+                    : userDetailsService.loadUserByUsername(claims.getSubject()); // Старый токен без клаймов - ищем пользователя в БД
+        } catch (UsernameNotFoundException e) {
+            authMetrics.recordFilterStage(FilterStage.USER_LOADING, Outcome.USER_NOT_FOUND, stageStart);
+            failureTelemetry.record(Outcome.USER_NOT_FOUND, request.getServletPath(), e.getMessage());
+            return Outcome.USER_NOT_FOUND;
+        }
+        authMetrics.recordFilterStage(FilterStage.USER_LOADING, Outcome.VALID, stageStart);
+
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(userDetails,
+                claims, userDetails.getAuthorities()); // Клаймы в credentials - по ним logout отзовёт этот токен
+
+        authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+
+        SecurityContextHolder.getContext().setAuthentication(authentication); // Помещаем информацию о пользователе в контекст
+        return Outcome.VALID;
+    }
+
+    /*
+    Если включена проверка версии безопасности, токен принимается только пока его клайм ver совпадает
+    с текущей версией пользователя - так смена ролей вступает в силу, не дожидаясь истечения токена.
+    */
+    private boolean isCurrentSecurityVersion(TokenClaims claims) {
+        if (!securityVersionStore.isEnabled() || claims.getUserId() == null) {
+            return true;
+        }
+
+        long tokenVersion = claims.getSecurityVersion() == null ? 0L : claims.getSecurityVersion();
+
+        return tokenVersion == securityVersionStore.currentVersion(claims.getUserId());
+    }
+
+    static AppUserDetails principalFromClaims(TokenClaims claims) { // используется и ReactiveJwtTokenFilter
+        return new AppUserDetails(claims.getUserId(), claims.getSubject(), claims.getEmail(), null,
+                RoleType.toMaskFromNames(claims.getRoles()));
+    }
+
     private String getToken(HttpServletRequest request) {
         String headerAuth = request.getHeader(HttpHeaders.AUTHORIZATION);
 
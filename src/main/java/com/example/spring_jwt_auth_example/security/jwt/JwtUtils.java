@@ -1,75 +1,126 @@
 package com.example.spring_jwt_auth_example.security.jwt;
 
+import com.example.spring_jwt_auth_example.exception.JwtVerificationException;
 import com.example.spring_jwt_auth_example.security.AppUserDetails;
-import io.jsonwebtoken.*;
+import com.example.spring_jwt_auth_example.security.SecurityVersionStore;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
-import java.util.Date;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Component
 @Slf4j
+@RequiredArgsConstructor
 public class JwtUtils { // отвечает за генерацию Access Token
 
-    @Value("${app.jwt.secret}")
-    private String jwtSecret; // Будет использовано для подписи
+    public static final String TOKEN_ID_CLAIM = "jti";
+
+    public static final String USER_ID_CLAIM = "id";
+
+    public static final String EMAIL_CLAIM = "email";
+
+    public static final String ROLES_CLAIM = "roles";
+
+    public static final String SECURITY_VERSION_CLAIM = "ver";
 
     @Value("${app.jwt.tokenExpiration}")
     private Duration tokenExpiration;
 
+    private final SecurityVersionStore securityVersionStore;
+
+    private final JwtKeyRing jwtKeyRing; // Ключи, которыми подписываем и проверяем токены
+
+    private final JwtCodec jwtCodec = new JwtCodec(); // Кодирование и проверка подписи токенов
+
+    /*
+    Помимо subject в токен кладутся id, email и роли пользователя, чтобы JwtTokenFilter мог
+    собрать principal прямо из проверенных клаймов, не обращаясь к БД.
+    Если включена проверка версии безопасности, добавляется и текущая версия пользователя (клайм ver).
+    */
     public String generateJwtToken(AppUserDetails userDetails) {
-        return generateTokenFromUsername(userDetails.getUsername());
+        return generateJwtToken(userDetails,
+                securityVersionStore.isEnabled() ? securityVersionStore.currentVersion(userDetails.getId()) : null);
+    }
+
+    // securityVersion уже прочитана вызывающим (ReactiveSecurityService - без блокировки), null - без клайма ver
+    public String generateJwtToken(AppUserDetails userDetails, Long securityVersion) {
+        return sign(TokenClaims.builder()
+                .subject(userDetails.getUsername())
+                .userId(userDetails.getId())
+                .email(userDetails.getEmail())
+                .roles(userDetails.getRoleNames())
+                .securityVersion(securityVersion));
     }
 
     /*
     Данный код генерирует JSON Web-Token JWT на основе переданного имени пользователя.
-    Jwts.builder() - создаёт объект для построения Jwt
     Этот токен может быть передан клиенту и использован для аутентификации и авторизации.
     */
     public String generateTokenFromUsername(String username) {
-        return Jwts.builder()
-                .setSubject(username) // Устанавливает субъект токена (обычно это идентификатор пользователя)
-                .setIssuedAt(new Date()) // Указываем текущую дату - время выдачи токена
-                .setExpiration(new Date(new Date().getTime() + tokenExpiration.toMillis())) // Устанавливаем срок действия, время истечения
-                .signWith(SignatureAlgorithm.HS512, jwtSecret) // Создаём подпись по определённому алгоритму, подписываем токен
-                .compact();
+        return sign(TokenClaims.builder()
+                .subject(username)); // Устанавливает субъект токена (обычно это идентификатор пользователя)
     }
 
     /*
     Этот метод выполняет обратную операцию по сравнению с предыдущим методом.
     Данный метод извлекает имя Username из Jwt (токена), который был подписан с использованием того же секретного ключа.
-    Если Jwt подписан некорректно или ключ подписей не совпадает, здесь может возникнуть исключение.
-    .getSubject() - получает из тела субъект, который в данном контексте представляет имя пользователя.
+    Если Jwt подписан некорректно или ключ подписей не совпадает, будет выброшено JwtVerificationException.
     */
     public String getUsername(String token) {
-        return Jwts.parser().setSigningKey(jwtSecret)
-                .parseClaimsJws(token).getBody().getSubject();
+        return jwtCodec.decode(token, jwtKeyRing).getSubject();
+    }
+
+    public boolean validate(String authToken) {
+        return verify(authToken) != null;
     }
 
     /*
-    Если Jwt подписан корректно и содержит допустимые данные, то эта операция будет успешной.
-    Если валидация не удалась, код перехватывает различные исключения, которые могут возникнуть в процессе валидации.
-    UnsupportedJwtException - например, Если получаем Jwt, который подписан с использованием алгоритма,
-    не поддерживаемого этой библиотекой, то при попытке его валидации будет выброшено исключение.
+    Проверяет подпись и срок действия токена за один разбор и возвращает его клаймы.
+    Если токен невалиден, возвращает null, а причина пишется в лог на уровне DEBUG:
+    невалидные и просроченные токены - обычный поток запросов, их считает AuthFailureTelemetry.
     */
-    public boolean validate(String authToken) {
+    public TokenClaims verify(String authToken) {
         try {
-            Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(authToken);
-            return true;
-        } catch (SignatureException e) { // Неправильный ключ (подписть Jwt некорректна, подписи не совпадают)
-            log.error("Invalid signature: {}", e.getMessage());
-        } catch (MalformedJwtException e) { // Невалидный токен
-            log.error("Invalid token: {}", e.getMessage());
-        } catch (ExpiredJwtException e) { // Закончился срок действия токена
-            log.error("Token is expired: {}", e.getMessage());
-        } catch (UnsupportedJwtException e) { // Jwt использует неподдерживаемую функциональность
-            log.error("Token is unsupported: {}", e.getMessage());
-        } catch (IllegalArgumentException e) { // строка с клаймсами пуста или некорректна
-            log.error("Claims string is empty: {}", e.getMessage());
+            return decode(authToken);
+        } catch (JwtVerificationException e) {
+            switch (e.getReason()) {
+                case BAD_SIGNATURE -> log.debug("Invalid signature: {}", e.getMessage()); // Неправильный ключ (подписи не совпадают)
+                case MALFORMED -> log.debug("Invalid token: {}", e.getMessage()); // Невалидный токен
+                case EXPIRED, NOT_YET_VALID -> log.debug("Token is expired: {}", e.getMessage()); // Закончился срок действия токена
+                case UNSUPPORTED -> log.debug("Token is unsupported: {}", e.getMessage()); // Jwt использует неподдерживаемую функциональность
+            }
         }
-        return false;
+        return null;
+    }
+
+    // То же, что verify, но причина отказа - в JwtVerificationException (для метрик и AuthFailureTelemetry)
+    public TokenClaims decode(String authToken) {
+        return jwtCodec.decode(authToken, jwtKeyRing);
+    }
+
+    // jti не обязан быть непредсказуемым, поэтому SecureRandom (UUID.randomUUID) здесь не нужен
+    private static String newTokenId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    private String sign(TokenClaims.TokenClaimsBuilder claims) {
+        Instant now = Instant.now();
+        JwtKeyRing.SigningKey signingKey = jwtKeyRing.currentSigningKey();
+
+        return jwtCodec.encode(claims
+                        .tokenId(newTokenId()) // Уникальный id токена - для точечного отзыва
+                        .issuedAt(now) // Указываем текущую дату - время выдачи токена
+                        .expiration(now.plus(tokenExpiration)) // Устанавливаем срок действия, время истечения
+                        .build(),
+                signingKey.getAlgorithm(),
+                signingKey.getKeyId(), // По kid проверяющая сторона найдёт открытый ключ
+                signingKey.getSigningKey());
     }
 
 }
@@ -0,0 +1,54 @@
+package com.example.spring_jwt_auth_example.security.jwt;
+
+import com.example.spring_jwt_auth_example.metrics.AuthFailureTelemetry;
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics.Outcome;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.server.ServerAuthenticationEntryPoint;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+WebFlux-версия JwtAuthenticationEntryPoint: тот же JSON с кодом 401.
+*/
+@Component
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveJwtAuthenticationEntryPoint implements ServerAuthenticationEntryPoint {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final AuthFailureTelemetry failureTelemetry;
+
+    @Override
+    public Mono<Void> commence(ServerWebExchange exchange, AuthenticationException authException) {
+        failureTelemetry.record(Outcome.UNAUTHENTICATED, exchange.getRequest().getPath().value(), authException.getMessage());
+
+        ServerHttpResponse response = exchange.getResponse();
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        response.setStatusCode(HttpStatus.UNAUTHORIZED);
+
+        final Map<String, Object> body = new HashMap<>();
+        body.put("status", HttpStatus.UNAUTHORIZED.value());
+        body.put("error", "Unauthorized");
+        body.put("message", authException.getMessage());
+        body.put("path", exchange.getRequest().getPath().value());
+
+        try {
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(objectMapper.writeValueAsBytes(body))));
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.example.spring_jwt_auth_example.security.jwt;
+
+import com.example.spring_jwt_auth_example.exception.JwtVerificationException;
+import com.example.spring_jwt_auth_example.metrics.AuthFailureTelemetry;
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics;
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics.FilterStage;
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics.Outcome;
+import com.example.spring_jwt_auth_example.security.ReactiveAccessTokenDenylist;
+import com.example.spring_jwt_auth_example.security.ReactiveSecurityVersionStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/*
+WebFlux-версия JwtTokenFilter. Не бин: создаётся в ReactiveSecurityConfiguration и встраивается только в цепочку
+Spring Security, иначе WebFlux подхватил бы его ещё и как глобальный WebFilter.
+Проверка подписи - чистые вычисления и выполняется прямо на event loop (неизвестный kid JwtKeyRing перечитывает в фоне),
+проверки версии и denylist ходят в Redis через Lettuce, не блокируя поток. Любое исключение проверки становится сигналом ошибки Mono
+и даёт исход ERROR, а не ответ 500.
+Этапы пишутся в те же таймеры auth.filter, что и у JwtTokenFilter: этап заканчивается, когда завершился его Mono.
+*/
+@RequiredArgsConstructor
+public class ReactiveJwtTokenFilter implements WebFilter {
+
+    private final JwtUtils jwtUtils;
+
+    private final VerifiedTokenCache verifiedTokenCache;
+
+    private final ReactiveUserDetailsService userDetailsService;
+
+    private final ReactiveSecurityVersionStore securityVersionStore;
+
+    private final ReactiveAccessTokenDenylist accessTokenDenylist;
+
+    private final AuthFailureTelemetry failureTelemetry;
+
+    private final AuthMetrics authMetrics;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        long start = System.nanoTime();
+        String jwtToken = getToken(exchange.getRequest());
+        long stageStart = authMetrics.recordFilterStage(FilterStage.EXTRACTION, jwtToken == null ? Outcome.MISSING : Outcome.VALID, start);
+        if (jwtToken == null) {
+            authMetrics.recordFilterStage(FilterStage.TOTAL, Outcome.MISSING, start);
+            return chain.filter(exchange);
+        }
+
+        String path = exchange.getRequest().getPath().value();
+        return authenticate(jwtToken, path, stageStart)
+                .onErrorResume(e -> {
+                    failureTelemetry.record(Outcome.ERROR, path, "Cannot set user authentication: " + e.getMessage());
+                    return Mono.just(new Result(Outcome.ERROR, null));
+                })
+                .flatMap(result -> {
+                    authMetrics.recordFilterStage(FilterStage.TOTAL, result.outcome(), start);
+                    return result.authentication() == null ? chain.filter(exchange) : chain.filter(exchange)
+                            .contextWrite(ReactiveSecurityContextHolder.withAuthentication(result.authentication())); // Помещаем информацию о пользователе в контекст
+                });
+    }
+
+    private Mono<Result> authenticate(String jwtToken, String path, long stageStart) {
+        return Mono.defer(() -> {
+            TokenClaims claims;
+            try {
+                claims = verifiedTokenCache.getOrVerify(jwtToken, jwtUtils::decode);
+            } catch (JwtVerificationException e) {
+                Outcome outcome = Outcome.of(e.getReason());
+                authMetrics.recordFilterStage(FilterStage.VERIFICATION, outcome, stageStart);
+                failureTelemetry.record(outcome, path, e.getMessage());
+                return Mono.just(new Result(outcome, null));
+            }
+
+            return authenticate(claims, path, stageStart);
+        });
+    }
+
+    private Mono<Result> authenticate(TokenClaims claims, String path, long stageStart) {
+        return verify(claims).flatMap(verification -> {
+            long loadingStart = authMetrics.recordFilterStage(FilterStage.VERIFICATION, verification, stageStart);
+            if (verification != Outcome.VALID) {
+                failureTelemetry.record(verification, path, null);
+                return Mono.just(new Result(verification, null));
+            }
+
+            Mono<UserDetails> principal = claims.getUserId() != null
+                    ? Mono.just(JwtTokenFilter.principalFromClaims(claims)) // Токен содержит всё нужное - в БД не ходим
+                    : userDetailsService.findByUsername(claims.getSubject()); // Старый токен без клаймов - ищем пользователя в БД
+
+            return principal
+                    .map(userDetails -> {
+                        authMetrics.recordFilterStage(FilterStage.USER_LOADING, Outcome.VALID, loadingStart);
+                        return new Result(Outcome.VALID, new UsernamePasswordAuthenticationToken(userDetails, claims,
+                                userDetails.getAuthorities()));
+                    })
+                    .switchIfEmpty(Mono.fromSupplier(() -> {
+                        authMetrics.recordFilterStage(FilterStage.USER_LOADING, Outcome.USER_NOT_FOUND, loadingStart);
+                        failureTelemetry.record(Outcome.USER_NOT_FOUND, path, "User not found. Username is: " + claims.getSubject());
+                        return new Result(Outcome.USER_NOT_FOUND, null);
+                    }));
+        });
+    }
+
+    // Тот же порядок, что в JwtTokenFilter: сначала версия безопасности, потом denylist
+    private Mono<Outcome> verify(TokenClaims claims) {
+        return isCurrentSecurityVersion(claims)
+                .flatMap(current -> !current ? Mono.just(Outcome.STALE_VERSION)
+                        : accessTokenDenylist.isRevoked(claims).map(revoked -> revoked ? Outcome.REVOKED : Outcome.VALID));
+    }
+
+    private Mono<Boolean> isCurrentSecurityVersion(TokenClaims claims) {
+        if (!securityVersionStore.isEnabled() || claims.getUserId() == null) {
+            return Mono.just(true);
+        }
+
+        long tokenVersion = claims.getSecurityVersion() == null ? 0L : claims.getSecurityVersion();
+
+        return securityVersionStore.currentVersion(claims.getUserId())
+                .map(version -> version == tokenVersion);
+    }
+
+    private String getToken(ServerHttpRequest request) {
+        String headerAuth = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+
+        if (StringUtils.hasText(headerAuth) && headerAuth.startsWith("Bearer ")) {
+            return headerAuth.substring(7); // Первые 7 символов
+        }
+
+        return null;
+    }
+
+    // authentication == null - запрос идёт дальше без пользователя
+    private record Result(Outcome outcome, Authentication authentication) {
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.example.spring_jwt_auth_example.security.jwt;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.List;
+
+/*
+Неизменяемый снимок клаймов уже проверенного Access Token.
+Хранится в VerifiedTokenCache, поэтому не должен ссылаться на объекты парсера.
+userId, email, roles и tokenId отсутствуют в токенах, выданных до их добавления (тогда они равны null).
+*/
+@Value
+@Builder
+public class TokenClaims {
+
+    String subject;
+
+    String tokenId; // jti - по нему токен можно отозвать до истечения срока, см. AccessTokenDenylist
+
+    Instant issuedAt;
+
+    Instant expiration;
+
+    Long userId;
+
+    String email;
+
+    List<String> roles;
+
+    Long securityVersion;
+
+}
@@ -0,0 +1,159 @@
+package com.example.spring_jwt_auth_example.security.jwt;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+@Component
+public class VerifiedTokenCache { // кэш уже проверенных Access Token
+
+    /*
+    Ключ - SHA-256 от строки токена, сам токен в памяти не храним.
+    MessageDigest не потокобезопасен, поэтому экземпляры берутся из пула (см. StripedPool).
+    */
+    private static final StripedPool<MessageDigest> SHA_256 = new StripedPool<>(() -> MessageDigest.getInstance("SHA-256"));
+
+    @Value("${app.jwt.verifiedTokenCacheSize}")
+    private int maxSize;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final DelayQueue<Entry> expiryQueue = new DelayQueue<>(); // записи в порядке истечения exp
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private Thread evictionThread;
+
+    /*
+    Возвращает клаймы из кэша, а при промахе вызывает verifier (полная проверка подписи) и запоминает результат.
+    verifier возвращает null, если токен невалиден - такие токены не кэшируются.
+    Запись, у которой наступил exp, никогда не отдаётся, даже если поток очистки ещё не успел её удалить.
+    */
+    public TokenClaims getOrVerify(String token, Function<String, TokenClaims> verifier) {
+        String key = digest(token);
+        Entry entry = entries.get(key);
+
+        if (entry != null && !entry.isExpired()) {
+            hits.increment();
+            return entry.claims;
+        }
+
+        misses.increment();
+        TokenClaims claims = verifier.apply(token);
+
+        if (claims != null && claims.getExpiration() != null) {
+            put(key, claims);
+        }
+
+        return claims;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /*
+    Поток очистки блокируется на DelayQueue и просыпается ровно в момент истечения exp ближайшей записи.
+    */
+    @PostConstruct
+    public void startEviction() {
+        evictionThread = Thread.ofPlatform()
+                .name("verified-token-cache-eviction")
+                .daemon(true)
+                .start(this::evictExpired);
+    }
+
+    @PreDestroy
+    public void stopEviction() {
+        evictionThread.interrupt();
+    }
+
+    private void put(String key, TokenClaims claims) {
+        if (entries.size() >= maxSize) {
+            return; // кэш заполнен - просто проверяем токен без кэширования, пока не освободится место
+        }
+
+        Entry entry = new Entry(key, claims);
+        if (!entry.isExpired() && entries.putIfAbsent(key, entry) == null) {
+            expiryQueue.put(entry);
+        }
+    }
+
+    private void evictExpired() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Entry expired = expiryQueue.take();
+                if (entries.remove(expired.key, expired)) {
+                    evictions.increment();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String digest(String token) {
+        MessageDigest sha256 = SHA_256.borrow();
+        byte[] hash = sha256.digest(token.getBytes(StandardCharsets.US_ASCII));
+        SHA_256.release(sha256);
+        return Base64.getEncoder().withoutPadding().encodeToString(hash);
+    }
+
+    private static final class Entry implements Delayed {
+
+        private final String key;
+
+        private final TokenClaims claims;
+
+        private final long expiresAtMillis;
+
+        private Entry(String key, TokenClaims claims) {
+            this.key = key;
+            this.claims = claims;
+            this.expiresAtMillis = claims.getExpiration().toEpochMilli();
+        }
+
+        private boolean isExpired() {
+            return expiresAtMillis <= System.currentTimeMillis();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiresAtMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiresAtMillis, ((Entry) other).expiresAtMillis);
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.example.spring_jwt_auth_example.service;
+
+import com.example.spring_jwt_auth_example.entity.RefreshToken;
+import com.example.spring_jwt_auth_example.repository.RefreshTokenRepository;
+import com.example.spring_jwt_auth_example.util.RedisSlots;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+Переносит Refresh Token из старой раскладки Spring Data (@RedisHash("refresh_tokens") с индексами) в RefreshTokenRepository.
+Включается app.refreshTokens.migrateLegacyKeyspace=true на время одного деплоя, по умолчанию выключена.
+Выполняется один раз на весь кластер: под блокировкой в Redis, после успешного прохода ставится отметка о завершении,
+и следующие запуски (другие узлы, перезапуски) ничего не делают.
+Каждый живой хэш refresh_tokens:<id> сохраняется в новом формате с оставшимся TTL, после чего удаляются только ключи
+этого токена - хэш, phantom-копия, его записи в индексных множествах и в refresh_tokens. Токены, которые старые узлы
+записали во время деплоя уже после прохода, не удаляются: их можно перенести, удалив отметку и запустив миграцию снова.
+В Redis Cluster не выполняется: старая раскладка существовала только на одиночном Redis.
+*/
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.refreshTokens.migrateLegacyKeyspace", havingValue = "true")
+public class LegacyRefreshTokenMigration implements ApplicationRunner {
+
+    private static final String LEGACY_KEYSPACE = "refresh_tokens";
+
+    private static final String PHANTOM_SUFFIX = ":phantom";
+
+    private static final String INDEX_SUFFIX = ":idx";
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String LOCK_KEY = "refresh_tokens_migration:lock";
+
+    private static final String DONE_KEY = "refresh_tokens_migration:done";
+
+    // Если узел упал посреди прохода, миграцию сможет выполнить другой узел через это время
+    private static final Duration LOCK_TIME = Duration.ofMinutes(10);
+
+    private static final RedisScript<Long> UNLOCK_SCRIPT = RedisScript.of("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RefreshTokenRepository refreshTokenRepository;
+
+    private final RedisProperties redisProperties;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (RedisSlots.isCluster(redisProperties) || Boolean.TRUE.equals(redisTemplate.hasKey(DONE_KEY))) {
+            return;
+        }
+
+        String lockValue = UUID.randomUUID().toString();
+        Boolean locked = redisTemplate.opsForValue()
+                .setIfAbsent(LOCK_KEY, lockValue, LOCK_TIME.toMillis(), TimeUnit.MILLISECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            log.info("Legacy refresh token migration is running on another node");
+            return;
+        }
+
+        try {
+            migrate();
+            redisTemplate.opsForValue().set(DONE_KEY, Instant.now().toString());
+        } finally {
+            redisTemplate.execute(UNLOCK_SCRIPT, List.of(LOCK_KEY), lockValue);
+        }
+    }
+
+    private void migrate() {
+        int migrated = 0;
+        int skipped = 0;
+        long deleted = 0;
+        List<String> handled = new ArrayList<>(BATCH_SIZE);
+
+        try (Cursor<String> keys = scanLegacyKeys()) {
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (key.endsWith(PHANTOM_SUFFIX) || redisTemplate.type(key) != DataType.HASH) {
+                    continue; // индексные множества и phantom-копии удаляются вместе со своим хэшем
+                }
+
+                RefreshToken refreshToken = toRefreshToken(redisTemplate.<String, String>opsForHash().entries(key));
+                if (refreshToken == null || refreshToken.getExpiryDate().isBefore(Instant.now())) {
+                    skipped++;
+                } else {
+                    refreshTokenRepository.save(refreshToken);
+                    migrated++;
+                }
+
+                handled.add(key);
+                if (handled.size() == BATCH_SIZE) {
+                    deleted += deleteHandled(handled);
+                }
+            }
+        }
+        deleted += deleteHandled(handled);
+
+        if (migrated > 0 || skipped > 0 || deleted > 0) {
+            log.info("Legacy refresh tokens migrated: {}, skipped (expired or incomplete): {}, legacy keys deleted: {}",
+                    migrated, skipped, deleted);
+        }
+    }
+
+    // Удаляет хэши, прочитанные этим проходом, и всё, что Spring Data хранил для них: phantom, idx и записи в индексах
+    private long deleteHandled(List<String> hashKeys) {
+        if (hashKeys.isEmpty()) {
+            return 0;
+        }
+
+        List<String> unlinked = new ArrayList<>(hashKeys.size() * 3);
+        List<Object> ids = new ArrayList<>(hashKeys.size());
+        for (String key : hashKeys) {
+            String id = key.substring(LEGACY_KEYSPACE.length() + 1);
+            Set<String> indexes = redisTemplate.opsForSet().members(key + INDEX_SUFFIX);
+            if (indexes != null) {
+                indexes.forEach(index -> redisTemplate.opsForSet().remove(index, id));
+            }
+
+            ids.add(id);
+            unlinked.add(key);
+            unlinked.add(key + PHANTOM_SUFFIX);
+            unlinked.add(key + INDEX_SUFFIX);
+        }
+
+        redisTemplate.opsForSet().remove(LEGACY_KEYSPACE, ids.toArray());
+        Long deleted = redisTemplate.unlink(unlinked);
+        hashKeys.clear();
+        return deleted == null ? 0 : deleted;
+    }
+
+    private Cursor<String> scanLegacyKeys() {
+        return redisTemplate.scan(ScanOptions.scanOptions()
+                .match(LEGACY_KEYSPACE + ":*")
+                .count(BATCH_SIZE)
+                .build());
+    }
+
+    // Spring Data хранил Instant строкой ISO-8601
+    private static RefreshToken toRefreshToken(Map<String, String> fields) {
+        String token = fields.get("token");
+        String userId = fields.get("userId");
+        String expiryDate = fields.get("expiryDate");
+        if (token == null || userId == null || expiryDate == null) {
+            return null;
+        }
+
+        return RefreshToken.builder()
+                .token(token)
+                .userId(Long.valueOf(userId))
+                .expiryDate(Instant.parse(expiryDate))
+                .build();
+    }
+
+}
@@ -0,0 +1,240 @@
+package com.example.spring_jwt_auth_example.service;
+
+import com.example.spring_jwt_auth_example.entity.RefreshToken;
+import com.example.spring_jwt_auth_example.exception.RefreshTokenException;
+import com.example.spring_jwt_auth_example.repository.ReactiveUserRepository;
+import com.example.spring_jwt_auth_example.repository.RefreshTokenNearCache;
+import com.example.spring_jwt_auth_example.security.AppUserDetails;
+import com.example.spring_jwt_auth_example.security.AuthRateLimiter;
+import com.example.spring_jwt_auth_example.security.ReactiveSecurityVersionStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static com.example.spring_jwt_auth_example.repository.RefreshTokenRepository.*;
+
+/*
+Refresh Token в Redis через Lettuce (ReactiveStringRedisTemplate).
+Раскладка ключей и скрипты общие с RefreshTokenRepository, поэтому servlet- и reactive-узлы понимают токены друг друга.
+Записи выпущенных токенов, как и там, кладутся в RefreshTokenNearCache и при обмене берутся оттуда.
+*/
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+@Slf4j
+public class ReactiveRefreshTokenService {
+
+    @Value("${app.jwt.refreshTokenExpiration}")
+    private Duration refreshTokenExpiration;
+
+    @Value("${app.refreshTokens.ownerMaxAge}")
+    private Duration ownerMaxAge;
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    private final RefreshTokenNearCache nearCache;
+
+    private final ReactiveUserRepository userRepository;
+
+    private final ReactiveSecurityVersionStore securityVersionStore;
+
+    private final AuthRateLimiter rateLimiter; // решает по локальным корзинам, event loop не блокирует
+
+    // Создание токена при логине - начало нового семейства
+    public Mono<RefreshToken> createRefreshToken(AppUserDetails userDetails) {
+        return currentVersion(userDetails.getId())
+                .flatMap(version -> {
+                    RefreshToken refreshToken = RefreshToken.builder()
+                            .userId(userDetails.getId())
+                            .expiryDate(Instant.now().plus(refreshTokenExpiration))
+                            .token(newToken(userDetails.getId()))
+                            .familyId(UUID.randomUUID().toString())
+                            .username(userDetails.getUsername())
+                            .email(userDetails.getEmail())
+                            .roles(userDetails.getRoleNames())
+                            .securityVersion(version.orElse(null))
+                            .ownerLoadedAt(Instant.now())
+                            .build();
+
+                    return redisTemplate.execute(SAVE_SCRIPT, saveKeys(refreshToken), saveArgs(refreshToken))
+                            .then(redisTemplate.opsForZSet().add(expiryKey(refreshToken.getUserId()),
+                                    expiryMember(refreshToken.getUserId(), refreshToken.getToken()),
+                                    refreshToken.getExpiryDate().toEpochMilli()))
+                            .then(Mono.fromSupplier(() -> cache(refreshToken)));
+                });
+    }
+
+    // Атомарный обмен токена на новый, см. RefreshTokenService.rotateRefreshToken
+    public Mono<RefreshToken> rotateRefreshToken(String token) {
+        String newTokenId = UUID.randomUUID().toString();
+        Instant newExpiryDate = Instant.now().plus(refreshTokenExpiration);
+
+        return rotate(token, newTokenId, newExpiryDate, 0, false, null)
+                .flatMap(result -> switch (result.getStatus()) {
+                    case OK -> redisTemplate.execute(MOVE_EXPIRY_SCRIPT, List.of(expiryKey(result.getRefreshToken().getUserId())),
+                                    moveExpiryArgs(token, result.getRefreshToken()))
+                            .then(Mono.fromSupplier(() -> cache(result.getRefreshToken())));
+                    case NOT_FOUND -> Mono.error(new RefreshTokenException(token, "Refresh token not found"));
+                    case EXPIRED -> Mono.error(new RefreshTokenException(token, "Refresh token was expired. Repeat signin action!"));
+                    case REUSED -> {
+                        log.warn("Reuse of an already rotated refresh token detected, token family revoked");
+                        yield Mono.error(new RefreshTokenException(token, "Refresh token was already used. Repeat signin action!"));
+                    }
+                });
+    }
+
+    // Удаление всех токенов пользователя, см. RefreshTokenRepository.deleteByUserId и RefreshTokenService.deleteByUserId
+    public Mono<Void> deleteByUserId(Long userId) {
+        return deleteTokenSets(List.of(userTokensKey(userId)), 0)
+                .concatWith(deleteTokenSets(List.of(legacyUserTokensKey(userId)), 0))
+                .flatMapIterable(changing -> changing)
+                .collectList()
+                .doOnNext(changing -> {
+                    if (!changing.isEmpty()) {
+                        log.warn("Refresh tokens of user {} kept changing and were not deleted: {}", userId, changing);
+                    }
+                })
+                .then();
+    }
+
+    /*
+    Чтение записи (сначала из near-кэша) и ROTATE_SCRIPT, повтор с чтением из Redis при RETRY -
+    так же, как RefreshTokenRepository.rotate. Лимит владельца списывается и данные владельца проверяются один раз за обмен,
+    на первой попытке, где нашлась запись (updated); owner - данные владельца, перечитанные тогда из БД, иначе null.
+    */
+    private Mono<RotationResult> rotate(String token, String newTokenId, Instant newExpiryDate, int attempt,
+                                        boolean updated, RefreshToken owner) {
+        if (attempt == SCRIPT_ATTEMPTS) {
+            return Mono.just(new RotationResult(RotationStatus.NOT_FOUND, null));
+        }
+
+        String cached = attempt == 0 ? nearCache.get(token) : null;
+        return (cached != null ? Mono.just(cached) : redisTemplate.opsForValue().get(tokenKey(token)))
+                .flatMap(value -> {
+                    RefreshToken successor = successor(decode(token, value), newTokenId, newExpiryDate);
+                    Mono<RefreshToken> rotatedWithOwner;
+                    if (updated) {
+                        rotatedWithOwner = Mono.just(owner == null ? successor : withOwner(successor, owner));
+                    } else {
+                        rateLimiter.checkRefreshOwner(successor.getUserId()); // запись токена нашлась - владелец подтверждён
+                        rotatedWithOwner = withCurrentOwner(successor);
+                    }
+
+                    return rotatedWithOwner
+                            .flatMap(rotated -> redisTemplate.execute(ROTATE_SCRIPT, rotateKeys(token, rotated),
+                                            rotateArgs(token, value, rotated))
+                                    .next()
+                                    .flatMap(result -> {
+                                        if ("RETRY".equals(result)) {
+                                            nearCache.invalidate(token);
+                                            return rotate(token, newTokenId, newExpiryDate, attempt + 1, true,
+                                                    updated ? owner : rotated == successor ? null : rotated);
+                                        }
+                                        nearCache.remove(token);
+                                        return Mono.just(rotationResult(result, rotated));
+                                    }));
+                })
+                .switchIfEmpty(Mono.defer(() -> revokeFamily(token)
+                        .map(status -> new RotationResult(status, null))));
+    }
+
+    private Mono<RotationStatus> revokeFamily(String token) {
+        return redisTemplate.opsForValue().get(usedKey(token))
+                .flatMap(used -> revokeCurrent(used, familyKeyOfUsed(used), 0)
+                        .thenReturn(RotationStatus.REUSED))
+                .defaultIfEmpty(RotationStatus.NOT_FOUND);
+    }
+
+    private Mono<Void> revokeCurrent(String used, String familyKey, int attempt) {
+        if (attempt == SCRIPT_ATTEMPTS) {
+            return Mono.empty();
+        }
+
+        return redisTemplate.opsForValue().get(familyKey)
+                .flatMap(current -> familyOwner(used, current)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMap(userId -> redisTemplate.execute(REVOKE_FAMILY_SCRIPT,
+                                revokeKeys(familyKey, current, userId.orElse(null)), revokeArgs(current)).next())
+                        .flatMap(revoked -> revoked == 1L ? Mono.<Void>empty() : revokeCurrent(used, familyKey, attempt + 1)))
+                .then();
+    }
+
+    // Метка и токен старого формата: владелец - только в записи токена
+    private Mono<Long> familyOwner(String used, String current) {
+        Long owner = ownerOf(used, current);
+        return owner != null ? Mono.just(owner) : redisTemplate.opsForValue().get(tokenKey(current))
+                .map(value -> decode(current, value).getUserId());
+    }
+
+    // Как RefreshTokenRepository.deleteTokenSets: повторяются только изменившиеся множества, результат - так и не удалённые
+    private Mono<List<String>> deleteTokenSets(List<String> userTokensKeys, int attempt) {
+        if (userTokensKeys.isEmpty() || attempt == SCRIPT_ATTEMPTS) {
+            return Mono.just(userTokensKeys);
+        }
+
+        return redisTemplate.execute(MEMBERS_SCRIPT, userTokensKeys)
+                .next()
+                .flatMap(members -> redisTemplate.execute(DELETE_BY_USER_SCRIPT, deleteKeys(userTokensKeys, members),
+                                deleteArgs(members))
+                        .next()
+                        .flatMap(result -> {
+                            Set<Integer> changed = changedSets(result);
+                            forEachDeletedToken(members, changed, nearCache::remove);
+                            return deleteTokenSets(selectSets(userTokensKeys, changed), attempt + 1);
+                        }));
+    }
+
+    // См. RefreshTokenService.withCurrentOwner
+    private Mono<RefreshToken> withCurrentOwner(RefreshToken rotated) {
+        return currentVersion(rotated.getUserId())
+                .flatMap(version -> {
+                    if (rotated.getUsername() != null && isOwnerFresh(rotated)
+                            && version.map(v -> v.equals(rotated.getSecurityVersion())).orElse(true)) {
+                        return Mono.just(rotated);
+                    }
+
+                    return userRepository.findById(rotated.getUserId())
+                            .map(AppUserDetails::new)
+                            .switchIfEmpty(Mono.error(() -> new RefreshTokenException(
+                                    "Exception trying to get token for userId: " + rotated.getUserId())))
+                            .map(owner -> rotated.toBuilder()
+                                    .username(owner.getUsername())
+                                    .email(owner.getEmail())
+                                    .roles(owner.getRoleNames())
+                                    .securityVersion(version.orElse(null))
+                                    .ownerLoadedAt(Instant.now())
+                                    .build());
+                });
+    }
+
+    private boolean isOwnerFresh(RefreshToken rotated) {
+        return rotated.getOwnerLoadedAt() != null && rotated.getOwnerLoadedAt().plus(ownerMaxAge).isAfter(Instant.now());
+    }
+
+    // Версия безопасности владельца; пусто - проверка версий выключена
+    private Mono<Optional<Long>> currentVersion(Long userId) {
+        if (!securityVersionStore.isEnabled()) {
+            return Mono.just(Optional.empty());
+        }
+
+        return securityVersionStore.currentVersion(userId).map(Optional::of);
+    }
+
+    private RefreshToken cache(RefreshToken refreshToken) {
+        nearCache.put(refreshToken.getToken(), encode(refreshToken), refreshToken.getExpiryDate().toEpochMilli());
+        return refreshToken;
+    }
+
+}
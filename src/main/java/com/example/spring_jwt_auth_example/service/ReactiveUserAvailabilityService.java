@@ -0,0 +1,72 @@
+package com.example.spring_jwt_auth_example.service;
+
+import com.example.spring_jwt_auth_example.repository.ReactiveUserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Реактивный аналог UserAvailabilityService, фильтр так же перестраивается в собственном потоке
+@Service
+@Slf4j
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveUserAvailabilityService {
+
+    @Value("${app.availability.rebuildInterval}")
+    private Duration rebuildInterval;
+
+    private final ReactiveUserRepository userRepository;
+
+    private final UserAvailabilityFilter availabilityFilter;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("availability-rebuild").daemon(true).factory());
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.scheduleWithFixedDelay(this::rebuild, 0, rebuildInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public Mono<Boolean> isUsernameAvailable(String username) {
+        return availabilityFilter.mightBeTakenUsername(username)
+                ? userRepository.existsByUsername(username).map(exists -> !exists)
+                : Mono.just(true);
+    }
+
+    public Mono<Boolean> isEmailAvailable(String email) {
+        return availabilityFilter.mightBeTakenEmail(email)
+                ? userRepository.existsByEmail(email).map(exists -> !exists)
+                : Mono.just(true);
+    }
+
+    // Выполняется в собственном потоке, а не на event loop, поэтому ждать результата здесь можно
+    private void rebuild() {
+        try {
+            userRepository.count()
+                    .map(availabilityFilter::rebuild)
+                    .flatMap(rebuild -> userRepository.findAllIdentifiers()
+                            .doOnNext(user -> rebuild.add(user.getUsername(), user.getEmail()))
+                            .then(Mono.fromRunnable(rebuild::complete)))
+                    .block();
+        } catch (Exception e) {
+            log.error("Cannot rebuild user availability filter: {}", e.getMessage());
+        }
+    }
+
+}
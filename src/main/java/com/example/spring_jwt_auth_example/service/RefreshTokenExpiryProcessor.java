@@ -0,0 +1,246 @@
+package com.example.spring_jwt_auth_example.service;
+
+import com.example.spring_jwt_auth_example.repository.RefreshTokenRepository;
+import com.example.spring_jwt_auth_example.util.RedisSlots;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Обработка истёкших Refresh Token вместо уведомлений keyspace, которые получал каждый узел.
+Сами записи refresh_token:<token> Redis удаляет по TTL; здесь из множеств user_refresh_tokens:<userId>
+убираются ссылки на уже истёкшие токены (иначе множество активного пользователя растёт до истечения самого нового токена).
+Очередь истечения разбита на EXPIRY_SHARDS шардов. Шард обрабатывает только узел, владеющий его арендой
+(refresh_token_expiry_lease:<shard>), так что каждое истечение обрабатывается одним узлом, а шарды делятся между узлами.
+Аренда продлевается на каждом проходе; если владелец упал, шард через leaseTime подхватит другой узел.
+Очередь и ключи пользователей лежат в разных слотах Redis Cluster, поэтому чистка множеств идёт отдельным скриптом
+по одному вызову на слот (без кластера - один вызов на пачку).
+*/
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class RefreshTokenExpiryProcessor {
+
+    private static final String LEASE_KEY_PREFIX = "refresh_token_expiry_lease:";
+
+    // KEYS[1] - ключ аренды, ARGV[1] - id узла, ARGV[2] - срок аренды (мс)
+    private static final RedisScript<Long> LEASE_SCRIPT = RedisScript.of("""
+            local owner = redis.call('GET', KEYS[1])
+            if not owner then
+                redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+                return 1
+            end
+            if owner == ARGV[1] then
+                redis.call('PEXPIRE', KEYS[1], ARGV[2])
+                return 1
+            end
+            return 0
+            """, Long.class);
+
+    /*
+    KEYS[2i-1] - ключ токена, KEYS[2i] - множество его владельца, ARGV[i] - сам токен
+    Токен, который в Redis ещё жив (часы узла спешат), остаётся в очереди до следующего прохода.
+    Результат: {удалено устаревших ссылок из множеств, номера (с 1) истёкших токенов...}.
+    */
+    private static final RedisScript<List> CLEANUP_SCRIPT = RedisScript.of("""
+            local result = {0}
+            for i = 1, #ARGV do
+                if redis.call('EXISTS', KEYS[2 * i - 1]) == 0 then
+                    result[1] = result[1] + redis.call('SREM', KEYS[2 * i], ARGV[i])
+                    result[#result + 1] = i
+                end
+            end
+            return result
+            """, List.class);
+
+    @Value("${app.refreshTokens.expiry.interval}")
+    private Duration interval;
+
+    @Value("${app.refreshTokens.expiry.leaseTime}")
+    private Duration leaseTime;
+
+    @Value("${app.refreshTokens.expiry.batchSize}")
+    private int batchSize;
+
+    @Value("${app.refreshTokens.expiry.maxBatchesPerRun}")
+    private int maxBatchesPerRun;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisProperties redisProperties;
+
+    private final TaskScheduler taskScheduler;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final LongAdder expired = new LongAdder();
+
+    private final LongAdder staleIndexEntries = new LongAdder();
+
+    private final LongAdder batches = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private volatile int ownedShards;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        taskScheduler.scheduleWithFixedDelay(this::processExpired, Instant.now().plus(interval), interval);
+    }
+
+    // Освобождаем аренды, чтобы шарды сразу подхватили другие узлы
+    @PreDestroy
+    public void releaseLeases() {
+        try {
+            for (int shard = 0; shard < RefreshTokenRepository.EXPIRY_SHARDS; shard++) {
+                String leaseKey = LEASE_KEY_PREFIX + shard;
+                if (nodeId.equals(redisTemplate.opsForValue().get(leaseKey))) {
+                    redisTemplate.delete(leaseKey);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Cannot release refresh token expiry leases: {}", e.getMessage());
+        }
+    }
+
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    public long getStaleIndexEntryCount() {
+        return staleIndexEntries.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public int getOwnedShardCount() {
+        return ownedShards;
+    }
+
+    private void processExpired() {
+        boolean cluster = RedisSlots.isCluster(redisProperties);
+        int owned = 0;
+
+        for (int shard = 0; shard < RefreshTokenRepository.EXPIRY_SHARDS; shard++) {
+            try {
+                if (acquireLease(shard)) {
+                    owned++;
+                    processShard(shard, cluster);
+                }
+            } catch (Exception e) {
+                failures.increment();
+                log.error("Cannot process expired refresh tokens of shard {}: {}", shard, e.getMessage());
+            }
+        }
+
+        ownedShards = owned;
+    }
+
+    private boolean acquireLease(int shard) {
+        Long acquired = redisTemplate.execute(LEASE_SCRIPT, List.of(LEASE_KEY_PREFIX + shard),
+                nodeId, Long.toString(leaseTime.toMillis()));
+        return Long.valueOf(1L).equals(acquired);
+    }
+
+    /*
+    Пачки по batchSize, пока очередь шарда не опустеет или не исчерпан лимит на проход.
+    Пачка: наступившие элементы очереди, чистка множеств их владельцев, снятие обработанных элементов из очереди.
+    */
+    private void processShard(int shard, boolean cluster) {
+        String expiryKey = RefreshTokenRepository.expiryKey(shard);
+
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            Set<String> due = redisTemplate.opsForZSet()
+                    .rangeByScore(expiryKey, Double.NEGATIVE_INFINITY, System.currentTimeMillis(), 0, batchSize);
+            if (due == null || due.isEmpty()) {
+                return;
+            }
+
+            List<String> processed = new ArrayList<>(due.size());
+            List<DueToken> tokens = new ArrayList<>(due.size());
+            for (String member : due) {
+                DueToken token = DueToken.parse(member);
+                if (token == null) {
+                    processed.add(member); // нечитаемый элемент просто снимаем
+                } else {
+                    tokens.add(token);
+                }
+            }
+
+            for (List<DueToken> slotTokens : RedisSlots.groupBySlot(tokens, DueToken::userTokensKey, cluster)) {
+                processed.addAll(cleanUp(slotTokens));
+            }
+
+            if (!processed.isEmpty()) {
+                redisTemplate.opsForZSet().remove(expiryKey, processed.toArray());
+            }
+            batches.increment();
+            expired.add(processed.size());
+
+            if (processed.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    // Возвращает элементы очереди истёкших токенов
+    private List<String> cleanUp(List<DueToken> tokens) {
+        List<String> keys = new ArrayList<>(tokens.size() * 2);
+        for (DueToken token : tokens) {
+            keys.add(RefreshTokenRepository.tokenKey(token.token));
+            keys.add(token.userTokensKey());
+        }
+
+        List<?> result = redisTemplate.execute(CLEANUP_SCRIPT, keys, tokens.stream().map(DueToken::token).toArray());
+        staleIndexEntries.add(((Number) result.get(0)).longValue());
+
+        List<String> expiredMembers = new ArrayList<>(result.size() - 1);
+        for (int i = 1; i < result.size(); i++) {
+            expiredMembers.add(tokens.get(((Number) result.get(i)).intValue() - 1).member);
+        }
+        return expiredMembers;
+    }
+
+    // Элемент очереди "userId|token"
+    private record DueToken(String member, Long userId, String token) {
+
+        private static DueToken parse(String member) {
+            int separator = member.indexOf('|');
+            if (separator <= 0 || separator == member.length() - 1) {
+                return null;
+            }
+            try {
+                return new DueToken(member, Long.valueOf(member.substring(0, separator)), member.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private String userTokensKey() {
+            return RefreshTokenRepository.userTokensKey(userId);
+        }
+    }
+
+}
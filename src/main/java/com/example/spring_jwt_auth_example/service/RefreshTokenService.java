@@ -2,36 +2,55 @@ package com.example.spring_jwt_auth_example.service;
 
 import com.example.spring_jwt_auth_example.entity.RefreshToken;
 import com.example.spring_jwt_auth_example.exception.RefreshTokenException;
+import com.example.spring_jwt_auth_example.repository.ReadReplicaRoutingDataSource;
 import com.example.spring_jwt_auth_example.repository.RefreshTokenRepository;
+import com.example.spring_jwt_auth_example.repository.UserRepository;
+import com.example.spring_jwt_auth_example.security.AppUserDetails;
+import com.example.spring_jwt_auth_example.security.AuthRateLimiter;
+import com.example.spring_jwt_auth_example.security.SecurityVersionStore;
 import lombok.*;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Optional;
+import java.util.List;
 import java.util.UUID;
 
 @Service
+@Profile("!reactive")
 @RequiredArgsConstructor
+@Slf4j
 public class RefreshTokenService { // отвечает за работу с Refresh Token
 
     @Value("${app.jwt.refreshTokenExpiration}")
     private Duration refreshTokenExpiration;
 
+    @Value("${app.refreshTokens.ownerMaxAge}")
+    private Duration ownerMaxAge;
+
     private final RefreshTokenRepository refreshTokenRepository;
 
-    // Поиск токена
-    public Optional<RefreshToken> findByRefreshToken(String token) {
-        return refreshTokenRepository.findByToken(token);
-    }
+    private final UserRepository userRepository;
+
+    private final SecurityVersionStore securityVersionStore;
+
+    private final AuthRateLimiter rateLimiter;
 
-    // Создание токена
-    public RefreshToken createRefreshToken(Long userId) {
+    // Создание токена при логине - начало нового семейства
+    public RefreshToken createRefreshToken(AppUserDetails userDetails) {
         var refreshToken = RefreshToken.builder()
-                .userId(userId)
+                .userId(userDetails.getId())
                 .expiryDate(Instant.now().plusMillis(refreshTokenExpiration.toMillis()))
-                .token(UUID.randomUUID().toString())
+                .token(RefreshTokenRepository.newToken(userDetails.getId()))
+                .familyId(UUID.randomUUID().toString())
+                .username(userDetails.getUsername())
+                .email(userDetails.getEmail())
+                .roles(userDetails.getRoleNames())
+                .securityVersion(securityVersionStore.isEnabled() ? securityVersionStore.currentVersion(userDetails.getId()) : null)
+                .ownerLoadedAt(Instant.now())
                 .build();
 
         refreshToken = refreshTokenRepository.save(refreshToken);
@@ -39,19 +58,70 @@ public class RefreshTokenService { // отвечает за работу с Refr
         return refreshToken;
     }
 
-    // Проверка токена на действительность
-    public RefreshToken checkRefreshToken(RefreshToken token) {
-        if (token.getExpiryDate().compareTo(Instant.now()) < 0) {
-            refreshTokenRepository.delete(token);
-            throw new RefreshTokenException(token.getToken(), "Refresh token was expired. Repeat signin action!");
-        }
+    /*
+    Обмен токена на новый: проверка, погашение старого и выпуск нового - одна атомарная операция в Redis.
+    Два одновременных refresh с одним токеном не получат два новых: второй увидит погашенный токен.
+    Повторное предъявление погашенного токена отзывает всё семейство.
+    */
+    public RefreshToken rotateRefreshToken(String token) {
+        RefreshTokenRepository.RotationResult result = refreshTokenRepository.rotate(token, UUID.randomUUID().toString(),
+                Instant.now().plusMillis(refreshTokenExpiration.toMillis()), rotated -> {
+                    rateLimiter.checkRefreshOwner(rotated.getUserId()); // запись токена нашлась - владелец подтверждён
+                    return withCurrentOwner(rotated);
+                });
 
-        return token;
+        return switch (result.getStatus()) {
+            case OK -> result.getRefreshToken();
+            case NOT_FOUND -> throw new RefreshTokenException(token, "Refresh token not found");
+            case EXPIRED -> throw new RefreshTokenException(token, "Refresh token was expired. Repeat signin action!");
+            case REUSED -> {
+                log.warn("Reuse of an already rotated refresh token detected, token family revoked");
+                throw new RefreshTokenException(token, "Refresh token was already used. Repeat signin action!");
+            }
+        };
     }
 
-    // Удаление токена по User Id
+    /*
+    Удаление токенов по User Id. Множество, которое менялось на каждой попытке (пользователь всё это время делал refresh),
+    остаётся: logout из-за этого не падает, токены такой сессии истекут в свой срок.
+    */
     public void deleteByUserId(Long userId) {
-        refreshTokenRepository.deleteByUserId(userId);
+        List<String> changing = refreshTokenRepository.deleteByUserId(userId);
+        if (!changing.isEmpty()) {
+            log.warn("Refresh tokens of user {} kept changing and were not deleted: {}", userId, changing);
+        }
+    }
+
+    /*
+    Данные владельца (username, email, роли) переходят из записи в запись всего семейства, поэтому верны,
+    только пока не изменилась версия безопасности, при которой они записаны. Изменилась - новый токен получает их
+    из основной БД (реплика могла ещё не получить изменение): иначе сессия, которая продолжает делать refresh,
+    так и носила бы старые роли в Access Token с уже новой версией. Записи старого формата без данных владельца - так же.
+    Без проверки версий (app.jwt.securityVersionCheck) изменение не видно, поэтому данные старше ownerMaxAge
+    тоже перечитываются: отозванная роль живёт в сессии не дольше этого.
+    */
+    private RefreshToken withCurrentOwner(RefreshToken rotated) {
+        Long version = securityVersionStore.isEnabled() ? securityVersionStore.currentVersion(rotated.getUserId()) : null;
+        if (rotated.getUsername() != null && isOwnerFresh(rotated)
+                && (version == null || version.equals(rotated.getSecurityVersion()))) {
+            return rotated;
+        }
+
+        AppUserDetails owner = ReadReplicaRoutingDataSource.onPrimary(() -> userRepository.findById(rotated.getUserId()))
+                .map(AppUserDetails::new)
+                .orElseThrow(() -> new RefreshTokenException("Exception trying to get token for userId: " + rotated.getUserId()));
+
+        return rotated.toBuilder()
+                .username(owner.getUsername())
+                .email(owner.getEmail())
+                .roles(owner.getRoleNames())
+                .securityVersion(version)
+                .ownerLoadedAt(Instant.now())
+                .build();
+    }
+
+    private boolean isOwnerFresh(RefreshToken rotated) {
+        return rotated.getOwnerLoadedAt() != null && rotated.getOwnerLoadedAt().plus(ownerMaxAge).isAfter(Instant.now());
     }
 
 }
@@ -0,0 +1,197 @@
+package com.example.spring_jwt_auth_example.service;
+
+import com.example.spring_jwt_auth_example.repository.RefreshTokenRepository;
+import com.example.spring_jwt_auth_example.security.SecurityVersionStore;
+import com.example.spring_jwt_auth_example.util.RedisSlots;
+import com.example.spring_jwt_auth_example.web.model.RevocationJobResponse;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+Массовый отзыв сессий (все Refresh Token пользователей) - для реагирования на инциденты и принудительной смены паролей.
+Задание выполняется в фоне пачками по batchSize пользователей: на пачку одно чтение множеств и один DELETE_BY_USER_SCRIPT
+со всеми их ключами (в Redis Cluster - по слоту), поэтому без кластера тысячи пользователей обрабатываются за несколько запросов к Redis.
+Пользователь, который как раз делает refresh, не мешает пачке: скрипт удаляет неизменившиеся множества, а повторяются
+только изменившиеся. Кто не удалился и за SCRIPT_ATTEMPTS попыток, обрабатывается ещё раз в конце задания;
+оставшиеся после этого попадают в failedUsers, но задание не прерывают.
+Дополнительно увеличивается версия безопасности пользователей, чтобы при включённой проверке перестали приниматься и Access Token:
+на остальных узлах - не сразу, а когда истечёт их кэш версий (SecurityVersionStore.getPropagationDelay), без проверки версий -
+только по истечении срока токена. Эта задержка возвращается в ответе (accessTokenPropagationDelay).
+Задания выполняются по одному на узле, принявшем задание. Прогресс хранится в Redis (session_revocation_job:<id>),
+поэтому статус можно запросить через любой узел. Ключ живёт jobRetention после последнего обновления.
+Если узел упал посреди задания, оно так и останется RUNNING до истечения ключа.
+*/
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SessionRevocationService {
+
+    private static final String JOB_KEY_PREFIX = "session_revocation_job:";
+
+    // Поля хэша задания
+    private static final String STATUS = "status";
+    private static final String TOTAL_USERS = "totalUsers";
+    private static final String PROCESSED_USERS = "processedUsers";
+    private static final String REVOKED_SESSIONS = "revokedSessions";
+    private static final String FAILED_USERS = "failedUsers";
+    private static final String STARTED_AT = "startedAt";
+    private static final String FINISHED_AT = "finishedAt";
+    private static final String ERROR = "error";
+
+    private static final String RUNNING = "RUNNING";
+    private static final String COMPLETED = "COMPLETED";
+    private static final String FAILED = "FAILED";
+
+    @Value("${app.revocation.batchSize}")
+    private int batchSize;
+
+    @Value("${app.revocation.jobRetention}")
+    private Duration jobRetention;
+
+    @Value("${app.jwt.tokenExpiration}")
+    private Duration accessTokenExpiration;
+
+    private final RefreshTokenRepository refreshTokenRepository;
+
+    private final RedisProperties redisProperties;
+
+    private final SecurityVersionStore securityVersionStore;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("session-revocation").daemon(true).factory());
+
+    public RevocationJobResponse submit(List<Long> userIds) {
+        List<Long> distinctUserIds = userIds == null ? List.of() : userIds.stream().distinct().toList();
+        String jobId = UUID.randomUUID().toString();
+
+        update(jobId, Map.of(
+                STATUS, RUNNING,
+                TOTAL_USERS, String.valueOf(distinctUserIds.size()),
+                PROCESSED_USERS, "0",
+                REVOKED_SESSIONS, "0",
+                FAILED_USERS, "0",
+                STARTED_AT, Instant.now().toString()));
+
+        executor.execute(() -> run(jobId, distinctUserIds));
+
+        return status(jobId).orElseThrow();
+    }
+
+    public Optional<RevocationJobResponse> status(String jobId) {
+        Map<String, String> fields = redisTemplate.<String, String>opsForHash().entries(jobKey(jobId));
+        if (fields.isEmpty()) {
+            return Optional.empty();
+        }
+
+        return Optional.of(RevocationJobResponse.builder()
+                .jobId(jobId)
+                .status(fields.get(STATUS))
+                .totalUsers(Integer.parseInt(fields.get(TOTAL_USERS)))
+                .processedUsers(Integer.parseInt(fields.get(PROCESSED_USERS)))
+                .revokedSessions(Long.parseLong(fields.get(REVOKED_SESSIONS)))
+                .failedUsers(Integer.parseInt(fields.getOrDefault(FAILED_USERS, "0")))
+                .startedAt(Instant.parse(fields.get(STARTED_AT)))
+                .finishedAt(fields.containsKey(FINISHED_AT) ? Instant.parse(fields.get(FINISHED_AT)) : null)
+                .error(fields.get(ERROR))
+                .accessTokenPropagationDelay(securityVersionStore.isEnabled()
+                        ? securityVersionStore.getPropagationDelay()
+                        : accessTokenExpiration)
+                .build());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(String jobId, List<Long> userIds) {
+        int processedUsers = 0;
+        long revokedSessions = 0;
+        try {
+            Set<Long> busyUsers = new LinkedHashSet<>();
+            for (int from = 0; from < userIds.size() && !Thread.currentThread().isInterrupted(); from += batchSize) {
+                List<Long> batch = userIds.subList(from, Math.min(from + batchSize, userIds.size()));
+
+                revokedSessions += revokeBatch(batch, busyUsers);
+                if (securityVersionStore.isEnabled()) {
+                    securityVersionStore.incrementAll(batch);
+                }
+                processedUsers += batch.size();
+
+                update(jobId, Map.of(
+                        PROCESSED_USERS, String.valueOf(processedUsers),
+                        REVOKED_SESSIONS, String.valueOf(revokedSessions)));
+            }
+
+            // Второй заход по тем, кто всё время делал refresh: к концу задания он, скорее всего, закончился
+            List<Long> retryUsers = new ArrayList<>(busyUsers);
+            Set<Long> failedUsers = new LinkedHashSet<>();
+            for (int from = 0; from < retryUsers.size() && !Thread.currentThread().isInterrupted(); from += batchSize) {
+                revokedSessions += revokeBatch(retryUsers.subList(from, Math.min(from + batchSize, retryUsers.size())), failedUsers);
+            }
+            if (!failedUsers.isEmpty()) {
+                log.warn("Session revocation job {}: refresh tokens of users {} kept changing and were not deleted", jobId, failedUsers);
+            }
+
+            update(jobId, Map.of(STATUS, COMPLETED, FINISHED_AT, Instant.now().toString(),
+                    REVOKED_SESSIONS, String.valueOf(revokedSessions),
+                    FAILED_USERS, String.valueOf(failedUsers.size())));
+            log.info("Session revocation job {} completed: {} users, {} sessions", jobId, processedUsers, revokedSessions);
+        } catch (Exception e) {
+            log.error("Session revocation job {} failed after {} users: {}", jobId, processedUsers, e.getMessage());
+            update(jobId, Map.of(STATUS, FAILED, FINISHED_AT, Instant.now().toString(),
+                    ERROR, String.valueOf(e.getMessage())));
+        }
+    }
+
+    // Каждое обновление продлевает ключ задания ещё на jobRetention
+    private void update(String jobId, Map<String, String> fields) {
+        String key = jobKey(jobId);
+        redisTemplate.opsForHash().putAll(key, fields);
+        redisTemplate.expire(key, jobRetention);
+    }
+
+    private static String jobKey(String jobId) {
+        return JOB_KEY_PREFIX + jobId;
+    }
+
+    // Возвращает число удалённых токенов; пользователей, чьи множества так и не удалось удалить, добавляет в busyUsers
+    private long revokeBatch(List<Long> batch, Set<Long> busyUsers) {
+        boolean cluster = RedisSlots.isCluster(redisProperties);
+
+        Map<String, Long> owners = new LinkedHashMap<>(batch.size() * 4);
+        batch.forEach(userId -> owners.put(RefreshTokenRepository.userTokensKey(userId), userId));
+        if (!cluster) { // в кластере множеств старого формата нет
+            batch.forEach(userId -> owners.put(RefreshTokenRepository.legacyUserTokensKey(userId), userId));
+        }
+
+        long revoked = 0;
+        for (List<String> slotKeys : RedisSlots.groupBySlot(owners.keySet(), key -> key, cluster)) {
+            RefreshTokenRepository.DeletionResult result = refreshTokenRepository.deleteTokenSets(slotKeys);
+            revoked += result.getDeletedTokens();
+            result.getChangingSets().forEach(key -> busyUsers.add(owners.get(key)));
+        }
+        return revoked;
+    }
+
+}
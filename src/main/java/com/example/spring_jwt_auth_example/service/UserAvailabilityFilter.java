@@ -0,0 +1,125 @@
+package com.example.spring_jwt_auth_example.service;
+
+import com.example.spring_jwt_auth_example.util.BloomFilter;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Фильтры Блума занятых username и email - для проверки доступности имени при заполнении формы регистрации.
+"Точно свободно" отвечаем из памяти, в БД идём только при вероятном совпадении.
+Фильтр периодически строится заново из БД (UserAvailabilityService или ReactiveUserAvailabilityService):
+так освобождаются имена удалённых пользователей и подхватываются email, зарегистрированные на других узлах.
+Username, зарегистрированные на других узлах, приходят сразу - через канал user_invalidation.
+Ошибка в сторону "свободно" безопасна: регистрацию всё равно проверяет уникальное ограничение в БД.
+Имена хранятся в нижнем регистре - занятость проверяется без учёта регистра, как и в БД.
+*/
+@Component
+public class UserAvailabilityFilter {
+
+    @Value("${app.availability.expectedUsers}")
+    private int expectedUsers;
+
+    @Value("${app.availability.falsePositiveRate}")
+    private double falsePositiveRate;
+
+    private final LongAdder answeredFromMemory = new LongAdder();
+
+    private final LongAdder databaseChecks = new LongAdder();
+
+    private volatile Filters filters;
+
+    private volatile Filters pending; // строящийся фильтр, чтобы не потерять регистрации во время перестроения
+
+    private volatile boolean loaded; // до первого построения ответить "точно свободно" нельзя
+
+    @PostConstruct
+    public void init() {
+        filters = new Filters(expectedUsers);
+    }
+
+    public void markTaken(String username, String email) {
+        filters.add(username, email);
+
+        Filters next = pending;
+        if (next != null) {
+            next.add(username, email);
+        }
+    }
+
+    public boolean mightBeTakenUsername(String username) {
+        return count(!loaded || filters.usernames.mightContain(lowerCase(username)));
+    }
+
+    public boolean mightBeTakenEmail(String email) {
+        return count(!loaded || filters.emails.mightContain(lowerCase(email)));
+    }
+
+    // Новый фильтр заполняется в стороне и подменяет текущий целиком в complete()
+    public Rebuild rebuild(long userCount) {
+        Filters next = new Filters((int) Math.min(Integer.MAX_VALUE, Math.max(expectedUsers, userCount * 2)));
+        pending = next;
+        return new Rebuild(next);
+    }
+
+    public long getAnsweredFromMemoryCount() {
+        return answeredFromMemory.sum();
+    }
+
+    public long getDatabaseCheckCount() {
+        return databaseChecks.sum();
+    }
+
+    private static String lowerCase(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private boolean count(boolean mightBeTaken) {
+        (mightBeTaken ? databaseChecks : answeredFromMemory).increment();
+        return mightBeTaken;
+    }
+
+    public final class Rebuild {
+
+        private final Filters next;
+
+        private Rebuild(Filters next) {
+            this.next = next;
+        }
+
+        public void add(String username, String email) {
+            next.add(username, email);
+        }
+
+        public void complete() {
+            filters = next;
+            pending = null;
+            loaded = true;
+        }
+    }
+
+    private final class Filters {
+
+        private final BloomFilter usernames;
+
+        private final BloomFilter emails;
+
+        private Filters(int capacity) {
+            this.usernames = new BloomFilter(capacity, falsePositiveRate);
+            this.emails = new BloomFilter(capacity, falsePositiveRate);
+        }
+
+        private void add(String username, String email) {
+            if (username != null) {
+                usernames.add(lowerCase(username));
+            }
+            if (email != null) {
+                emails.add(lowerCase(email));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.example.spring_jwt_auth_example.service;
+
+import com.example.spring_jwt_auth_example.repository.ReadYourWritesWindow;
+import com.example.spring_jwt_auth_example.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+Проверка доступности username и email для формы регистрации: сначала UserAvailabilityFilter, в БД - только при вероятном совпадении.
+Фильтр перестраивается полным проходом по app_users в собственном потоке: в общем TaskScheduler такой проход
+задерживал бы короткие периодические задачи (синхронизацию лимитов, ключи JWT, список отозванных токенов).
+*/
+@Service
+@Slf4j
+@Profile("!reactive")
+@RequiredArgsConstructor
+public class UserAvailabilityService {
+
+    private static final int PAGE_SIZE = 1000;
+
+    @Value("${app.availability.rebuildInterval}")
+    private Duration rebuildInterval;
+
+    private final UserRepository userRepository;
+
+    private final UserAvailabilityFilter availabilityFilter;
+
+    private final ReadYourWritesWindow readYourWrites;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("availability-rebuild").daemon(true).factory());
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.scheduleWithFixedDelay(this::rebuild, 0, rebuildInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public boolean isUsernameAvailable(String username) {
+        return !availabilityFilter.mightBeTakenUsername(username) || !readYourWrites.read(username, () -> userRepository.existsByUsername(username));
+    }
+
+    public boolean isEmailAvailable(String email) {
+        return !availabilityFilter.mightBeTakenEmail(email) || !readYourWrites.read(email, () -> userRepository.existsByEmail(email));
+    }
+
+    private void rebuild() {
+        try {
+            UserAvailabilityFilter.Rebuild rebuild = availabilityFilter.rebuild(userRepository.count());
+
+            long afterId = 0;
+            List<UserRepository.UserIdentifiers> page;
+            do {
+                page = userRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(PAGE_SIZE));
+                page.forEach(user -> rebuild.add(user.getUsername(), user.getEmail()));
+                if (!page.isEmpty()) {
+                    afterId = page.get(page.size() - 1).getId();
+                }
+            } while (page.size() == PAGE_SIZE);
+
+            rebuild.complete();
+        } catch (Exception e) {
+            log.error("Cannot rebuild user availability filter: {}", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.example.spring_jwt_auth_example.service;
+
+import com.example.spring_jwt_auth_example.web.model.UserImportReport;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+Контрольные точки импорта через AdminUserImportController, по id импорта: user_import:<importId>.
+Хранятся в Redis, поэтому оборванный импорт можно продолжить и посмотреть его состояние через любой узел.
+Ключ живёт checkpointRetention после последнего обновления.
+*/
+@Component
+@Profile("!reactive")
+@RequiredArgsConstructor
+public class UserImportCheckpoints {
+
+    private static final String KEY_PREFIX = "user_import:";
+
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    @Value("${app.import.checkpointRetention}")
+    private Duration retention;
+
+    private final StringRedisTemplate redisTemplate;
+
+    public void save(String importId, UserImportReport report) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("status", report.getStatus());
+        fields.put("checkpoint", String.valueOf(report.getCheckpoint()));
+        fields.put("imported", String.valueOf(report.getImported()));
+        fields.put("skipped", String.valueOf(report.getSkipped()));
+        fields.put("invalid", String.valueOf(report.getInvalid()));
+        fields.put("elapsedMillis", String.valueOf(report.getElapsedMillis()));
+        fields.put("usersPerSecond", String.valueOf(report.getUsersPerSecond()));
+
+        String key = KEY_PREFIX + importId;
+        redisTemplate.opsForHash().putAll(key, fields);
+        if (report.getError() == null) {
+            redisTemplate.opsForHash().delete(key, "error"); // ошибка прошлого запуска уже не актуальна
+        } else {
+            redisTemplate.opsForHash().put(key, "error", report.getError());
+        }
+        redisTemplate.expire(key, retention);
+    }
+
+    public Optional<UserImportReport> find(String importId) {
+        Map<String, String> fields = redisTemplate.<String, String>opsForHash().entries(KEY_PREFIX + importId);
+        if (fields.isEmpty()) {
+            return Optional.empty();
+        }
+
+        return Optional.of(UserImportReport.builder()
+                .importId(importId)
+                .status(fields.get("status"))
+                .checkpoint(Long.parseLong(fields.get("checkpoint")))
+                .imported(Long.parseLong(fields.get("imported")))
+                .skipped(Long.parseLong(fields.get("skipped")))
+                .invalid(Long.parseLong(fields.get("invalid")))
+                .elapsedMillis(Long.parseLong(fields.get("elapsedMillis")))
+                .usersPerSecond(Double.parseDouble(fields.get("usersPerSecond")))
+                .error(fields.get("error"))
+                .build());
+    }
+
+}
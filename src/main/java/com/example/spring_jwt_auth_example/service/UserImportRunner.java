@@ -0,0 +1,82 @@
+package com.example.spring_jwt_auth_example.service;
+
+import com.example.spring_jwt_auth_example.web.model.UserImportReport;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+Импорт пользователей из файлов при старте:
+
+    java -jar app.jar --import-users=/data/users.ndjson --import-users=/data/legacy.csv
+
+Формат определяется по расширению (.csv - CSV, иначе NDJSON).
+Рядом с файлом ведётся <файл>.checkpoint с номером последней сохранённой записи: повторный запуск продолжит с неё.
+*/
+@Component
+@Slf4j
+@Profile("!reactive")
+@RequiredArgsConstructor
+public class UserImportRunner implements ApplicationRunner {
+
+    private static final String OPTION = "import-users";
+
+    private static final long PROGRESS_LOG_INTERVAL_MILLIS = 10_000;
+
+    private final UserImportService userImportService;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+
+        for (String file : args.getOptionValues(OPTION)) {
+            importFile(Path.of(file));
+        }
+    }
+
+    private void importFile(Path file) throws IOException {
+        Path checkpointFile = file.resolveSibling(file.getFileName() + ".checkpoint");
+        long resumeFrom = Files.exists(checkpointFile) ? Long.parseLong(Files.readString(checkpointFile).trim()) : 0;
+        long[] lastLog = {System.currentTimeMillis()};
+
+        log.info("Importing users from {}, resuming after record {}", file, resumeFrom);
+
+        UserImportReport report;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            report = userImportService.importUsers(reader, UserImportService.Format.of(file.toString()), resumeFrom, progress -> {
+                writeCheckpoint(checkpointFile, progress.getCheckpoint());
+                if (System.currentTimeMillis() - lastLog[0] >= PROGRESS_LOG_INTERVAL_MILLIS) {
+                    lastLog[0] = System.currentTimeMillis();
+                    log.info("Users imported: {} ({} users/s), checkpoint {}",
+                            progress.getImported(), Math.round(progress.getUsersPerSecond()), progress.getCheckpoint());
+                }
+            });
+        }
+
+        writeCheckpoint(checkpointFile, report.getCheckpoint());
+        log.info("User import from {} {}: imported {}, skipped {}, invalid {}, {} users/s, checkpoint {}",
+                file, report.getError() == null ? "completed" : "stopped (" + report.getError() + ")",
+                report.getImported(), report.getSkipped(), report.getInvalid(),
+                Math.round(report.getUsersPerSecond()), report.getCheckpoint());
+    }
+
+    private static void writeCheckpoint(Path checkpointFile, long checkpoint) {
+        try {
+            Files.writeString(checkpointFile, Long.toString(checkpoint));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write import checkpoint " + checkpointFile, e);
+        }
+    }
+
+}
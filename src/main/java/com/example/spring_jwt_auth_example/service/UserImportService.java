@@ -0,0 +1,277 @@
+package com.example.spring_jwt_auth_example.service;
+
+import com.example.spring_jwt_auth_example.entity.RoleType;
+import com.example.spring_jwt_auth_example.entity.User;
+import com.example.spring_jwt_auth_example.repository.ReadReplicaRoutingDataSource;
+import com.example.spring_jwt_auth_example.repository.UserRepository;
+import com.example.spring_jwt_auth_example.security.BoundedPasswordEncoder;
+import com.example.spring_jwt_auth_example.web.model.ImportUserRecord;
+import com.example.spring_jwt_auth_example.web.model.UserImportReport;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/*
+Массовый импорт пользователей (перенос аккаунтов из другой системы) из NDJSON или CSV.
+Вход читается построчно и обрабатывается пачками по batchSize, поэтому память не зависит от размера файла:
+- пользователи с уже занятым username или email пропускаются (один запрос на пачку вместо проверки каждого);
+- пароли хэшируются параллельно на отдельном ForkJoinPool, готовые хэши BCrypt (passwordHash) принимаются как есть.
+  Очередь логинов (BoundedPasswordEncoder) импорт не занимает, а чтобы не отнимать у логинов процессор,
+  пул по умолчанию - половина процессоров (hashingParallelism);
+- пачка сохраняется в одной транзакции JDBC-пакетами (id из последовательности, см. User.id), после чего контекст JPA очищается.
+После каждой сохранённой пачки вызывается onCheckpoint с номером последней сохранённой записи:
+при обрыве импорт продолжается с этой записи (resumeFrom), уже сохранённые записи пропускаются без разбора.
+*/
+@Service
+@Slf4j
+@Profile("!reactive")
+@RequiredArgsConstructor
+public class UserImportService {
+
+    // Формат CSV: заголовок и столбцы без кавычек, роли через ";"
+    public static final String CSV_HEADER = "username,email,password,passwordHash,roles";
+
+    // Те же версии, что принимает BCryptPasswordEncoder: $2$, $2a$, $2b$, $2y$ ($2x$ он не проверит)
+    private static final Pattern BCRYPT_HASH = Pattern.compile("^\\$2[aby]?\\$\\d{2}\\$[./A-Za-z0-9]{53}$");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${app.import.batchSize}")
+    private int batchSize;
+
+    @Value("${app.import.hashingParallelism}")
+    private int hashingParallelism;
+
+    private final UserRepository userRepository;
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final UserAvailabilityFilter availabilityFilter;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final EntityManager entityManager;
+
+    private ForkJoinPool hashingPool;
+
+    @PostConstruct
+    public void init() {
+        hashingPool = new ForkJoinPool(hashingParallelism > 0 ? hashingParallelism
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashingPool.shutdownNow();
+    }
+
+    /*
+    Записи с номером не больше resumeFrom пропускаются. Нумерация - по непустым строкам данных, начиная с 1.
+    Ошибка чтения или сохранения останавливает импорт: в отчёте будет error и checkpoint, с которого его продолжить.
+    */
+    public UserImportReport importUsers(Reader input, Format format, long resumeFrom, Consumer<UserImportReport> onCheckpoint) {
+        Progress progress = new Progress(resumeFrom);
+        List<ImportUserRecord> batch = new ArrayList<>(batchSize);
+        long recordNumber = 0;
+
+        try (BufferedReader reader = new BufferedReader(input)) {
+            if (format == Format.CSV) {
+                reader.readLine(); // заголовок
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || ++recordNumber <= resumeFrom) {
+                    continue;
+                }
+
+                ImportUserRecord record = parse(line, format);
+                if (record == null) {
+                    progress.invalid++;
+                } else {
+                    batch.add(record);
+                }
+
+                if (batch.size() == batchSize) {
+                    save(batch, progress);
+                    progress.checkpoint = recordNumber;
+                    onCheckpoint.accept(progress.toReport());
+                }
+            }
+
+            save(batch, progress);
+            progress.checkpoint = Math.max(progress.checkpoint, recordNumber);
+        } catch (Exception e) {
+            progress.error = e.getMessage();
+            log.error("User import stopped after record {}: {}", progress.checkpoint, e.getMessage());
+        }
+
+        return progress.toReport();
+    }
+
+    private void save(List<ImportUserRecord> batch, Progress progress) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // С основной БД: реплика может ещё не получить предыдущую пачку
+        List<ImportUserRecord> candidates = ReadReplicaRoutingDataSource.onPrimary(() -> withoutTaken(batch));
+        progress.skipped += batch.size() - candidates.size();
+        batch.clear();
+
+        PasswordEncoder encoder = passwordEncoder instanceof BoundedPasswordEncoder bounded ? bounded.unbounded() : passwordEncoder;
+        List<User> users = hashingPool.submit(() -> candidates.parallelStream()
+                        .map(record -> toUser(record, encoder))
+                        .toList())
+                .join();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            userRepository.saveAll(users);
+            entityManager.flush();
+            entityManager.clear(); // сохранённые пользователи больше не нужны контексту JPA
+        });
+
+        users.forEach(user -> availabilityFilter.markTaken(user.getUsername(), user.getEmail()));
+        progress.imported += users.size();
+    }
+
+    /*
+    Убирает записи с username или email, занятыми в БД или более ранней записью той же пачки.
+    Сравнение без учёта регистра - как у уникальных индексов app_users.
+    */
+    private List<ImportUserRecord> withoutTaken(List<ImportUserRecord> batch) {
+        Set<String> takenUsernames = new HashSet<>(userRepository.findExistingUsernames(
+                batch.stream().map(record -> lowerCase(record.getUsername())).toList()));
+        Set<String> takenEmails = new HashSet<>(userRepository.findExistingEmails(
+                batch.stream().map(record -> lowerCase(record.getEmail())).toList()));
+
+        List<ImportUserRecord> candidates = new ArrayList<>(batch.size());
+        for (ImportUserRecord record : batch) {
+            String username = lowerCase(record.getUsername());
+            String email = lowerCase(record.getEmail());
+            if (!takenUsernames.contains(username) && !takenEmails.contains(email)) {
+                takenUsernames.add(username);
+                takenEmails.add(email);
+                candidates.add(record);
+            }
+        }
+        return candidates;
+    }
+
+    private static String lowerCase(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private static User toUser(ImportUserRecord record, PasswordEncoder encoder) {
+        return User.builder()
+                .username(record.getUsername())
+                .email(record.getEmail())
+                .password(record.getPasswordHash() != null ? record.getPasswordHash() : encoder.encode(record.getPassword()))
+                .roles(record.getRoles() == null ? new HashSet<>() : new HashSet<>(record.getRoles()))
+                .build();
+    }
+
+    // null - запись некорректна
+    private ImportUserRecord parse(String line, Format format) {
+        ImportUserRecord record;
+        try {
+            record = format == Format.CSV ? parseCsv(line) : objectMapper.readValue(line, ImportUserRecord.class);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            return null;
+        }
+
+        boolean hasPassword = record.getPasswordHash() != null
+                ? BCRYPT_HASH.matcher(record.getPasswordHash()).matches()
+                : record.getPassword() != null && !record.getPassword().isEmpty();
+
+        return isBlank(record.getUsername()) || isBlank(record.getEmail()) || !hasPassword ? null : record;
+    }
+
+    private static ImportUserRecord parseCsv(String line) {
+        String[] columns = line.split(",", -1);
+        if (columns.length != 5) {
+            throw new IllegalArgumentException("Expected 5 columns: " + CSV_HEADER);
+        }
+
+        return ImportUserRecord.builder()
+                .username(columns[0])
+                .email(columns[1])
+                .password(columns[2].isEmpty() ? null : columns[2])
+                .passwordHash(columns[3].isEmpty() ? null : columns[3])
+                .roles(columns[4].isEmpty() ? null : Arrays.stream(columns[4].split(";"))
+                        .map(RoleType::valueOf)
+                        .collect(Collectors.toSet()))
+                .build();
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    public enum Format {
+
+        NDJSON, CSV;
+
+        // По расширению файла или подтипу Content-Type
+        public static Format of(String name) {
+            return name != null && name.toLowerCase(Locale.ROOT).endsWith("csv") ? CSV : NDJSON;
+        }
+
+    }
+
+    private static final class Progress {
+
+        private final long startedAt = System.currentTimeMillis();
+
+        private long checkpoint;
+
+        private long imported;
+
+        private long skipped;
+
+        private long invalid;
+
+        private String error;
+
+        private Progress(long resumedFrom) {
+            this.checkpoint = resumedFrom;
+        }
+
+        private UserImportReport toReport() {
+            long elapsed = Math.max(1, System.currentTimeMillis() - startedAt);
+
+            return UserImportReport.builder()
+                    .checkpoint(checkpoint)
+                    .imported(imported)
+                    .skipped(skipped)
+                    .invalid(invalid)
+                    .elapsedMillis(elapsed)
+                    .usersPerSecond(imported * 1000.0 / elapsed)
+                    .error(error)
+                    .build();
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.example.spring_jwt_auth_example.util;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+Набор фильтров Блума, разбитых по окнам времени истечения элементов.
+Элемент со сроком expiresAt попадает в фильтр окна expiresAt / window и ищется только в нём.
+Когда окно целиком в прошлом, его фильтр удаляется (expire) - так фильтры не переполняются, а память не растёт.
+*/
+public class ExpiringBloomFilter {
+
+    private final long windowMillis;
+
+    private final int expectedInsertionsPerWindow;
+
+    private final double falsePositiveProbability;
+
+    private final ConcurrentMap<Long, BloomFilter> windows = new ConcurrentHashMap<>();
+
+    public ExpiringBloomFilter(Duration window, int expectedInsertionsPerWindow, double falsePositiveProbability) {
+        this.windowMillis = window.toMillis();
+        this.expectedInsertionsPerWindow = expectedInsertionsPerWindow;
+        this.falsePositiveProbability = falsePositiveProbability;
+    }
+
+    public void add(String value, long expiresAtMillis) {
+        windows.computeIfAbsent(expiresAtMillis / windowMillis,
+                        window -> new BloomFilter(expectedInsertionsPerWindow, falsePositiveProbability))
+                .add(value);
+    }
+
+    public boolean mightContain(String value, long expiresAtMillis) {
+        BloomFilter filter = windows.get(expiresAtMillis / windowMillis);
+        return filter != null && filter.mightContain(value);
+    }
+
+    // Удаляет фильтры окон, все элементы которых уже истекли
+    public void expire(long nowMillis) {
+        windows.keySet().removeIf(window -> (window + 1) * windowMillis <= nowMillis);
+    }
+
+    public int windowCount() {
+        return windows.size();
+    }
+
+}
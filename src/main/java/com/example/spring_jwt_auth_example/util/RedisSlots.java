@@ -0,0 +1,45 @@
+package com.example.spring_jwt_auth_example.util;
+
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/*
+Разбиение многоключевых операций по слотам Redis Cluster: скрипт или команда с несколькими ключами
+выполняется в кластере, только если все ключи в одном слоте. Без кластера вся пачка - одна группа, то есть один запрос.
+*/
+public final class RedisSlots {
+
+    private RedisSlots() {
+    }
+
+    // Кластер включается заданием spring.data.redis.cluster.nodes (см. RedisConfiguration)
+    public static boolean isCluster(RedisProperties redisProperties) {
+        return redisProperties.getCluster() != null
+                && redisProperties.getCluster().getNodes() != null
+                && !redisProperties.getCluster().getNodes().isEmpty();
+    }
+
+    // Группы элементов, ключи которых (key) лежат в одном слоте; порядок групп - по номеру слота
+    public static <T> Collection<List<T>> groupBySlot(Collection<T> items, Function<T, String> key, boolean cluster) {
+        if (items.isEmpty()) {
+            return List.of();
+        }
+        if (!cluster) {
+            return List.of(new ArrayList<>(items));
+        }
+
+        Map<Integer, List<T>> groups = new TreeMap<>();
+        for (T item : items) {
+            groups.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(key.apply(item)), slot -> new ArrayList<>()).add(item);
+        }
+        return groups.values();
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.example.spring_jwt_auth_example.web.controller;
+
+import com.example.spring_jwt_auth_example.exception.EntityNotFoundException;
+import com.example.spring_jwt_auth_example.service.SessionRevocationService;
+import com.example.spring_jwt_auth_example.web.model.RevocationJobResponse;
+import com.example.spring_jwt_auth_example.web.model.RevokeSessionsRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+
+/*
+Доступ только для ROLE_ADMIN задаётся правилом /api/v1/admin/** в цепочке безопасности (servlet и reactive),
+поэтому контроллер без изменений работает в обоих режимах.
+Отзыв выполняется в фоне: ответ 202 сразу, прогресс - по ссылке из заголовка Location.
+*/
+@RestController
+@RequestMapping("/api/v1/admin/sessions")
+@RequiredArgsConstructor
+public class AdminSessionController {
+
+    private final SessionRevocationService sessionRevocationService;
+
+    @PostMapping("/revocations")
+    public ResponseEntity<RevocationJobResponse> revokeSessions(@RequestBody RevokeSessionsRequest request) {
+        RevocationJobResponse job = sessionRevocationService.submit(request.getUserIds());
+
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/admin/sessions/revocations/" + job.getJobId()))
+                .body(job);
+    }
+
+    @GetMapping("/revocations/{jobId}")
+    public ResponseEntity<RevocationJobResponse> revocationStatus(@PathVariable String jobId) {
+        return ResponseEntity.ok(sessionRevocationService.status(jobId)
+                .orElseThrow(() -> new EntityNotFoundException("Revocation job not found: " + jobId)));
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.example.spring_jwt_auth_example.web.controller;
+
+import com.example.spring_jwt_auth_example.exception.EntityNotFoundException;
+import com.example.spring_jwt_auth_example.service.UserImportCheckpoints;
+import com.example.spring_jwt_auth_example.service.UserImportService;
+import com.example.spring_jwt_auth_example.web.model.UserImportReport;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/*
+Импорт пользователей потоком из тела запроса (application/x-ndjson или text/csv), см. UserImportService.
+Ответ приходит после обработки всего тела. Каждая пачка записывает контрольную точку в Redis под importId
+(передаётся параметром или создаётся и возвращается в ответе), состояние - GET /import/{importId} с любого узла.
+Если импорт прервался, повторите запрос с тем же файлом и тем же importId: он продолжится с сохранённой точки
+(явный resumeFrom её заменяет). Для очень больших файлов удобнее запуск из командной строки, см. UserImportRunner.
+*/
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/v1/admin/users")
+@RequiredArgsConstructor
+public class AdminUserImportController {
+
+    private final UserImportService userImportService;
+
+    private final UserImportCheckpoints checkpoints;
+
+    @PostMapping(value = "/import", consumes = {"application/x-ndjson", "text/csv"})
+    public ResponseEntity<UserImportReport> importUsers(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                                        @RequestParam(required = false) String importId,
+                                                        @RequestParam(required = false) Long resumeFrom,
+                                                        HttpServletRequest request) throws IOException {
+        String id = importId != null ? importId : UUID.randomUUID().toString();
+        long from = resumeFrom != null ? resumeFrom
+                : checkpoints.find(id).map(UserImportReport::getCheckpoint).orElse(0L);
+
+        UserImportReport report = userImportService.importUsers(
+                new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8),
+                UserImportService.Format.of(contentType.getSubtype()), from, checkpoint -> {
+                    checkpoint.setStatus(UserImportCheckpoints.RUNNING);
+                    checkpoints.save(id, checkpoint);
+                });
+
+        report.setImportId(id);
+        report.setStatus(report.getError() == null ? UserImportCheckpoints.COMPLETED : UserImportCheckpoints.FAILED);
+        checkpoints.save(id, report);
+
+        return ResponseEntity.status(report.getError() == null ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(report);
+    }
+
+    @GetMapping("/import/{importId}")
+    public ResponseEntity<UserImportReport> importStatus(@PathVariable String importId) {
+        return ResponseEntity.ok(checkpoints.find(importId)
+                .orElseThrow(() -> new EntityNotFoundException("User import not found: " + importId)));
+    }
+
+}
@@ -1,49 +1,59 @@
 package com.example.spring_jwt_auth_example.web.controller;
 
-import com.example.spring_jwt_auth_example.exception.AlreadyExistsException;
-import com.example.spring_jwt_auth_example.repository.UserRepository;
+import com.example.spring_jwt_auth_example.security.AuthRateLimiter;
 import com.example.spring_jwt_auth_example.security.SecurityService;
+import com.example.spring_jwt_auth_example.service.UserAvailabilityService;
 import com.example.spring_jwt_auth_example.web.model.*;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/v1/auth")
 @RequiredArgsConstructor
 public class AuthController {
 
-    private final UserRepository userRepository;
-
     private final SecurityService securityService;
 
+    private final UserAvailabilityService availabilityService;
+
+    private final AuthRateLimiter rateLimiter;
+
+    // Лимит проверяется до BCrypt: сверх него - сразу 429 (см. AuthRateLimiter)
     @PostMapping("/signin")
-    public ResponseEntity<AuthResponse> authUser(@RequestBody LoginRequest loginRequest) {
+    public ResponseEntity<AuthResponse> authUser(@RequestBody LoginRequest loginRequest, HttpServletRequest request) {
+        rateLimiter.checkSignin(request.getRemoteAddr(), loginRequest.getUsername());
+
         return ResponseEntity.ok(securityService.authenticateUser(loginRequest));
     }
 
+    // Занятость username и email проверяет уникальное ограничение в БД, см. SecurityService.register
     @PostMapping("/register")
     public ResponseEntity<SimpleResponse> registerUser(@RequestBody CreateUserRequest createUserRequest) {
-        if (userRepository.existsByUsername(createUserRequest.getUsername())) {
-            throw new AlreadyExistsException("Username already exists!");
-        }
-
-        if (userRepository.existsByEmail(createUserRequest.getEmail())) {
-            throw new AlreadyExistsException("Email already exists!");
-        }
-
         securityService.register(createUserRequest);
 
         return ResponseEntity.ok(new SimpleResponse("User created!"));
     }
 
+    // Проверка для формы регистрации, без гарантии: имя может занять кто-то другой до отправки формы
+    @GetMapping("/available")
+    public ResponseEntity<AvailabilityResponse> available(@RequestParam(required = false) String username,
+                                                          @RequestParam(required = false) String email) {
+        return ResponseEntity.ok(new AvailabilityResponse(
+                username == null ? null : availabilityService.isUsernameAvailable(username),
+                email == null ? null : availabilityService.isEmailAvailable(email)));
+    }
+
     @PostMapping("/refresh-token")
-    public ResponseEntity<RefreshTokenResponse> refreshToken(@RequestBody RefreshTokenRequest request) { // обновили токены, заходим с новыми
+    public ResponseEntity<RefreshTokenResponse> refreshToken(@RequestBody RefreshTokenRequest request, // обновили токены, заходим с новыми
+                                                             HttpServletRequest httpRequest) {
+        rateLimiter.checkRefresh(httpRequest.getRemoteAddr());
+
         return ResponseEntity.ok(securityService.refreshToken(request));
     }
 
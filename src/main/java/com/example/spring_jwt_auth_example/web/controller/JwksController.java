@@ -0,0 +1,29 @@
+package com.example.spring_jwt_auth_example.web.controller;
+
+import com.example.spring_jwt_auth_example.security.jwt.JwtKeyRing;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequiredArgsConstructor
+public class JwksController {
+
+    private final JwtKeyRing jwtKeyRing;
+
+    /*
+    Открытые ключи для локальной проверки наших Access Token другими сервисами.
+    Новый ключ публикуется заранее с учётом этого кэша (JwtKeyRing.publicationLead), поэтому ответ можно кэшировать на jwksMaxAge.
+    */
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> jwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(jwtKeyRing.getJwksMaxAge()).cachePublic())
+                .body(jwtKeyRing.jwkSet());
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.example.spring_jwt_auth_example.web.controller;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/*
+Реактивная проверка @PreAuthorize работает только для методов, возвращающих Publisher, поэтому ответы обёрнуты в Mono.
+*/
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/v1/app")
+public class ReactiveAppController {
+
+    @GetMapping("/all")
+    public Mono<String> allAccess() {
+        return Mono.just("Public response data");
+    }
+
+    @GetMapping("/admin")
+    @PreAuthorize("hasRole('ADMIN')")
+    public Mono<String> adminAccess() {
+        return Mono.just("Admin response data");
+    }
+
+    @GetMapping("/manager")
+    @PreAuthorize("hasRole('MANAGER')")
+    public Mono<String> moderatorAccess() {
+        return Mono.just("Manager response data");
+    }
+
+    @GetMapping("/user")
+    @PreAuthorize("hasRole('USER') or hasRole('MANAGER') or hasRole('ADMIN')")
+    public Mono<String> userAccess() {
+        return Mono.just("User response data");
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.example.spring_jwt_auth_example.web.controller;
+
+import com.example.spring_jwt_auth_example.security.AuthRateLimiter;
+import com.example.spring_jwt_auth_example.security.ReactiveSecurityService;
+import com.example.spring_jwt_auth_example.service.ReactiveUserAvailabilityService;
+import com.example.spring_jwt_auth_example.web.model.*;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.Optional;
+
+/*
+WebFlux-версия AuthController: те же пути и модели запросов/ответов.
+*/
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/v1/auth")
+@RequiredArgsConstructor
+public class ReactiveAuthController {
+
+    private final ReactiveSecurityService securityService;
+
+    private final ReactiveUserAvailabilityService availabilityService;
+
+    private final AuthRateLimiter rateLimiter; // решает по локальным корзинам, event loop не блокирует
+
+    @PostMapping("/signin")
+    public Mono<ResponseEntity<AuthResponse>> authUser(@RequestBody LoginRequest loginRequest, ServerHttpRequest request) {
+        rateLimiter.checkSignin(clientIp(request), loginRequest.getUsername());
+
+        return securityService.authenticateUser(loginRequest)
+                .map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/register")
+    public Mono<ResponseEntity<SimpleResponse>> registerUser(@RequestBody CreateUserRequest createUserRequest) {
+        return securityService.register(createUserRequest)
+                .thenReturn(ResponseEntity.ok(new SimpleResponse("User created!")));
+    }
+
+    @GetMapping("/available")
+    public Mono<ResponseEntity<AvailabilityResponse>> available(@RequestParam(required = false) String username,
+                                                                @RequestParam(required = false) String email) {
+        Mono<Boolean> usernameAvailable = username == null ? Mono.empty() : availabilityService.isUsernameAvailable(username);
+        Mono<Boolean> emailAvailable = email == null ? Mono.empty() : availabilityService.isEmailAvailable(email);
+
+        return usernameAvailable.map(Optional::of).defaultIfEmpty(Optional.empty())
+                .zipWith(emailAvailable.map(Optional::of).defaultIfEmpty(Optional.empty()))
+                .map(result -> ResponseEntity.ok(new AvailabilityResponse(result.getT1().orElse(null), result.getT2().orElse(null))));
+    }
+
+    @PostMapping("/refresh-token")
+    public Mono<ResponseEntity<RefreshTokenResponse>> refreshToken(@RequestBody RefreshTokenRequest request,
+                                                                   ServerHttpRequest httpRequest) {
+        rateLimiter.checkRefresh(clientIp(httpRequest));
+
+        return securityService.refreshToken(request)
+                .map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/logout")
+    public Mono<ResponseEntity<SimpleResponse>> logoutUser(@AuthenticationPrincipal UserDetails userDetails) {
+        return securityService.logout()
+                .thenReturn(ResponseEntity.ok(new SimpleResponse("User logout. Username is: " + userDetails.getUsername())));
+    }
+
+    private static String clientIp(ServerHttpRequest request) {
+        InetSocketAddress address = request.getRemoteAddress();
+        return address == null || address.getAddress() == null ? null : address.getAddress().getHostAddress();
+    }
+
+}
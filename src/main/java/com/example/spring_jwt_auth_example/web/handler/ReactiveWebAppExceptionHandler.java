@@ -0,0 +1,69 @@
+package com.example.spring_jwt_auth_example.web.handler;
+
+import com.example.spring_jwt_auth_example.exception.AlreadyExistsException;
+import com.example.spring_jwt_auth_example.exception.EntityNotFoundException;
+import com.example.spring_jwt_auth_example.exception.PasswordHashingRejectedException;
+import com.example.spring_jwt_auth_example.exception.RateLimitExceededException;
+import com.example.spring_jwt_auth_example.exception.RefreshTokenException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.server.ServerWebExchange;
+
+/*
+WebFlux-версия WebAppExceptionHandler. Ошибки входа (BadCredentialsException) здесь приходят из контроллера,
+поэтому 401 отдаём сами.
+*/
+@RestControllerAdvice
+@Profile("reactive")
+public class ReactiveWebAppExceptionHandler {
+
+    @ExceptionHandler(value = RefreshTokenException.class)
+    public ResponseEntity<ErrorResponseBody> refreshTokenExceptionHandler(RefreshTokenException ex, ServerWebExchange exchange) {
+        return builderResponse(HttpStatus.FORBIDDEN, ex, exchange);
+    }
+
+    @ExceptionHandler(value = AlreadyExistsException.class)
+    public ResponseEntity<ErrorResponseBody> alreadyExistsHandler(AlreadyExistsException ex, ServerWebExchange exchange) {
+        return builderResponse(HttpStatus.BAD_REQUEST, ex, exchange);
+    }
+
+    @ExceptionHandler(value = EntityNotFoundException.class)
+    public ResponseEntity<ErrorResponseBody> notFoundHandler(EntityNotFoundException ex, ServerWebExchange exchange) {
+        return builderResponse(HttpStatus.BAD_REQUEST, ex, exchange);
+    }
+
+    @ExceptionHandler(value = AuthenticationException.class)
+    public ResponseEntity<ErrorResponseBody> authenticationHandler(AuthenticationException ex, ServerWebExchange exchange) {
+        return builderResponse(HttpStatus.UNAUTHORIZED, ex, exchange);
+    }
+
+    @ExceptionHandler(value = PasswordHashingRejectedException.class)
+    public ResponseEntity<ErrorResponseBody> passwordHashingRejectedHandler(PasswordHashingRejectedException ex, ServerWebExchange exchange) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(builderResponse(HttpStatus.SERVICE_UNAVAILABLE, ex, exchange).getBody());
+    }
+
+    // Лимит запросов исчерпан - 429 с Retry-After (целые секунды, не меньше 1)
+    @ExceptionHandler(value = RateLimitExceededException.class)
+    public ResponseEntity<ErrorResponseBody> rateLimitExceededHandler(RateLimitExceededException ex, ServerWebExchange exchange) {
+        long retryAfterSeconds = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .body(builderResponse(HttpStatus.TOO_MANY_REQUESTS, ex, exchange).getBody());
+    }
+
+    private ResponseEntity<ErrorResponseBody> builderResponse(HttpStatus httpStatus, Exception ex, ServerWebExchange exchange) {
+        return ResponseEntity.status(httpStatus)
+                .body(ErrorResponseBody.builder()
+                        .message(ex.getMessage())
+                        .description("uri=" + exchange.getRequest().getPath().value()) // как WebRequest.getDescription(false)
+                        .build());
+    }
+}
@@ -2,14 +2,20 @@ package com.example.spring_jwt_auth_example.web.handler;
 
 import com.example.spring_jwt_auth_example.exception.AlreadyExistsException;
 import com.example.spring_jwt_auth_example.exception.EntityNotFoundException;
+import com.example.spring_jwt_auth_example.exception.PasswordHashingRejectedException;
+import com.example.spring_jwt_auth_example.exception.RateLimitExceededException;
 import com.example.spring_jwt_auth_example.exception.RefreshTokenException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.context.request.WebRequest;
 
 @RestControllerAdvice
+@Profile("!reactive")
 public class WebAppExceptionHandler {
 
     @ExceptionHandler(value = RefreshTokenException.class)
@@ -27,6 +33,38 @@ public class WebAppExceptionHandler {
         return builderResponse(HttpStatus.BAD_REQUEST, ex, webRequest);
     }
 
+    /*
+    Пул хэширования паролей переполнен - отвечаем 503 с Retry-After, клиент может повторить попытку позже.
+    */
+    @ExceptionHandler(value = PasswordHashingRejectedException.class)
+    public ResponseEntity<ErrorResponseBody> passwordHashingRejectedHandler(PasswordHashingRejectedException ex, WebRequest webRequest) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(builderResponse(HttpStatus.SERVICE_UNAVAILABLE, ex, webRequest).getBody());
+    }
+
+    /*
+    DaoAuthenticationProvider оборачивает исключения при поиске пользователя (в т.ч. отказ пула хэширования)
+    в InternalAuthenticationServiceException.
+    */
+    @ExceptionHandler(value = InternalAuthenticationServiceException.class)
+    public ResponseEntity<ErrorResponseBody> internalAuthenticationHandler(InternalAuthenticationServiceException ex, WebRequest webRequest) {
+        if (ex.getCause() instanceof PasswordHashingRejectedException rejected) {
+            return passwordHashingRejectedHandler(rejected, webRequest);
+        }
+        throw ex;
+    }
+
+    // Лимит запросов исчерпан - 429 с Retry-After (целые секунды, не меньше 1)
+    @ExceptionHandler(value = RateLimitExceededException.class)
+    public ResponseEntity<ErrorResponseBody> rateLimitExceededHandler(RateLimitExceededException ex, WebRequest webRequest) {
+        long retryAfterSeconds = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .body(builderResponse(HttpStatus.TOO_MANY_REQUESTS, ex, webRequest).getBody());
+    }
+
     private ResponseEntity<ErrorResponseBody> builderResponse(HttpStatus httpStatus, Exception ex, WebRequest webRequest) {
         return ResponseEntity.status(httpStatus)
                 .body(ErrorResponseBody.builder()
@@ -0,0 +1,18 @@
+package com.example.spring_jwt_auth_example.web.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL) // в ответе только то, что спрашивали
+public class AvailabilityResponse {
+
+    private Boolean usernameAvailable;
+
+    private Boolean emailAvailable;
+
+}
@@ -0,0 +1,31 @@
+package com.example.spring_jwt_auth_example.web.model;
+
+import com.example.spring_jwt_auth_example.entity.RoleType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+
+/*
+Строка файла импорта пользователей. Указывается либо password (будет захэширован),
+либо passwordHash - готовый хэш BCrypt из старой системы.
+*/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportUserRecord {
+
+    private String username;
+
+    private String email;
+
+    private String password;
+
+    private String passwordHash;
+
+    private Set<RoleType> roles;
+
+}
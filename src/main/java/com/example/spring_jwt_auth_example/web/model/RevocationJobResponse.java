@@ -0,0 +1,38 @@
+package com.example.spring_jwt_auth_example.web.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevocationJobResponse {
+
+    private String jobId;
+
+    private String status; // RUNNING, COMPLETED, FAILED
+
+    private int totalUsers;
+
+    private int processedUsers;
+
+    private long revokedSessions;
+
+    private int failedUsers; // Refresh Token не удалены: пользователь всё время делал refresh, см. SessionRevocationService
+
+    private Instant startedAt;
+
+    private Instant finishedAt;
+
+    private String error;
+
+    // Через сколько после обработки пользователя его старые Access Token перестанут приниматься всеми узлами
+    private Duration accessTokenPropagationDelay;
+
+}
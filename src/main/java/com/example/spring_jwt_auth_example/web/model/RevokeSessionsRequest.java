@@ -0,0 +1,18 @@
+package com.example.spring_jwt_auth_example.web.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevokeSessionsRequest {
+
+    private List<Long> userIds;
+
+}
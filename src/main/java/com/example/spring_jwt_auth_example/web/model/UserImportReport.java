@@ -0,0 +1,32 @@
+package com.example.spring_jwt_auth_example.web.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserImportReport {
+
+    private String importId; // импорт через AdminUserImportController, см. UserImportCheckpoints
+
+    private String status; // RUNNING, COMPLETED, FAILED
+
+    private long checkpoint; // номер последней записи, сохранённой в БД; передаётся как resumeFrom при повторном запуске
+
+    private long imported;
+
+    private long skipped; // username или email уже заняты
+
+    private long invalid; // нет обязательных полей или некорректный хэш
+
+    private long elapsedMillis;
+
+    private double usersPerSecond;
+
+    private String error; // причина остановки импорта, если он не дошёл до конца
+
+}
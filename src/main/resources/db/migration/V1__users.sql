@@ -0,0 +1,42 @@
+-- Схема пользователей в том виде, в котором её создавал spring.jpa.generate-ddl.
+-- Выполняется и на пустой базе, и на базе, созданной generate-ddl любой прежней версией приложения
+-- (Flyway принимает такую базу за версию 0, см. spring.flyway.baseline-version), поэтому всё через "if not exists".
+
+create table if not exists app_users (
+    id         bigint primary key,
+    username   varchar(255),
+    email      varchar(255),
+    password   varchar(255),
+    roles_mask integer not null default 0
+);
+
+alter table app_users add column if not exists roles_mask integer not null default 0;
+
+-- Id выдаются блоками по 50 (оптимизатор pooled, см. User.id). Раньше id выдавала identity-колонка,
+-- поэтому сдвигаем последовательность за уже существующие id.
+create sequence if not exists app_users_seq increment by 50;
+
+select setval('app_users_seq', max(id))
+from app_users
+having max(id) >= (select last_value from app_users_seq);
+
+-- Роли раньше хранились строками в user_roles, теперь - битами в roles_mask (бит роли - её порядковый номер в RoleType).
+-- Саму таблицу не удаляем, пока на ней могут работать узлы прежней версии.
+do $$
+begin
+    if to_regclass('user_roles') is not null then
+        update app_users u
+        set roles_mask = m.mask
+        from (select user_id,
+                     bit_or(case roles
+                                when 'ROLE_USER' then 1
+                                when 'ROLE_ADMIN' then 2
+                                when 'ROLE_MANAGER' then 4
+                                else 0
+                            end) as mask
+              from user_roles
+              group by user_id) m
+        where m.user_id = u.id
+          and u.roles_mask = 0;
+    end if;
+end $$;
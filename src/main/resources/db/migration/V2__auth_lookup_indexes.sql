@@ -0,0 +1,58 @@
+-- Индексы для входа и проверки занятости имени: без них поиск по username и email - последовательное чтение таблицы.
+-- Выполняется вне транзакции (V2__auth_lookup_indexes.sql.conf): индексы строятся concurrently, не блокируя записи
+-- в app_users на время построения. Если построение прервалось, PostgreSQL оставляет индекс в состоянии invalid -
+-- его нужно удалить (drop index concurrently) перед повторным запуском, иначе "if not exists" его пропустит.
+
+-- Уникальность username; индекс ограничения покрывающий: логин (UserRepository.findCredentialsByUsername)
+-- читает id, email, хэш пароля и роли прямо из индекса, не обращаясь к таблице (index-only scan).
+-- Новый индекс строится рядом со старым, затем ограничение переключается на него - таблица блокируется
+-- только на время этого переключения, без повторной проверки строк.
+create unique index concurrently if not exists uk_app_users_username_covering
+    on app_users (username) include (id, email, password, roles_mask);
+
+alter table app_users
+    drop constraint if exists uk_app_users_username,
+    add constraint uk_app_users_username unique using index uk_app_users_username_covering;
+
+-- Ограничение на email могло остаться от generate-ddl - тогда новый индекс не нужен и удаляется.
+create unique index concurrently if not exists uk_app_users_email_new on app_users (email);
+
+do $$
+begin
+    if not exists (select 1 from pg_constraint where conname = 'uk_app_users_email' and conrelid = 'app_users'::regclass) then
+        alter table app_users add constraint uk_app_users_email unique using index uk_app_users_email_new;
+    end if;
+end $$;
+
+drop index concurrently if exists uk_app_users_email_new;
+
+-- Без учёта регистра: "Alice" и "alice" - одно имя. Проверки занятости ищут по lower(...), то есть по этим индексам.
+-- Если такие пары уже есть, уникальный индекс не построится: миграция останавливается и перечисляет их,
+-- чтобы их разрешили вручную (переименовали или объединили учётные записи) до повторного запуска.
+do $$
+declare
+    duplicates text;
+begin
+    select string_agg(format('%s = %s (ids %s)', d.field, d.value, d.ids), '; ')
+    into duplicates
+    from (select 'username' as field, lower(username) as value, string_agg(id::text, ', ' order by id) as ids
+          from app_users
+          where username is not null
+          group by lower(username)
+          having count(*) > 1
+          union all
+          select 'email', lower(email), string_agg(id::text, ', ' order by id)
+          from app_users
+          where email is not null
+          group by lower(email)
+          having count(*) > 1
+          limit 100) d;
+
+    if duplicates is not null then
+        raise exception 'app_users has usernames or emails that differ only by case: %', duplicates;
+    end if;
+end $$;
+
+-- Имена индексов начинаются с имён ограничений выше - AlreadyExistsException распознаёт и их.
+create unique index concurrently if not exists uk_app_users_username_lower on app_users (lower(username));
+create unique index concurrently if not exists uk_app_users_email_lower on app_users (lower(email));
@@ -0,0 +1,38 @@
+package com.example.spring_jwt_auth_example.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoleSetConverterTest {
+
+    private final RoleSetConverter converter = new RoleSetConverter();
+
+    @Test
+    void roleBitsAreTheirOrdinals() {
+        // Значения хранятся в app_users.roles_mask и в миграции V1 - менять их нельзя
+        assertThat(converter.convertToDatabaseColumn(Set.of(RoleType.ROLE_USER))).isEqualTo(1);
+        assertThat(converter.convertToDatabaseColumn(Set.of(RoleType.ROLE_ADMIN))).isEqualTo(2);
+        assertThat(converter.convertToDatabaseColumn(Set.of(RoleType.ROLE_MANAGER))).isEqualTo(4);
+    }
+
+    @Test
+    void everyRoleSetSurvivesRoundTrip() {
+        for (int mask = 0; mask < 1 << RoleType.values().length; mask++) {
+            Set<RoleType> roles = converter.convertToEntityAttribute(mask);
+
+            assertThat(converter.convertToDatabaseColumn(roles)).isEqualTo(mask);
+        }
+    }
+
+    @Test
+    void missingValuesMeanNoRoles() {
+        assertThat(converter.convertToDatabaseColumn(null)).isZero();
+        assertThat(converter.convertToDatabaseColumn(EnumSet.noneOf(RoleType.class))).isZero();
+        assertThat(converter.convertToEntityAttribute(null)).isEmpty();
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.example.spring_jwt_auth_example.exception;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlreadyExistsExceptionTest {
+
+    @Test
+    void recognizesUsernameConstraintDeepInCauseChain() {
+        DataIntegrityViolationException e = violation(
+                "ERROR: duplicate key value violates unique constraint \"uk_app_users_username\"");
+
+        assertThat(AlreadyExistsException.fromConstraintViolation(e))
+                .isInstanceOf(AlreadyExistsException.class)
+                .hasMessage("Username already exists!");
+    }
+
+    @Test
+    void recognizesCaseInsensitiveIndexes() {
+        assertThat(AlreadyExistsException.fromConstraintViolation(violation(
+                "duplicate key value violates unique constraint \"uk_app_users_username_lower\"")))
+                .hasMessage("Username already exists!");
+        assertThat(AlreadyExistsException.fromConstraintViolation(violation(
+                "duplicate key value violates unique constraint \"uk_app_users_email_lower\"")))
+                .hasMessage("Email already exists!");
+    }
+
+    @Test
+    void recognizesEmailConstraint() {
+        assertThat(AlreadyExistsException.fromConstraintViolation(violation(
+                "duplicate key value violates unique constraint \"uk_app_users_email\"")))
+                .isInstanceOf(AlreadyExistsException.class)
+                .hasMessage("Email already exists!");
+    }
+
+    @Test
+    void returnsOtherViolationsUnchanged() {
+        DataIntegrityViolationException e = violation("null value in column \"username\" violates not-null constraint");
+        DataIntegrityViolationException withoutMessage = new DataIntegrityViolationException(null);
+
+        assertThat(AlreadyExistsException.fromConstraintViolation(e)).isSameAs(e);
+        assertThat(AlreadyExistsException.fromConstraintViolation(withoutMessage)).isSameAs(withoutMessage);
+    }
+
+    // Как у JPA: текст Postgres лежит в причине причины, а у самого исключения - общее сообщение
+    private static DataIntegrityViolationException violation(String postgresMessage) {
+        return new DataIntegrityViolationException("could not execute statement",
+                new RuntimeException("could not execute statement", new SQLException(postgresMessage)));
+    }
+
+}
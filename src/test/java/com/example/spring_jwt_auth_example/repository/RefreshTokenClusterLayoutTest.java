@@ -0,0 +1,200 @@
+package com.example.spring_jwt_auth_example.repository;
+
+import com.example.spring_jwt_auth_example.entity.RefreshToken;
+import com.example.spring_jwt_auth_example.util.RedisSlots;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RefreshTokenClusterLayoutTest {
+
+    private static final Set<String> KEYLESS_COMMANDS = Set.of("TIME");
+
+    private final LocalCluster cluster = new LocalCluster(3);
+
+    @Test
+    void scriptsOfOneUserStayOnOneNode() {
+        for (long userId = 1; userId <= 1000; userId++) {
+            RefreshToken refreshToken = refreshToken(userId);
+            RefreshToken rotated = RefreshTokenRepository.successor(refreshToken, "next", Instant.now().plusSeconds(60));
+            String familyKey = RefreshTokenRepository.familyKeyOfUsed(userId + "|" + refreshToken.getFamilyId());
+
+            int slot = cluster.execute(RefreshTokenRepository.saveKeys(refreshToken));
+            assertThat(cluster.execute(RefreshTokenRepository.rotateKeys(refreshToken.getToken(), rotated))).isEqualTo(slot);
+            assertThat(cluster.execute(RefreshTokenRepository.revokeKeys(familyKey, rotated.getToken(), userId))).isEqualTo(slot);
+            assertThat(cluster.execute(RefreshTokenRepository.deleteKeys(List.of(RefreshTokenRepository.userTokensKey(userId)),
+                    List.of(List.of(refreshToken.getToken(), rotated.getToken()))))).isEqualTo(slot);
+            assertThat(familyKey).isEqualTo(RefreshTokenRepository.familyKey(userId, refreshToken.getFamilyId()));
+        }
+    }
+
+    /*
+    Redis Cluster узнаёт слот скрипта только по KEYS: ключ, собранный из ARGV или из прочитанного значения,
+    может оказаться в другом слоте. Поэтому каждая команда скриптов с ключом должна брать его из KEYS.
+    */
+    @Test
+    void scriptsTouchOnlyDeclaredKeys() {
+        Pattern call = Pattern.compile("redis\\.call\\('(\\w+)',\\s*([^,)]+)");
+
+        for (RedisScript<?> script : List.of(RefreshTokenRepository.SAVE_SCRIPT, RefreshTokenRepository.ROTATE_SCRIPT,
+                RefreshTokenRepository.REVOKE_FAMILY_SCRIPT, RefreshTokenRepository.MEMBERS_SCRIPT,
+                RefreshTokenRepository.DELETE_BY_USER_SCRIPT, RefreshTokenRepository.MOVE_EXPIRY_SCRIPT)) {
+            Matcher matcher = call.matcher(script.getScriptAsString());
+            int calls = 0;
+            while (matcher.find()) {
+                calls++;
+                if (!KEYLESS_COMMANDS.contains(matcher.group(1))) {
+                    assertThat(matcher.group(2)).as(matcher.group()).startsWith("KEYS[");
+                }
+            }
+            assertThat(calls).isPositive();
+        }
+    }
+
+    @Test
+    void deleteArgsPointTokensToTheirSets() {
+        List<List<String>> members = List.of(List.of("1.a"), List.of(), List.of("3.b", "3.c"));
+
+        assertThat(RefreshTokenRepository.deleteKeys(List.of("s1", "s2", "s3"), members)).containsExactly("s1", "s2", "s3",
+                RefreshTokenRepository.tokenKey("1.a"), RefreshTokenRepository.tokenKey("3.b"), RefreshTokenRepository.tokenKey("3.c"));
+        assertThat(RefreshTokenRepository.deleteArgs(members)).containsExactly("3", "1", "1.a", "3", "3.b", "3", "3.c");
+    }
+
+    @Test
+    void usersAreSpreadAcrossNodes() {
+        for (long userId = 1; userId <= 3000; userId++) {
+            cluster.execute(List.of(RefreshTokenRepository.userTokensKey(userId)));
+        }
+
+        assertThat(cluster.callsPerNode()).hasSize(3)
+                .allSatisfy(calls -> assertThat(calls).isGreaterThan(700));
+    }
+
+    @Test
+    void rejectsKeysFromDifferentSlots() {
+        assertThatThrownBy(() -> cluster.execute(List.of(
+                RefreshTokenRepository.userTokensKey(1L), RefreshTokenRepository.userTokensKey(2L))))
+                .hasMessageStartingWith("CROSSSLOT");
+    }
+
+    @Test
+    void slotGroupsCanBeExecutedOnCluster() {
+        List<String> keys = LongStream.rangeClosed(1, 500)
+                .mapToObj(RefreshTokenRepository::userTokensKey)
+                .toList();
+
+        Collection<List<String>> groups = RedisSlots.groupBySlot(keys, key -> key, true);
+        groups.forEach(cluster::execute);
+
+        assertThat(groups.stream().mapToInt(List::size).sum()).isEqualTo(keys.size());
+        assertThat(RedisSlots.groupBySlot(keys, key -> key, false)).hasSize(1);
+    }
+
+    @Test
+    void tagsOnlyTokensWithOwner() {
+        assertThat(RefreshTokenRepository.tagged("42.8f14e45f")).isEqualTo("{42}.8f14e45f");
+        assertThat(RefreshTokenRepository.tagged("8f14e45f-ceea-467f-a0e6-5b6f2b1d6a11")).isEqualTo("8f14e45f-ceea-467f-a0e6-5b6f2b1d6a11");
+        assertThat(RefreshTokenRepository.tagged("4a.8f14e45f")).isEqualTo("4a.8f14e45f");
+    }
+
+    @Test
+    void rotatedTokenKeepsOwnerAndFamily() {
+        Instant expiryDate = Instant.now().plusSeconds(60);
+        RefreshToken previous = RefreshTokenRepository.decode("42.old", "42|1700000000000|family|ROLE_USER|alice@example.com|alice");
+
+        RefreshTokenRepository.RotationResult result = RefreshTokenRepository.rotationResult("OK",
+                RefreshTokenRepository.successor(previous, "new", expiryDate));
+
+        assertThat(result.getStatus()).isEqualTo(RefreshTokenRepository.RotationStatus.OK);
+        assertThat(result.getRefreshToken().getToken()).isEqualTo("42.new");
+        assertThat(result.getRefreshToken().getFamilyId()).isEqualTo("family");
+        assertThat(result.getRefreshToken().getExpiryDate()).isEqualTo(expiryDate);
+        assertThat(result.getRefreshToken().getRoles()).containsExactly("ROLE_USER");
+    }
+
+    @Test
+    void recordKeepsSecurityVersion() {
+        RefreshToken refreshToken = refreshToken(42L).toBuilder()
+                .expiryDate(Instant.ofEpochMilli(1700000000000L))
+                .username("al|ice")
+                .roles(List.of("ROLE_USER", "ROLE_ADMIN"))
+                .securityVersion(7L)
+                .ownerLoadedAt(Instant.ofEpochMilli(1699999000000L))
+                .build();
+
+        RefreshToken decoded = RefreshTokenRepository.decode(refreshToken.getToken(), RefreshTokenRepository.encode(refreshToken));
+
+        assertThat(decoded).isEqualTo(refreshToken);
+        assertThat(RefreshTokenRepository.decode("42.old", "42|1700000000000|family|ROLE_USER||alice").getSecurityVersion()).isNull();
+        assertThat(RefreshTokenRepository.decode("42.old", "42|1700000000000|family|ROLE_USER||alice|7").getOwnerLoadedAt()).isNull();
+    }
+
+    @Test
+    void legacyRecordStartsFamilyWithItself() {
+        RefreshToken previous = RefreshTokenRepository.decode("8f14e45f-ceea-467f-a0e6-5b6f2b1d6a11", "42|1700000000000");
+
+        RefreshToken rotated = RefreshTokenRepository.successor(previous, "new", Instant.now().plusSeconds(60));
+
+        assertThat(rotated.getToken()).isEqualTo("42.new");
+        assertThat(rotated.getFamilyId()).isEqualTo("8f14e45f-ceea-467f-a0e6-5b6f2b1d6a11");
+        assertThat(RefreshTokenRepository.familyKeyOfUsed("8f14e45f-ceea-467f-a0e6-5b6f2b1d6a11"))
+                .isEqualTo(RefreshTokenRepository.FAMILY_KEY_PREFIX + "8f14e45f-ceea-467f-a0e6-5b6f2b1d6a11");
+        assertThat(RefreshTokenRepository.rotationResult("EXPIRED", rotated).getRefreshToken()).isNull();
+    }
+
+    private static RefreshToken refreshToken(long userId) {
+        return RefreshToken.builder()
+                .userId(userId)
+                .token(RefreshTokenRepository.newToken(userId))
+                .familyId("family-" + userId)
+                .expiryDate(Instant.now().plusSeconds(60))
+                .build();
+    }
+
+    /*
+    Локальная замена Redis Cluster: слоты поровну поделены между узлами, как при redis-cli --cluster create,
+    и, как в настоящем кластере, команда или скрипт с ключами из разных слотов отклоняется.
+    */
+    private static final class LocalCluster {
+
+        private final int nodes;
+
+        private final Map<Integer, Integer> callsPerNode = new TreeMap<>();
+
+        private LocalCluster(int nodes) {
+            this.nodes = nodes;
+        }
+
+        // Возвращает слот, в котором выполнилась команда
+        private int execute(List<String> keys) {
+            List<Integer> slots = new ArrayList<>();
+            keys.forEach(key -> slots.add(ClusterSlotHashUtil.calculateSlot(key)));
+            if (slots.stream().distinct().count() > 1) {
+                throw new IllegalStateException("CROSSSLOT Keys in request don't hash to the same slot: " + keys);
+            }
+
+            int slot = slots.get(0);
+            callsPerNode.merge(slot * nodes / ClusterSlotHashUtil.SLOT_COUNT, 1, Integer::sum);
+            return slot;
+        }
+
+        private Collection<Integer> callsPerNode() {
+            return callsPerNode.values();
+        }
+    }
+
+}
@@ -0,0 +1,251 @@
+package com.example.spring_jwt_auth_example.repository;
+
+import com.example.spring_jwt_auth_example.entity.RefreshToken;
+import com.example.spring_jwt_auth_example.metrics.AuthMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ROTATE_SCRIPT и REVOKE_FAMILY_SCRIPT на настоящем Redis - через RefreshTokenRepository.rotate,
+как их вызывает RefreshTokenService, и DELETE_BY_USER_SCRIPT. Без Docker тест пропускается.
+*/
+@Testcontainers(disabledWithoutDocker = true)
+class RefreshTokenScriptTest {
+
+    private static final long USER_ID = 42L;
+
+    @Container
+    private static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static JedisConnectionFactory connectionFactory;
+
+    private static StringRedisTemplate redisTemplate;
+
+    private RefreshTokenNearCache nearCache;
+
+    private RefreshTokenRepository repository;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getFirstMappedPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        });
+
+        nearCache = new RefreshTokenNearCache();
+        ReflectionTestUtils.setField(nearCache, "maxEntries", 1000);
+        ReflectionTestUtils.setField(nearCache, "maxMemory", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(nearCache, "maxAge", Duration.ofMinutes(5));
+        repository = new RefreshTokenRepository(redisTemplate, nearCache, new AuthMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void rotationReplacesTokenInItsFamily() {
+        RefreshToken presented = repository.save(refreshToken(Instant.now().plusSeconds(60)));
+
+        RefreshTokenRepository.RotationResult result = rotate(presented.getToken());
+
+        assertThat(result.getStatus()).isEqualTo(RefreshTokenRepository.RotationStatus.OK);
+        String rotated = result.getRefreshToken().getToken();
+        assertThat(redisTemplate.hasKey(RefreshTokenRepository.tokenKey(presented.getToken()))).isFalse();
+        assertThat(redisTemplate.hasKey(RefreshTokenRepository.usedKey(presented.getToken()))).isTrue();
+        assertThat(redisTemplate.opsForSet().members(RefreshTokenRepository.userTokensKey(USER_ID))).containsExactly(rotated);
+        assertThat(redisTemplate.opsForValue().get(RefreshTokenRepository.familyKey(USER_ID, presented.getFamilyId())))
+                .isEqualTo(rotated);
+        assertThat(RefreshTokenRepository.decode(rotated, redisTemplate.opsForValue().get(RefreshTokenRepository.tokenKey(rotated))))
+                .isEqualTo(result.getRefreshToken());
+    }
+
+    // TTL ключа ещё не истёк, а expiryDate в записи уже прошла: токен гасится, новый не выпускается
+    @Test
+    void expiredTokenIsRemovedWithoutSuccessor() {
+        RefreshToken presented = refreshToken(Instant.now().minusSeconds(1));
+        redisTemplate.opsForValue().set(RefreshTokenRepository.tokenKey(presented.getToken()),
+                RefreshTokenRepository.encode(presented), Duration.ofMinutes(1));
+        redisTemplate.opsForSet().add(RefreshTokenRepository.userTokensKey(USER_ID), presented.getToken());
+
+        RefreshTokenRepository.RotationResult result = rotate(presented.getToken());
+
+        assertThat(result.getStatus()).isEqualTo(RefreshTokenRepository.RotationStatus.EXPIRED);
+        assertThat(result.getRefreshToken()).isNull();
+        assertThat(redisTemplate.hasKey(RefreshTokenRepository.tokenKey(presented.getToken()))).isFalse();
+        assertThat(redisTemplate.hasKey(RefreshTokenRepository.usedKey(presented.getToken()))).isFalse();
+        assertThat(redisTemplate.opsForSet().size(RefreshTokenRepository.userTokensKey(USER_ID))).isZero();
+    }
+
+    @Test
+    void reusedTokenRevokesFamily() {
+        RefreshToken presented = repository.save(refreshToken(Instant.now().plusSeconds(60)));
+        String rotated = rotate(presented.getToken()).getRefreshToken().getToken();
+
+        RefreshTokenRepository.RotationResult result = rotate(presented.getToken());
+
+        assertThat(result.getStatus()).isEqualTo(RefreshTokenRepository.RotationStatus.REUSED);
+        assertThat(redisTemplate.hasKey(RefreshTokenRepository.tokenKey(rotated))).isFalse();
+        assertThat(redisTemplate.hasKey(RefreshTokenRepository.familyKey(USER_ID, presented.getFamilyId()))).isFalse();
+        assertThat(redisTemplate.opsForSet().size(RefreshTokenRepository.userTokensKey(USER_ID))).isZero();
+        assertThat(rotate(rotated).getStatus()).isEqualTo(RefreshTokenRepository.RotationStatus.NOT_FOUND);
+    }
+
+    // Семейство уже сменило текущий токен: скрипт ничего не трогает, вызывающий читает семейство заново
+    @Test
+    void familyRevocationChecksCurrentToken() {
+        RefreshToken presented = repository.save(refreshToken(Instant.now().plusSeconds(60)));
+        String familyKey = RefreshTokenRepository.familyKey(USER_ID, presented.getFamilyId());
+
+        Long revoked = redisTemplate.execute(RefreshTokenRepository.REVOKE_FAMILY_SCRIPT,
+                RefreshTokenRepository.revokeKeys(familyKey, presented.getToken(), USER_ID),
+                RefreshTokenRepository.revokeArgs(RefreshTokenRepository.newToken(USER_ID)).toArray());
+
+        assertThat(revoked).isZero();
+        assertThat(redisTemplate.hasKey(RefreshTokenRepository.tokenKey(presented.getToken()))).isTrue();
+        assertThat(redisTemplate.opsForValue().get(familyKey)).isEqualTo(presented.getToken());
+    }
+
+    /*
+    Два обмена одного токена одновременно: новый токен получает только один, второй видит погашенный токен
+    как повторное предъявление и отзывает семейство - вместе с токеном, выданным первому.
+    */
+    @Test
+    void concurrentRotationsIssueOneToken() {
+        RefreshToken presented = repository.save(refreshToken(Instant.now().plusSeconds(60)));
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<CompletableFuture<RefreshTokenRepository.RotationResult>> rotations = List.of(
+                CompletableFuture.supplyAsync(() -> awaitAndRotate(start, presented.getToken())),
+                CompletableFuture.supplyAsync(() -> awaitAndRotate(start, presented.getToken())));
+        start.countDown();
+        List<RefreshTokenRepository.RotationResult> results = rotations.stream().map(CompletableFuture::join).toList();
+
+        assertThat(results).extracting(RefreshTokenRepository.RotationResult::getStatus)
+                .containsExactlyInAnyOrder(RefreshTokenRepository.RotationStatus.OK, RefreshTokenRepository.RotationStatus.REUSED);
+        String issued = results.stream()
+                .filter(result -> result.getStatus() == RefreshTokenRepository.RotationStatus.OK)
+                .findFirst().orElseThrow()
+                .getRefreshToken().getToken();
+        assertThat(redisTemplate.hasKey(RefreshTokenRepository.tokenKey(issued))).isFalse();
+        assertThat(redisTemplate.opsForSet().size(RefreshTokenRepository.userTokensKey(USER_ID))).isZero();
+    }
+
+    // Запись в near-кэше разошлась с Redis: скрипт просит повторить, повтор читает запись из Redis
+    @Test
+    void staleNearCacheValueIsRetriedFromRedis() {
+        RefreshToken presented = repository.save(refreshToken(Instant.now().plusSeconds(60)));
+        String stored = redisTemplate.opsForValue().get(RefreshTokenRepository.tokenKey(presented.getToken()));
+        String stale = RefreshTokenRepository.encode(presented.toBuilder().roles(List.of("ROLE_ADMIN")).build());
+        nearCache.put(presented.getToken(), stale, presented.getExpiryDate().toEpochMilli());
+
+        RefreshToken successor = RefreshTokenRepository.successor(RefreshTokenRepository.decode(presented.getToken(), stale),
+                RefreshTokenRepository.newToken(USER_ID), presented.getExpiryDate());
+        String direct = redisTemplate.execute(RefreshTokenRepository.ROTATE_SCRIPT,
+                RefreshTokenRepository.rotateKeys(presented.getToken(), successor),
+                RefreshTokenRepository.rotateArgs(presented.getToken(), stale, successor).toArray());
+        assertThat(direct).isEqualTo("RETRY");
+        assertThat(redisTemplate.opsForValue().get(RefreshTokenRepository.tokenKey(presented.getToken()))).isEqualTo(stored);
+
+        RefreshTokenRepository.RotationResult result = rotate(presented.getToken());
+
+        assertThat(result.getStatus()).isEqualTo(RefreshTokenRepository.RotationStatus.OK);
+        assertThat(result.getRefreshToken().getRoles()).containsExactly("ROLE_USER");
+        assertThat(nearCache.getInvalidationCount()).isEqualTo(1);
+        assertThat(redisTemplate.hasKey(RefreshTokenRepository.tokenKey(presented.getToken()))).isFalse();
+    }
+
+    // Множество, изменившееся между чтением и удалением, остаётся целым; остальные удаляются тем же вызовом
+    @Test
+    void deletionSkipsOnlyChangedSets() {
+        RefreshToken quiet = repository.save(refreshToken(Instant.now().plusSeconds(60)));
+        RefreshToken busy = repository.save(refreshToken(43L, Instant.now().plusSeconds(60)));
+        List<String> sets = List.of(RefreshTokenRepository.userTokensKey(USER_ID), RefreshTokenRepository.userTokensKey(43L));
+
+        List<?> members = redisTemplate.execute(RefreshTokenRepository.MEMBERS_SCRIPT, sets);
+        RefreshToken concurrent = repository.save(refreshToken(43L, Instant.now().plusSeconds(60)));
+        List<?> result = redisTemplate.execute(RefreshTokenRepository.DELETE_BY_USER_SCRIPT,
+                RefreshTokenRepository.deleteKeys(sets, members), RefreshTokenRepository.deleteArgs(members).toArray());
+
+        assertThat(RefreshTokenRepository.deletedTokens(result)).isEqualTo(1);
+        assertThat(RefreshTokenRepository.changedSets(result)).containsExactly(1);
+        assertThat(redisTemplate.hasKey(RefreshTokenRepository.tokenKey(quiet.getToken()))).isFalse();
+        assertThat(redisTemplate.hasKey(sets.get(0))).isFalse();
+        assertThat(redisTemplate.opsForSet().members(sets.get(1))).containsExactlyInAnyOrder(busy.getToken(), concurrent.getToken());
+
+        RefreshTokenRepository.DeletionResult deletion = repository.deleteTokenSets(sets);
+
+        assertThat(deletion.getDeletedTokens()).isEqualTo(2);
+        assertThat(deletion.getChangingSets()).isEmpty();
+        assertThat(redisTemplate.hasKey(sets.get(1))).isFalse();
+        assertThat(redisTemplate.hasKey(RefreshTokenRepository.tokenKey(busy.getToken()))).isFalse();
+    }
+
+    private RefreshTokenRepository.RotationResult rotate(String token) {
+        // в записи expiryDate хранится в миллисекундах
+        Instant expiryDate = Instant.now().plusSeconds(60).truncatedTo(ChronoUnit.MILLIS);
+        return repository.rotate(token, UUID.randomUUID().toString(), expiryDate, UnaryOperator.identity());
+    }
+
+    private RefreshTokenRepository.RotationResult awaitAndRotate(CountDownLatch start, String token) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        return rotate(token);
+    }
+
+    private static RefreshToken refreshToken(Instant expiryDate) {
+        return refreshToken(USER_ID, expiryDate);
+    }
+
+    private static RefreshToken refreshToken(long userId, Instant expiryDate) {
+        return RefreshToken.builder()
+                .userId(userId)
+                .token(RefreshTokenRepository.newToken(userId))
+                .expiryDate(expiryDate)
+                .familyId(UUID.randomUUID().toString())
+                .username("alice")
+                .email("alice@example.com")
+                .roles(List.of("ROLE_USER"))
+                .ownerLoadedAt(Instant.ofEpochMilli(1700000000000L))
+                .build();
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.example.spring_jwt_auth_example.security;
+
+import com.example.spring_jwt_auth_example.security.jwt.TokenClaims;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccessTokenDenylistTest {
+
+    private static final Instant EXPIRATION = Instant.ofEpochMilli(1700000000000L);
+
+    // Redis и планировщик onRevoked и mightBeRevoked не трогают
+    private final AccessTokenDenylist denylist = new AccessTokenDenylist(null, null);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(denylist, "window", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(denylist, "expectedRevocationsPerWindow", 1000);
+        ReflectionTestUtils.setField(denylist, "falsePositiveRate", 0.001);
+        denylist.init();
+    }
+
+    @Test
+    void revocationFromFeedMarksTokenAsProbablyRevoked() {
+        denylist.onRevoked("jti-1|" + EXPIRATION.toEpochMilli());
+
+        assertThat(denylist.mightBeRevoked(claims("jti-1", EXPIRATION))).isTrue();
+        assertThat(denylist.mightBeRevoked(claims("jti-2", EXPIRATION))).isFalse();
+    }
+
+    @Test
+    void jtiMayContainSeparator() {
+        denylist.onRevoked("a|b|" + EXPIRATION.toEpochMilli());
+
+        assertThat(denylist.mightBeRevoked(claims("a|b", EXPIRATION))).isTrue();
+    }
+
+    @Test
+    void tokenWithAnotherExpiryWindowIsNotMatched() {
+        denylist.onRevoked("jti-1|" + EXPIRATION.toEpochMilli());
+
+        assertThat(denylist.mightBeRevoked(claims("jti-1", EXPIRATION.plus(Duration.ofHours(1))))).isFalse();
+    }
+
+    @Test
+    void malformedMessagesAndTokensWithoutJtiAreIgnored() {
+        denylist.onRevoked("no-separator");
+        denylist.onRevoked("|" + EXPIRATION.toEpochMilli());
+
+        assertThat(denylist.mightBeRevoked(claims("no-separator", EXPIRATION))).isFalse();
+        assertThat(denylist.mightBeRevoked(claims(null, EXPIRATION))).isFalse();
+        assertThat(denylist.mightBeRevoked(claims("jti-1", null))).isFalse();
+    }
+
+    @Test
+    void noFalseNegativesForManyRevocations() {
+        for (int i = 0; i < 1000; i++) {
+            denylist.onRevoked("jti-" + i + "|" + EXPIRATION.plusSeconds(i).toEpochMilli());
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(denylist.mightBeRevoked(claims("jti-" + i, EXPIRATION.plusSeconds(i)))).as("jti-%d", i).isTrue();
+        }
+    }
+
+    private static TokenClaims claims(String tokenId, Instant expiration) {
+        return TokenClaims.builder()
+                .subject("alice")
+                .tokenId(tokenId)
+                .expiration(expiration)
+                .build();
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.example.spring_jwt_auth_example.security;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/*
+SYNC_SCRIPT на настоящем Redis: общая корзина кластера, в которую узлы отчитываются о пропущенных запросах.
+Без Docker тест пропускается.
+*/
+@Testcontainers(disabledWithoutDocker = true)
+class AuthRateLimiterSyncScriptTest {
+
+    private static final String KEY = "rate_limit:test:10.0.0.1";
+
+    @Container
+    private static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static JedisConnectionFactory connectionFactory;
+
+    private static StringRedisTemplate redisTemplate;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getFirstMappedPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void cleanUp() {
+        redisTemplate.delete(KEY);
+    }
+
+    @Test
+    void firstReportStartsFromFullBucket() {
+        assertThat(sync(KEY, 3, 10, 60_000)).isCloseTo(7, within(0.01));
+    }
+
+    @Test
+    void reportsOfAllNodesAddUp() {
+        sync(KEY, 3, 10, 60_000);
+
+        assertThat(sync(KEY, 5, 10, 60_000)).isCloseTo(2, within(0.01));
+    }
+
+    @Test
+    void bucketDoesNotGoBelowZero() {
+        assertThat(sync(KEY, 50, 10, 60_000)).isZero();
+    }
+
+    @Test
+    void bucketRefillsWithRedisTime() {
+        long now = redisTime();
+        redisTemplate.opsForHash().putAll(KEY, Map.of("t", "0", "ts", Long.toString(now - 30_000)));
+
+        assertThat(sync(KEY, 0, 10, 60_000)).isCloseTo(5, within(0.1));
+    }
+
+    @Test
+    void bucketRefillsNoMoreThanCapacity() {
+        long now = redisTime();
+        redisTemplate.opsForHash().putAll(KEY, Map.of("t", "0", "ts", Long.toString(now - 600_000)));
+
+        assertThat(sync(KEY, 0, 10, 60_000)).isEqualTo(10);
+    }
+
+    @Test
+    void bucketLivesNoLongerThanPeriod() {
+        sync(KEY, 1, 10, 60_000);
+
+        assertThat(redisTemplate.getExpire(KEY, TimeUnit.MILLISECONDS)).isBetween(1L, 60_000L);
+    }
+
+    @Test
+    void eachKeyHasItsOwnLimit() {
+        String other = KEY + "-other";
+        redisTemplate.delete(other);
+
+        List<?> remaining = redisTemplate.execute(AuthRateLimiter.SYNC_SCRIPT, List.of(KEY, other),
+                "1", "10", "60000", "1", "3", "1000");
+
+        assertThat(Double.parseDouble((String) remaining.get(0))).isCloseTo(9, within(0.01));
+        assertThat(Double.parseDouble((String) remaining.get(1))).isCloseTo(2, within(0.01));
+    }
+
+    private static double sync(String key, long consumed, long capacity, long periodMillis) {
+        List<?> remaining = redisTemplate.execute(AuthRateLimiter.SYNC_SCRIPT, List.of(key),
+                Long.toString(consumed), Long.toString(capacity), Long.toString(periodMillis));
+        return Double.parseDouble((String) remaining.get(0));
+    }
+
+    private static long redisTime() {
+        return redisTemplate.execute((RedisCallback<Long>) connection -> connection.serverCommands().time());
+    }
+
+}
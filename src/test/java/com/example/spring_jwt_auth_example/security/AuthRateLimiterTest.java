@@ -0,0 +1,172 @@
+package com.example.spring_jwt_auth_example.security;
+
+import com.example.spring_jwt_auth_example.exception.RateLimitExceededException;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuthRateLimiterTest {
+
+    private static final Duration PERIOD = Duration.ofMinutes(1);
+
+    private static final long INTERVAL = PERIOD.toNanos() / 10;
+
+    private final long now = System.nanoTime();
+
+    @Test
+    void bucketAllowsBurstOfCapacityThenAsksToWaitOneInterval() {
+        AuthRateLimiter.Bucket bucket = new AuthRateLimiter.Bucket("key", 10, PERIOD, now);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(bucket.tryAcquire(now)).isZero();
+        }
+
+        assertThat(bucket.tryAcquire(now)).isEqualTo(INTERVAL);
+        assertThat(bucket.takeConsumed()).isEqualTo(10);
+    }
+
+    @Test
+    void bucketRefillsOneTokenPerInterval() {
+        AuthRateLimiter.Bucket bucket = new AuthRateLimiter.Bucket("key", 10, PERIOD, now);
+        for (int i = 0; i < 10; i++) {
+            bucket.tryAcquire(now);
+        }
+
+        assertThat(bucket.tryAcquire(now + INTERVAL - 1)).isEqualTo(1);
+        assertThat(bucket.tryAcquire(now + INTERVAL)).isZero();
+        assertThat(bucket.tryAcquire(now + INTERVAL)).isPositive();
+    }
+
+    @Test
+    void idleBucketDoesNotAccumulateMoreThanCapacity() {
+        AuthRateLimiter.Bucket bucket = new AuthRateLimiter.Bucket("key", 10, PERIOD, now);
+        long later = now + PERIOD.toNanos() * 10;
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(bucket.tryAcquire(later)).isZero();
+        }
+        assertThat(bucket.tryAcquire(later)).isPositive();
+    }
+
+    @Test
+    void syncedRemainderShrinksBucket() {
+        AuthRateLimiter.Bucket bucket = new AuthRateLimiter.Bucket("key", 10, PERIOD, now);
+
+        bucket.limitTo(3, now);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryAcquire(now)).isZero();
+        }
+        assertThat(bucket.tryAcquire(now)).isPositive();
+    }
+
+    @Test
+    void syncedRemainderNeverGrowsBucket() {
+        AuthRateLimiter.Bucket bucket = new AuthRateLimiter.Bucket("key", 10, PERIOD, now);
+        for (int i = 0; i < 8; i++) {
+            bucket.tryAcquire(now);
+        }
+        bucket.takeConsumed();
+
+        bucket.limitTo(10, now);
+
+        assertThat(bucket.tryAcquire(now)).isZero();
+        assertThat(bucket.tryAcquire(now)).isZero();
+        assertThat(bucket.tryAcquire(now)).isPositive();
+    }
+
+    @Test
+    void requestsPassedDuringSyncAreNotCountedTwice() {
+        AuthRateLimiter.Bucket bucket = new AuthRateLimiter.Bucket("key", 10, PERIOD, now);
+        bucket.tryAcquire(now);
+        bucket.takeConsumed(); // отправлен в Redis
+        bucket.tryAcquire(now); // пропущен, пока шла синхронизация
+
+        bucket.limitTo(5, now); // остаток кластера без второго запроса
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(bucket.tryAcquire(now)).isZero();
+        }
+        assertThat(bucket.tryAcquire(now)).isPositive();
+    }
+
+    @Test
+    void bucketIsIdleOnlyWhenFullAndSynced() {
+        AuthRateLimiter.Bucket bucket = new AuthRateLimiter.Bucket("key", 10, PERIOD, now);
+        assertThat(bucket.isIdle(now)).isTrue();
+
+        bucket.tryAcquire(now);
+        assertThat(bucket.isIdle(now + INTERVAL)).isFalse();
+
+        bucket.takeConsumed();
+        assertThat(bucket.isIdle(now)).isFalse();
+        assertThat(bucket.isIdle(now + INTERVAL)).isTrue();
+    }
+
+    @Test
+    void newKeysAreNotLimitedWhenTableIsFull() {
+        AuthRateLimiter limiter = limiter(2);
+        limiter.checkSignin("10.0.0.1", null);
+        limiter.checkSignin("10.0.0.2", null);
+
+        for (int i = 0; i < 50; i++) {
+            limiter.checkSignin("10.0.0.3", null);
+        }
+
+        assertThat(limiter.size()).isEqualTo(2);
+        assertThat(limiter.getUnlimitedCount()).isEqualTo(50);
+        for (int i = 1; i < 5; i++) {
+            limiter.checkSignin("10.0.0.1", null);
+        }
+        assertThatThrownBy(() -> limiter.checkSignin("10.0.0.1", null)).isInstanceOf(RateLimitExceededException.class);
+    }
+
+    @Test
+    void signinFromOtherIpIsNotLimitedByUsername() {
+        AuthRateLimiter limiter = limiter(100);
+        ReflectionTestUtils.setField(limiter, "signinPerIpCapacity", 10);
+
+        for (int i = 0; i < 5; i++) {
+            limiter.checkSignin("10.0.0.1", "Alice");
+        }
+
+        assertThatThrownBy(() -> limiter.checkSignin("10.0.0.1", "alice")).isInstanceOf(RateLimitExceededException.class);
+        limiter.checkSignin("10.0.0.2", "alice");
+    }
+
+    @Test
+    void refreshChargesOnlyConfirmedOwner() {
+        AuthRateLimiter limiter = limiter(100);
+
+        for (int i = 0; i < 5; i++) {
+            limiter.checkRefresh("10.0.0.1");
+            limiter.checkRefreshOwner(42L);
+        }
+
+        assertThatThrownBy(() -> limiter.checkRefreshOwner(42L))
+                .isInstanceOf(RateLimitExceededException.class)
+                .satisfies(e -> assertThat(((RateLimitExceededException) e).getRetryAfter()).isPositive());
+        limiter.checkRefreshOwner(43L);
+        limiter.checkRefresh("10.0.0.1");
+    }
+
+    private static AuthRateLimiter limiter(int maxKeys) {
+        AuthRateLimiter limiter = new AuthRateLimiter(null, null, null);
+        ReflectionTestUtils.setField(limiter, "enabled", true);
+        ReflectionTestUtils.setField(limiter, "maxKeys", maxKeys);
+        ReflectionTestUtils.setField(limiter, "signinPerIpCapacity", 5);
+        ReflectionTestUtils.setField(limiter, "signinPerIpPeriod", PERIOD);
+        ReflectionTestUtils.setField(limiter, "signinPerIpAndUsernameCapacity", 5);
+        ReflectionTestUtils.setField(limiter, "signinPerIpAndUsernamePeriod", PERIOD);
+        ReflectionTestUtils.setField(limiter, "refreshPerIpCapacity", 100);
+        ReflectionTestUtils.setField(limiter, "refreshPerIpPeriod", PERIOD);
+        ReflectionTestUtils.setField(limiter, "refreshPerOwnerCapacity", 5);
+        ReflectionTestUtils.setField(limiter, "refreshPerOwnerPeriod", PERIOD);
+        return limiter;
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.example.spring_jwt_auth_example.security;
+
+import com.example.spring_jwt_auth_example.entity.RoleType;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoleAuthoritiesTest {
+
+    private static final int COMBINATIONS = 1 << RoleType.values().length;
+
+    @Test
+    void everyMaskMapsToItsRolesInDeclarationOrder() {
+        for (int mask = 0; mask < COMBINATIONS; mask++) {
+            List<String> expected = RoleType.fromMask(mask).stream().map(RoleType::name).toList();
+
+            assertThat(RoleAuthorities.names(mask)).isEqualTo(expected);
+            assertThat(RoleAuthorities.authorities(mask))
+                    .extracting(GrantedAuthority::getAuthority)
+                    .isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void authoritiesAreSharedAndImmutable() {
+        int mask = RoleType.ROLE_USER.bit() | RoleType.ROLE_ADMIN.bit();
+
+        assertThat(RoleAuthorities.authorities(mask)).isSameAs(RoleAuthorities.authorities(mask));
+        assertThat(RoleAuthorities.authorities(mask).get(0))
+                .isSameAs(RoleAuthorities.authorities(RoleType.ROLE_USER.bit()).get(0));
+        assertThat(RoleAuthorities.authorities(0)).isEmpty();
+    }
+
+    @Test
+    void maskFromNamesMatchesMaskFromRoles() {
+        for (int mask = 0; mask < COMBINATIONS; mask++) {
+            assertThat(RoleType.toMaskFromNames(RoleAuthorities.names(mask))).isEqualTo(mask);
+        }
+    }
+
+}
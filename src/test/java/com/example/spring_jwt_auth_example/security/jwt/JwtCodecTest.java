@@ -0,0 +1,229 @@
+package com.example.spring_jwt_auth_example.security.jwt;
+
+import com.example.spring_jwt_auth_example.exception.JwtVerificationException;
+import com.example.spring_jwt_auth_example.exception.JwtVerificationException.Reason;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtCodecTest {
+
+    private static final String SECRET = "someSecretKey";
+
+    private static final Key HMAC_KEY = new SecretKeySpec(DatatypeConverter.parseBase64Binary(SECRET), "HmacSHA512");
+
+    private final JwtCodec codec = new JwtCodec();
+
+    @Test
+    void decodesTokenIssuedByJjwt() {
+        Instant expiration = Instant.now().plusSeconds(60);
+        String token = Jwts.builder()
+                .setSubject("alice")
+                .claim("id", 42L)
+                .claim("email", "alice@example.com")
+                .claim("roles", List.of("ROLE_USER", "ROLE_ADMIN"))
+                .claim("ver", 3)
+                .setIssuedAt(new Date())
+                .setExpiration(Date.from(expiration))
+                .signWith(SignatureAlgorithm.HS512, SECRET)
+                .compact();
+
+        TokenClaims claims = codec.decode(token, (algorithm, keyId) -> HMAC_KEY);
+
+        assertThat(claims.getSubject()).isEqualTo("alice");
+        assertThat(claims.getUserId()).isEqualTo(42L);
+        assertThat(claims.getEmail()).isEqualTo("alice@example.com");
+        assertThat(claims.getRoles()).containsExactly("ROLE_USER", "ROLE_ADMIN");
+        assertThat(claims.getSecurityVersion()).isEqualTo(3L);
+        assertThat(claims.getExpiration()).isEqualTo(Instant.ofEpochSecond(expiration.getEpochSecond()));
+    }
+
+    @Test
+    void jjwtAcceptsTokenIssuedByCodec() {
+        String token = codec.encode(claims("bob \"the\" builder", Instant.now().plusSeconds(60)),
+                JwtAlgorithm.HS512, null, HMAC_KEY);
+
+        Claims claims = Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody();
+
+        assertThat(claims.getSubject()).isEqualTo("bob \"the\" builder");
+        assertThat(claims.get("id", Number.class).longValue()).isEqualTo(7L);
+        assertThat(claims.get("roles", List.class).toArray()).containsExactly("ROLE_USER");
+    }
+
+    @Test
+    void ecdsaTokensAreInteroperableWithJjwt() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+
+        String codecToken = codec.encode(claims("carol", Instant.now().plusSeconds(60)),
+                JwtAlgorithm.ES256, "key-1", keyPair.getPrivate());
+        assertThat(Jwts.parser().setSigningKey(keyPair.getPublic()).parseClaimsJws(codecToken).getBody().getSubject())
+                .isEqualTo("carol");
+        assertThat(Jwts.parser().setSigningKey(keyPair.getPublic()).parseClaimsJws(codecToken).getHeader().getKeyId())
+                .isEqualTo("key-1");
+
+        String jjwtToken = Jwts.builder()
+                .setSubject("dave")
+                .setExpiration(Date.from(Instant.now().plusSeconds(60)))
+                .signWith(SignatureAlgorithm.ES256, keyPair.getPrivate())
+                .compact();
+        assertThat(codec.decode(jjwtToken, (algorithm, keyId) -> keyPair.getPublic()).getSubject()).isEqualTo("dave");
+    }
+
+    @Test
+    void rejectsTamperedSignature() {
+        String token = codec.encode(claims("eve", Instant.now().plusSeconds(60)), JwtAlgorithm.HS512, null, HMAC_KEY);
+        int position = token.length() - 10;
+        char replacement = token.charAt(position) == 'A' ? 'B' : 'A';
+        String tampered = token.substring(0, position) + replacement + token.substring(position + 1);
+
+        assertReason(tampered, Reason.BAD_SIGNATURE);
+    }
+
+    @Test
+    void rejectsTokenSignedWithAnotherKey() {
+        String token = Jwts.builder()
+                .setSubject("mallory")
+                .signWith(SignatureAlgorithm.HS512, "YW5vdGhlclNlY3JldEtleQ")
+                .compact();
+
+        assertReason(token, Reason.BAD_SIGNATURE);
+    }
+
+    @Test
+    void pooledMacsSwitchKeysOnVirtualThreads() throws Exception {
+        Key otherKey = new SecretKeySpec(DatatypeConverter.parseBase64Binary("YW5vdGhlclNlY3JldEtleQ"), "HmacSHA512");
+        String token = codec.encode(claims("grace", Instant.now().plusSeconds(60)), JwtAlgorithm.HS512, null, HMAC_KEY);
+        String otherToken = codec.encode(claims("heidi", Instant.now().plusSeconds(60)), JwtAlgorithm.HS512, null, otherKey);
+
+        List<Future<String>> subjects = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 1000; i++) {
+                boolean other = i % 2 == 1;
+                subjects.add(executor.submit(() -> other
+                        ? codec.decode(otherToken, (algorithm, keyId) -> otherKey).getSubject()
+                        : codec.decode(token, (algorithm, keyId) -> HMAC_KEY).getSubject()));
+            }
+        }
+
+        for (int i = 0; i < subjects.size(); i++) {
+            assertThat(subjects.get(i).get()).isEqualTo(i % 2 == 1 ? "heidi" : "grace");
+        }
+    }
+
+    @Test
+    void rejectsExpiredToken() {
+        String token = codec.encode(claims("frank", Instant.now().minusSeconds(5)), JwtAlgorithm.HS512, null, HMAC_KEY);
+
+        assertReason(token, Reason.EXPIRED);
+    }
+
+    @Test
+    void rejectsNotYetValidToken() {
+        String token = signed("{\"alg\":\"HS512\"}", "{\"sub\":\"grace\",\"nbf\":" + (Instant.now().getEpochSecond() + 60) + "}");
+
+        assertReason(token, Reason.NOT_YET_VALID);
+    }
+
+    @Test
+    void rejectsUnsignedAndUnknownAlgorithms() {
+        String payload = base64Url("{\"sub\":\"heidi\"}");
+
+        assertReason(base64Url("{\"alg\":\"none\"}") + "." + payload + ".", Reason.UNSUPPORTED);
+        assertReason(signed("{\"alg\":\"HS256\"}", "{\"sub\":\"heidi\"}"), Reason.UNSUPPORTED);
+        assertReason(signed("{\"alg\":\"HS512\",\"crit\":[\"exp\"]}", "{\"sub\":\"heidi\"}"), Reason.UNSUPPORTED);
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        assertReason("", Reason.MALFORMED);
+        assertReason("abc", Reason.MALFORMED);
+        assertReason("a.b.c.d", Reason.MALFORMED);
+        assertReason("@@@.e30.AAAA", Reason.MALFORMED);
+        assertReason(signed("{\"alg\":\"HS512\"}", "{\"sub\":"), Reason.MALFORMED);
+        assertReason(signed("{\"alg\":\"HS512\"}", "{\"sub\":\"ivan\"} trailing"), Reason.MALFORMED);
+    }
+
+    @Test
+    void readsStandardJsonVariations() {
+        String payload = """
+                {
+                  "iss" : "https://issuer.example",
+                  "aud" : ["a", "b"],
+                  "nested" : {"deep": [1, 2.5e3, {"x": null}], "flag": true},
+                  "sub" : "jos\\u00e9 \\"q\\" \\\\ \\/",
+                  "email" : "жанна@example.com",
+                  "roles" : [ "ROLE_USER" , "ROLE_MANAGER" ],
+                  "id" : 9,
+                  "exp" : %d.0
+                }
+                """.formatted(Instant.now().getEpochSecond() + 60);
+
+        TokenClaims claims = codec.decode(signed("{ \"typ\" : \"JWT\", \"alg\" : \"HS512\" }", payload),
+                (algorithm, keyId) -> HMAC_KEY);
+
+        assertThat(claims.getSubject()).isEqualTo("josé \"q\" \\ /");
+        assertThat(claims.getEmail()).isEqualTo("жанна@example.com");
+        assertThat(claims.getRoles()).containsExactly("ROLE_USER", "ROLE_MANAGER");
+        assertThat(claims.getUserId()).isEqualTo(9L);
+        assertThat(claims.getExpiration()).isAfter(Instant.now());
+    }
+
+    private void assertReason(String token, Reason reason) {
+        assertThatThrownBy(() -> codec.decode(token, (algorithm, keyId) -> HMAC_KEY))
+                .isInstanceOf(JwtVerificationException.class)
+                .extracting(e -> ((JwtVerificationException) e).getReason())
+                .isEqualTo(reason);
+    }
+
+    private static TokenClaims claims(String subject, Instant expiration) {
+        return TokenClaims.builder()
+                .subject(subject)
+                .userId(7L)
+                .email("user@example.com")
+                .roles(List.of("ROLE_USER"))
+                .issuedAt(Instant.now())
+                .expiration(expiration)
+                .build();
+    }
+
+    private static String signed(String headerJson, String payloadJson) {
+        try {
+            String signingInput = base64Url(headerJson) + "." + base64Url(payloadJson);
+            Mac mac = Mac.getInstance("HmacSHA512");
+            mac.init(HMAC_KEY);
+            byte[] signature = mac.doFinal(signingInput.getBytes(StandardCharsets.US_ASCII));
+
+            return signingInput + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String base64Url(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.example.spring_jwt_auth_example.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExpiringBloomFilterTest {
+
+    private static final long WINDOW = Duration.ofMinutes(1).toMillis();
+
+    private final ExpiringBloomFilter filter = new ExpiringBloomFilter(Duration.ofMinutes(1), 1000, 0.001);
+
+    @Test
+    void valueIsLookedUpInTheWindowOfItsExpiry() {
+        filter.add("jti", 10 * WINDOW + 5);
+
+        assertThat(filter.mightContain("jti", 10 * WINDOW + 5)).isTrue();
+        assertThat(filter.mightContain("jti", 10 * WINDOW + WINDOW - 1)).isTrue(); // то же окно
+        assertThat(filter.mightContain("jti", 11 * WINDOW)).isFalse();
+        assertThat(filter.windowCount()).isEqualTo(1);
+    }
+
+    @Test
+    void windowIsDroppedOnlyWhenAllItsValuesExpired() {
+        filter.add("early", 10 * WINDOW);
+        filter.add("late", 10 * WINDOW + WINDOW - 1);
+        filter.add("next", 11 * WINDOW);
+
+        filter.expire(11 * WINDOW - 1);
+        assertThat(filter.mightContain("late", 10 * WINDOW + WINDOW - 1)).isTrue();
+        assertThat(filter.windowCount()).isEqualTo(2);
+
+        filter.expire(11 * WINDOW);
+        assertThat(filter.mightContain("early", 10 * WINDOW)).isFalse();
+        assertThat(filter.mightContain("late", 10 * WINDOW + WINDOW - 1)).isFalse();
+        assertThat(filter.mightContain("next", 11 * WINDOW)).isTrue();
+        assertThat(filter.windowCount()).isEqualTo(1);
+    }
+
+    @Test
+    void noFalseNegativesAcrossWindows() {
+        for (int i = 0; i < 5000; i++) {
+            filter.add("jti-" + i, i * 37L);
+        }
+
+        for (int i = 0; i < 5000; i++) {
+            assertThat(filter.mightContain("jti-" + i, i * 37L)).as("jti-%d", i).isTrue();
+        }
+    }
+
+}